@@ -0,0 +1,247 @@
+package com.example.awsstorage.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.service.BatchDeleter;
+import com.example.awsstorage.service.BatchUploader;
+import com.example.awsstorage.service.DedupStore;
+import com.example.awsstorage.service.DiskObjectCache;
+import com.example.awsstorage.service.FileMetadataCache;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.MultipartUploader;
+import com.example.awsstorage.service.S3FileService;
+import com.example.awsstorage.service.UploadCompression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+/**
+ * Throughput and latency of the {@link S3FileService} operations behind each endpoint, measured against
+ * {@link S3StandIn} on the loopback interface so runs are repeatable and need no AWS account.
+ * <p>
+ * The service is wired as the application wires it, with the application's default part sizes and pool
+ * sizes, but with the metadata and disk caches off so every operation reaches S3. Transfers are parameterised
+ * by object size and listings by the number of files listed. Concurrency is JMH's thread count. Run with
+ * {@code ./gradlew jmh}, which adds the GC profiler for allocation rates; see build.gradle for narrowing a run.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx4g" })
+public class S3FileServiceBenchmark {
+
+    private static final String BUCKET = "benchmark";
+    private static final String USER = "bench-user";
+    private static final String LIST_USER = "list-user";
+    private static final String DELETE_USER = "delete-user";
+
+    @State(Scope.Benchmark)
+    public static class Storage {
+
+        S3StandIn standIn;
+        S3Client s3;
+        ExecutorService transfers;
+        S3FileService service;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            standIn = new S3StandIn();
+            s3 = S3Client.builder()
+                    .endpointOverride(standIn.endpoint())
+                    .region(Region.US_EAST_1)
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("bench", "bench")))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                    .httpClientBuilder(ApacheHttpClient.builder().maxConnections(64))
+                    .build();
+            transfers = Executors.newFixedThreadPool(16);
+            MultipartUploader uploader = new MultipartUploader(s3, transfers, 16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            service = new S3FileService(s3, new KeyLayout(BUCKET, Collections.emptyList(), 0, false, ".dedup/"), uploader,
+                    new FileMetadataCache(1_000_000, 100_000, 0, registry),
+                    new DiskObjectCache(false, "unused", 0, 0, registry),
+                    new BatchDeleter(s3, transfers, 8),
+                    new BatchUploader(uploader, transfers, 16, 16 * 1024 * 1024),
+                    new DedupStore(s3, uploader, BUCKET, false, 0, ".dedup/"),
+                    new UploadCompression(false, "gzip", 0, Collections.emptyList(), Collections.emptySet()),
+                    transfers);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            s3.close();
+            transfers.shutdownNow();
+            standIn.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SizedObjects {
+
+        @Param({ "1024", "1048576", "67108864", "1073741824" })
+        long objectSize;
+
+        Path uploadFile;
+        MultipartFile upload;
+
+        @Setup(Level.Trial)
+        public void create(Storage storage) throws IOException {
+            storage.standIn.put(USER + "/download.bin", objectSize);
+            uploadFile = Files.createTempFile("benchmark-upload", ".bin");
+            try (OutputStream out = Files.newOutputStream(uploadFile)) {
+                byte[] block = new byte[1024 * 1024];
+                for (long written = 0; written < objectSize; written += block.length) {
+                    out.write(block, 0, (int) Math.min(block.length, objectSize - written));
+                }
+            }
+            upload = new FileUpload(uploadFile, objectSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(uploadFile);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Listing {
+
+        @Param({ "100", "10000" })
+        int listedFiles;
+
+        @Setup(Level.Trial)
+        public void create(Storage storage) throws IOException {
+            for (int i = 0; i < listedFiles; i++) {
+                storage.standIn.put(String.format("%s/file-%06d.txt", LIST_USER, i), new byte[0]);
+            }
+        }
+    }
+
+    /** A fresh object per call, stored directly in the stand-in so only the delete itself is measured. */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+
+        private static final AtomicLong NEXT = new AtomicLong();
+
+        String filename;
+
+        @Setup(Level.Invocation)
+        public void create(Storage storage) throws IOException {
+            filename = "file-" + NEXT.incrementAndGet() + ".bin";
+            storage.standIn.put(DELETE_USER + "/" + filename, new byte[1024]);
+        }
+    }
+
+    @Benchmark
+    public String saveFile(Storage storage, SizedObjects objects) {
+        return storage.service.saveFile(objects.upload, USER);
+    }
+
+    @Benchmark
+    public byte[] downloadFile(Storage storage, SizedObjects objects) {
+        return storage.service.downloadFile(USER, "download.bin");
+    }
+
+    /** The path {@code /download} takes: the body is copied through a buffer rather than loaded whole. */
+    @Benchmark
+    public long streamFile(Storage storage, SizedObjects objects) throws IOException {
+        try (FileDownload download = storage.service.streamFile(USER, "download.bin")) {
+            return download.getContent().transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public List<String> listAllFiles(Storage storage, Listing listing) {
+        return storage.service.listAllFiles(LIST_USER);
+    }
+
+    @Benchmark
+    public boolean deleteFile(Storage storage, DeleteTarget target) {
+        return storage.service.deleteFile(DELETE_USER, target.filename);
+    }
+
+    /** An upload backed by a file, as Spring hands over large multipart uploads. */
+    private static final class FileUpload implements MultipartFile {
+
+        private final Path file;
+        private final long size;
+
+        FileUpload(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "upload.bin";
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(file, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.awsstorage.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal S3-compatible server on the loopback interface, enough for the calls {@code S3FileService} makes:
+ * PutObject, GetObject (with a single range), HeadObject, DeleteObject, ListObjectsV2 and the multipart upload
+ * calls. Buckets are not modelled; every path-style request is served from one keyspace.
+ * <p>
+ * Object bodies live in temporary files so large objects do not weigh on the benchmark's heap, and ETags are
+ * real MD5s as the SDK checks them on upload. The server speaks plain HTTP, so the SDK signs every upload
+ * chunk instead of relying on TLS; that client-side hashing stands in for the encryption a real connection
+ * would pay for.
+ */
+public class S3StandIn implements AutoCloseable {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "s3-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Map<Integer, StoredObject>> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong fileIds = new AtomicLong();
+
+    public S3StandIn() throws IOException {
+        // Read once when the JDK server first starts; without it small responses wait on delayed ACKs.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.directory = Files.createTempDirectory("s3-stand-in");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /** Stores an object directly, without going through HTTP, for benchmark setup. */
+    public void put(String key, byte[] content) throws IOException {
+        Path file = newFile();
+        Files.write(file, content);
+        store(key, new StoredObject(file, content.length, md5Hex(content), "application/octet-stream"));
+    }
+
+    /** Stores {@code size} bytes of filler directly, without holding them in memory. */
+    public void put(String key, long size) throws IOException {
+        Path file = newFile();
+        byte[] block = new byte[1024 * 1024];
+        MessageDigest md5 = md5();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                int length = (int) Math.min(block.length, size - written);
+                md5.update(block, 0, length);
+                out.write(block, 0, length);
+            }
+        }
+        store(key, new StoredObject(file, size, hex(md5.digest()), "application/octet-stream"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            int keyStart = path.indexOf('/', 1);
+            String key = keyStart < 0 ? "" : URLDecoder.decode(path.substring(keyStart + 1), "UTF-8");
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            if (!method.equals("PUT")) {
+                drain(exchange);
+            }
+            if (key.isEmpty() && method.equals("GET")) {
+                listObjects(exchange, query);
+            } else if (method.equals("POST") && query.containsKey("uploads")) {
+                createMultipartUpload(exchange);
+            } else if (method.equals("PUT") && query.containsKey("uploadId")) {
+                uploadPart(exchange, query);
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                completeMultipartUpload(exchange, key, query);
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                abortMultipartUpload(exchange, query);
+            } else if (method.equals("PUT")) {
+                putObject(exchange, key);
+            } else if (method.equals("GET") || method.equals("HEAD")) {
+                getObject(exchange, key, method.equals("HEAD"));
+            } else if (method.equals("DELETE")) {
+                deleteObject(exchange, key);
+            } else {
+                error(exchange, 501, "NotImplemented");
+            }
+        } catch (RuntimeException | IOException e) {
+            error(exchange, 500, "InternalError");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void putObject(HttpExchange exchange, String key) throws IOException {
+        StoredObject object = receive(exchange);
+        store(key, object);
+        exchange.getResponseHeaders().add("ETag", quote(object.eTag));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void getObject(HttpExchange exchange, String key, boolean headOnly) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            if (headOnly) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                error(exchange, 404, "NoSuchKey");
+            }
+            return;
+        }
+        long start = 0;
+        long end = object.size - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        boolean partial = range != null && range.startsWith("bytes=") && !headOnly;
+        if (partial) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, object.size - Long.parseLong(bounds[1]));
+            } else {
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? end : Math.min(end, Long.parseLong(bounds[1]));
+            }
+            if (start > end) {
+                error(exchange, 416, "InvalidRange");
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + object.size);
+        }
+        long length = end - start + 1;
+        exchange.getResponseHeaders().add("ETag", quote(object.eTag));
+        exchange.getResponseHeaders().add("Last-Modified", HTTP_DATE.format(object.lastModified));
+        exchange.getResponseHeaders().add("Content-Type", object.contentType);
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        if (headOnly) {
+            exchange.getResponseHeaders().add("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(partial ? 206 : 200, length == 0 ? -1 : length);
+        try (InputStream in = Files.newInputStream(object.file); OutputStream out = exchange.getResponseBody()) {
+            in.skip(start);
+            byte[] buffer = new byte[64 * 1024];
+            for (long remaining = length; remaining > 0; ) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private void deleteObject(HttpExchange exchange, String key) throws IOException {
+        StoredObject removed = objects.remove(key);
+        if (removed != null) {
+            Files.deleteIfExists(removed.file);
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void listObjects(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        String after = query.containsKey("continuation-token") ? query.get("continuation-token")
+                : query.getOrDefault("start-after", "");
+        SortedMap<String, StoredObject> candidates = after.isEmpty() ? objects.tailMap(prefix)
+                : objects.tailMap(after, false);
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        Iterator<Map.Entry<String, StoredObject>> entries = candidates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, StoredObject> entry = entries.next();
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            xml.append("<Contents><Key>").append(escape(entry.getKey())).append("</Key>")
+                    .append("<Size>").append(entry.getValue().size).append("</Size>")
+                    .append("<ETag>").append(escape(quote(entry.getValue().eTag))).append("</ETag>")
+                    .append("</Contents>");
+            last = entry.getKey();
+            count++;
+        }
+        xml.append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            xml.append("<NextContinuationToken>").append(escape(last)).append("</NextContinuationToken>");
+        }
+        xml.append("</ListBucketResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private void createMultipartUpload(HttpExchange exchange) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        xml(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Map<Integer, StoredObject> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        StoredObject part = receive(exchange);
+        StoredObject replaced = parts.put(Integer.parseInt(query.get("partNumber")), part);
+        if (replaced != null) {
+            Files.deleteIfExists(replaced.file);
+        }
+        exchange.getResponseHeaders().add("ETag", quote(part.eTag));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    /** Joins the parts in part-number order; the parts listed in the request body are taken on trust. */
+    private void completeMultipartUpload(HttpExchange exchange, String key, Map<String, String> query)
+            throws IOException {
+        Map<Integer, StoredObject> parts = uploads.remove(query.get("uploadId"));
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        Path file = newFile();
+        long size = 0;
+        ByteArrayOutputStream partDigests = new ByteArrayOutputStream();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (StoredObject part : new TreeMap<>(parts).values()) {
+                Files.copy(part.file, out);
+                size += part.size;
+                partDigests.write(unhex(part.eTag));
+                Files.deleteIfExists(part.file);
+            }
+        }
+        String eTag = hex(md5().digest(partDigests.toByteArray())) + "-" + parts.size();
+        store(key, new StoredObject(file, size, eTag, "application/octet-stream"));
+        xml(exchange, 200, "<CompleteMultipartUploadResult><Key>" + escape(key) + "</Key><ETag>"
+                + escape(quote(eTag)) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void abortMultipartUpload(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Map<Integer, StoredObject> parts = uploads.remove(query.get("uploadId"));
+        if (parts != null) {
+            for (StoredObject part : parts.values()) {
+                Files.deleteIfExists(part.file);
+            }
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    /** Writes the request body to a new file, decoding the SDK's signed {@code aws-chunked} framing if used. */
+    private StoredObject receive(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        InputStream body = exchange.getRequestBody();
+        if (payloadHash != null && payloadHash.startsWith("STREAMING-")) {
+            body = new AwsChunkedInputStream(body);
+        }
+        Path file = newFile();
+        DigestInputStream in = new DigestInputStream(body, md5());
+        long size = Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        drain(exchange);
+        return new StoredObject(file, size, hex(in.getMessageDigest().digest()),
+                contentType != null ? contentType : "application/octet-stream");
+    }
+
+    /**
+     * Reads the request body to its end. The JDK server only keeps a connection alive once it has seen the
+     * body's end, even an empty one, and the SDK reuses every connection it can.
+     */
+    private static void drain(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+    }
+
+    private void store(String key, StoredObject object) throws IOException {
+        StoredObject replaced = objects.put(key, object);
+        if (replaced != null) {
+            Files.deleteIfExists(replaced.file);
+        }
+    }
+
+    private Path newFile() throws IOException {
+        Path file = directory.resolve(Long.toString(fileIds.incrementAndGet()));
+        Files.newOutputStream(file, StandardOpenOption.CREATE_NEW).close();
+        return file;
+    }
+
+    private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static Map<String, String> query(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals), "UTF-8");
+                query.put(name, equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static String quote(String eTag) {
+        return "\"" + eTag + "\"";
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String md5Hex(byte[] content) {
+        return hex(md5().digest(content));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static final class StoredObject {
+
+        final Path file;
+        final long size;
+        final String eTag;
+        final String contentType;
+        final Instant lastModified = Instant.now();
+
+        StoredObject(Path file, long size, String eTag, String contentType) {
+            this.file = file;
+            this.size = size;
+            this.eTag = eTag;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Strips {@code aws-chunked} framing: {@code <hex size>;chunk-signature=<sig>\r\n<data>\r\n}, ending with
+     * a zero-size chunk. Signatures are not checked.
+     */
+    private static final class AwsChunkedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+        private boolean done;
+
+        AwsChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0 && !nextChunk()) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("Truncated chunk");
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                readLine();
+            }
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done) {
+                return false;
+            }
+            String header = readLine();
+            int semicolon = header.indexOf(';');
+            remaining = Long.parseLong(semicolon < 0 ? header : header.substring(0, semicolon), 16);
+            if (remaining == 0) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException("Truncated chunk header");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.awsstorage.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Thread pools for work that runs off the request thread.
+ * <p>
+ * Declaring our own executors switches off Spring Boot's {@code applicationTaskExecutor}, so the
+ * pool used to write streaming response bodies is configured here explicitly as well. With
+ * {@code threads.virtual.enabled=true} both pools start a virtual thread per task instead. Periodic
+ * housekeeping, such as expiring abandoned uploads, runs on Spring Boot's scheduler.
+ */
+@Configuration
+@EnableScheduling
+public class ExecutorConfig implements WebMvcConfigurer {
+
+    @Value("${transfer.threads:16}")
+    private int transferThreads;
+
+    @Value("${download.threads:200}")
+    private int downloadThreads;
+
+    @Value("${threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /** Bounded pool that S3 part uploads and other per-request fan-out run on. */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService transferExecutor() {
+        if (virtualThreads) {
+            return VirtualThreads.newExecutor("s3-transfer-vt-");
+        }
+        return Executors.newFixedThreadPool(transferThreads, new CustomizableThreadFactory("s3-transfer-"));
+    }
+
+    /** Pool that writes {@code StreamingResponseBody} downloads; one thread per download in progress. */
+    @Bean
+    public AsyncTaskExecutor downloadExecutor() {
+        if (virtualThreads) {
+            return new TaskExecutorAdapter(VirtualThreads.newExecutor("download-vt-"));
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(downloadThreads);
+        executor.setMaxPoolSize(downloadThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("download-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(downloadExecutor());
+    }
+}
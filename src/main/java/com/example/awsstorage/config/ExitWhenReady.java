@@ -0,0 +1,23 @@
+package com.example.awsstorage.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shuts the application down as soon as it is ready, with {@code startup.exitWhenReady=true}. This is the
+ * training run of the fast-start build: started with {@code -XX:ArchiveClassesAtExit}, the JVM records every
+ * class startup loaded into a class data sharing archive as it exits, and later starts map them from it
+ * instead of loading and verifying them again.
+ */
+@Component
+@ConditionalOnProperty(name = "startup.exitWhenReady", havingValue = "true")
+public class ExitWhenReady implements ApplicationListener<ApplicationReadyEvent> {
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
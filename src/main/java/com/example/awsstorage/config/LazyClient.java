@@ -0,0 +1,78 @@
+package com.example.awsstorage.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+/**
+ * Stands in for an SDK client or presigner until it is first called, so building it, which loads and initialises
+ * a large part of the SDK, happens after startup rather than during it. It is built once, by whichever caller
+ * gets there first; closing the stand-in before then builds nothing.
+ */
+final class LazyClient<T extends SdkAutoCloseable> implements InvocationHandler {
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private volatile T client;
+
+    private LazyClient(Class<T> type, Supplier<T> factory) {
+        this.type = type;
+        this.factory = factory;
+    }
+
+    static <T extends SdkAutoCloseable> T of(Class<T> type, Supplier<T> factory) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                new LazyClient<>(type, factory)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                if (method.getParameterCount() == 1) {
+                    return proxy == args[0];
+                }
+                break;
+            case "hashCode":
+                if (method.getParameterCount() == 0) {
+                    return System.identityHashCode(proxy);
+                }
+                break;
+            case "toString":
+                if (method.getParameterCount() == 0) {
+                    return "Lazy " + type.getSimpleName() + (client != null ? " (built)" : "");
+                }
+                break;
+            case "close":
+                if (method.getParameterCount() == 0 && client == null) {
+                    return null;
+                }
+                break;
+            default:
+                break;
+        }
+        try {
+            return method.invoke(client(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private T client() {
+        T built = client;
+        if (built == null) {
+            synchronized (this) {
+                built = client;
+                if (built == null) {
+                    built = factory.get();
+                    client = built;
+                }
+            }
+        }
+        return built;
+    }
+}
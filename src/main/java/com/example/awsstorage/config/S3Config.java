@@ -1,14 +1,38 @@
 package com.example.awsstorage.config;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Supplier;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.example.awsstorage.metrics.S3ApiMetrics;
+import com.example.awsstorage.metrics.S3CallCounter;
+import com.example.awsstorage.metrics.S3CallMetrics;
+import com.example.awsstorage.metrics.S3PoolMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
 
 
 @Configuration
@@ -23,15 +47,164 @@ public class S3Config {
     @Value("${region}")
     private String region;
 
+    @Value("${s3.async.maxConcurrency:1000}")
+    private int asyncMaxConcurrency;
+
+    @Value("${s3.maxConnections:50}")
+    private int maxConnections;
+
+    @Value("${threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${threads.virtual.maxConnections:1000}")
+    private int virtualThreadMaxConnections;
+
+    @Value("${s3.connectionAcquireTimeoutMillis:10000}")
+    private long connectionAcquireTimeoutMillis;
+
+    @Value("${s3.connectTimeoutMillis:2000}")
+    private long connectTimeoutMillis;
+
+    @Value("${s3.socketTimeoutMillis:30000}")
+    private long socketTimeoutMillis;
+
+    @Value("${s3.connectionMaxIdleMillis:60000}")
+    private long connectionMaxIdleMillis;
+
+    @Value("${s3.connectionTimeToLiveMillis:0}")
+    private long connectionTimeToLiveMillis;
+
+    @Value("${s3.tcpKeepAlive:true}")
+    private boolean tcpKeepAlive;
+
+    @Value("${s3.tcpNoDelay:true}")
+    private boolean tcpNoDelay;
+
+    @Value("${s3.retry.mode:standard}")
+    private String retryMode;
+
+    @Value("${s3.retry.maxAttempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${s3.pathStyleAccess:false}")
+    private boolean pathStyleAccess;
+
+    @Value("${s3.lazyInit:false}")
+    private boolean lazyInit;
+
+    /**
+     * With virtual threads there is no request-thread limit left to keep S3 concurrency in check, so the
+     * connection pool is sized from {@code threads.virtual.maxConnections} and becomes the limit itself.
+     * Apache's client always sets TCP_NODELAY, so {@code s3.tcpNoDelay} only applies to the async client.
+     */
     @Bean
-    public S3Client s3() {
-        AwsCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secret);
-        return S3Client.builder()
-                .region(Region.of(region))
-                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .build();
+    public S3Client s3(S3CallCounter s3CallCounter, S3CallMetrics s3CallMetrics,
+            MeterRegistry meterRegistry) {
+        return lazy(S3Client.class, () -> configure(S3Client.builder(), "sync", s3CallCounter, s3CallMetrics,
+                meterRegistry)
+                .serviceConfiguration(serviceConfiguration())
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(virtualThreads ? virtualThreadMaxConnections : maxConnections)
+                        .connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquireTimeoutMillis))
+                        .connectionTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .socketTimeout(Duration.ofMillis(socketTimeoutMillis))
+                        .connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleMillis))
+                        .connectionTimeToLive(Duration.ofMillis(connectionTimeToLiveMillis))
+                        .tcpKeepAlive(tcpKeepAlive))
+                .build());
+    }
+
+    /**
+     * Non-blocking client for {@code storage.mode=async}. Netty multiplexes every connection over a few
+     * event-loop threads, so {@code s3.async.maxConcurrency} transfers can be in flight without a thread each.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "storage.mode", havingValue = "async")
+    public S3AsyncClient s3Async(S3CallCounter s3CallCounter, S3CallMetrics s3CallMetrics,
+            MeterRegistry meterRegistry) {
+        return lazy(S3AsyncClient.class, () -> configure(S3AsyncClient.builder(), "async", s3CallCounter,
+                s3CallMetrics, meterRegistry)
+                .serviceConfiguration(serviceConfiguration())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(asyncMaxConcurrency)
+                        .connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquireTimeoutMillis))
+                        .connectionTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .readTimeout(Duration.ofMillis(socketTimeoutMillis))
+                        .writeTimeout(Duration.ofMillis(socketTimeoutMillis))
+                        .connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleMillis))
+                        .connectionTimeToLive(Duration.ofMillis(connectionTimeToLiveMillis))
+                        .tcpKeepAlive(tcpKeepAlive)
+                        .putChannelOption(ChannelOption.TCP_NODELAY, tcpNoDelay))
+                .build());
+    }
+
+    /**
+     * Signs URLs that let clients transfer objects with S3 directly, with the same credentials, region and
+     * endpoint as the clients. Signing is local; the presigner makes no requests of its own.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+    public S3Presigner s3Presigner() {
+        return lazy(S3Presigner.class, () -> {
+            S3Presigner.Builder builder = S3Presigner.builder()
+                    .region(Region.of(region))
+                    .credentialsProvider(credentialsProvider())
+                    .serviceConfiguration(serviceConfiguration());
+            if (!endpoint.isEmpty()) {
+                builder.endpointOverride(URI.create(endpoint));
+            }
+            return builder.build();
+        });
+    }
+
+    /**
+     * Settings and instrumentation shared by both clients. {@code s3.endpoint} points them at an S3-compatible
+     * stand-in instead of AWS, usually together with {@code s3.pathStyleAccess=true}. With
+     * {@code s3.retry.mode=adaptive} the client also slows its own request rate when S3 starts throttling,
+     * rather than only backing off per call.
+     * <p>
+     * Timeouts and idle limits default to the SDK's own values; two defaults deliberately differ. TCP
+     * keep-alive is on (the SDK leaves it off) so a pooled connection that a NAT or load balancer dropped while
+     * idle is detected instead of failing the next call on it. Retries use the standard mode rather than 2.17's
+     * legacy one, for its retry quota: once calls keep failing, the client stops retrying instead of
+     * multiplying the load on an S3 that is already struggling.
+     */
+    private <B extends AwsClientBuilder<B, ?>> B configure(B builder, String name, S3CallCounter s3CallCounter,
+            S3CallMetrics s3CallMetrics, MeterRegistry meterRegistry) {
+        builder.region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(s3CallCounter)
+                        .addExecutionInterceptor(s3CallMetrics)
+                        .addMetricPublisher(new S3ApiMetrics(meterRegistry, name))
+                        .addMetricPublisher(new S3PoolMetrics(meterRegistry, name))
+                        .retryPolicy(RetryPolicy.builder(RetryMode.valueOf(retryMode.toUpperCase(Locale.ROOT)))
+                                .numRetries(Math.max(0, retryMaxAttempts - 1))
+                                .build())
+                        .build());
+        if (!endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder;
+    }
+
+    /**
+     * The client or presigner, or with {@code s3.lazyInit=true} a stand-in that builds it on first use, keeping
+     * the SDK's class loading and initialisation out of startup; {@link S3Warmup} can build it right after.
+     */
+    private <T extends SdkAutoCloseable> T lazy(Class<T> type, Supplier<T> client) {
+        return lazyInit ? LazyClient.of(type, client) : client.get();
     }
-    
 
+    private S3Configuration serviceConfiguration() {
+        return S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build();
+    }
 
-}
\ No newline at end of file
+    private StaticCredentialsProvider credentialsProvider() {
+        AwsCredentials awsCredentials = AwsBasicCredentials.create(accessKey, secret);
+        return StaticCredentialsProvider.create(awsCredentials);
+    }
+}
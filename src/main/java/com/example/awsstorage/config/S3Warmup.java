@@ -0,0 +1,72 @@
+package com.example.awsstorage.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+
+/**
+ * Warms the S3 client the file service uses once the application is ready, with {@code s3.prewarmConnections}
+ * concurrent HeadBucket requests. That builds a client {@code s3.lazyInit} left unbuilt and opens as many pooled
+ * connections, DNS lookup and TLS handshake included, so the first requests served find them ready. The sync
+ * client's requests run on the transfer pool, so at most {@code transfer.threads} connections are opened. It all
+ * happens after the application reports ready; the result of each request, access denied included, is ignored.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3Warmup implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final S3Client s3;
+    private final ObjectProvider<S3AsyncClient> s3Async;
+    private final Executor executor;
+    private final String bucketName;
+    private final boolean async;
+    private final int connections;
+
+    public S3Warmup(S3Client s3, ObjectProvider<S3AsyncClient> s3Async,
+            @Qualifier("transferExecutor") Executor executor,
+            @Value("${bucketName}") String bucketName,
+            @Value("${storage.mode:sync}") String mode,
+            @Value("${s3.prewarmConnections:0}") int connections) {
+        this.s3 = s3;
+        this.s3Async = s3Async;
+        this.executor = executor;
+        this.bucketName = bucketName;
+        this.async = "async".equals(mode);
+        this.connections = connections;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (connections > 0) {
+            CompletableFuture.runAsync(this::warm, executor);
+        }
+    }
+
+    /** Sends the warm-up requests and waits for them to complete. */
+    public void warm() {
+        HeadBucketRequest request = HeadBucketRequest.builder().bucket(bucketName).build();
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+        S3AsyncClient asyncClient = async ? s3Async.getIfAvailable() : null;
+        for (int i = 0; i < connections; i++) {
+            if (asyncClient != null) {
+                requests.add(asyncClient.headBucket(request));
+            } else {
+                requests.add(CompletableFuture.runAsync(() -> s3.headBucket(request), executor));
+            }
+        }
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.awsstorage.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat request handling on virtual threads when {@code threads.virtual.enabled=true}.
+ * <p>
+ * A request blocked on S3 then parks its virtual thread instead of holding one of Tomcat's
+ * {@code server.tomcat.threads.max} platform threads, so concurrency is bounded by the S3 connection pool
+ * ({@code threads.virtual.maxConnections}) rather than by the thread count. {@link ExecutorConfig} switches
+ * the transfer and download pools over in the same mode.
+ */
+@Configuration
+@ConditionalOnProperty(name = "threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newExecutor("http-vt-");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.awsstorage.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.awsstorage.controller.AdmissionFilter;
+import com.example.awsstorage.metrics.S3CallCounter;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final S3CallCounter s3CallCounter;
+    private final AdmissionFilter admissionFilter;
+
+    public WebConfig(S3CallCounter s3CallCounter, AdmissionFilter admissionFilter) {
+        this.s3CallCounter = s3CallCounter;
+        this.admissionFilter = admissionFilter;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionFilter);
+        registry.addInterceptor(s3CallCounter);
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.awsstorage.controller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import com.example.awsstorage.exception.AdmissionRejectedException;
+import com.example.awsstorage.service.AdmissionControl;
+
+/**
+ * Puts every request that names a user through {@link AdmissionControl}, answering 429 with
+ * {@code Retry-After} when the user's queue is full.
+ * <p>
+ * Registered both as a handler interceptor, which admits the request once the user is known from the
+ * {@code userName} path variable, query parameter or, for handlers taking it as a request parameter, form
+ * field, and as a servlet filter, which paces the request and response bodies to the user's byte rate and
+ * releases the request's slot when it completes, after any asynchronous body has been written. Requests whose
+ * path matches {@code admission.bulkPaths} are bulk transfers. Reading a form field has the container parse a
+ * multipart body before admission, so the bodies of {@code /upload} and {@code /upload/batch} arrive unpaced
+ * and only their transfer to storage counts against the user's limits; bodies written with non-blocking I/O
+ * are not paced either.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT = AdmissionFilter.class.getName() + ".permit";
+
+    private final AdmissionControl admission;
+    private final List<String> bulkPaths;
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    public AdmissionFilter(AdmissionControl admission,
+            @Value("${admission.bulkPaths:/upload/**,/uploads/**,/bundle/**,/delete/*}") List<String> bulkPaths) {
+        this.admission = admission;
+        this.bulkPaths = bulkPaths;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admission.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean async = false;
+        try {
+            chain.doFilter(new PacedRequest(request), new PacedResponse(request, response));
+            async = request.isAsyncStarted();
+            if (async) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        release(request);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                        event.getAsyncContext().addListener(this);
+                    }
+                });
+            }
+        } finally {
+            if (!async) {
+                release(request);
+            }
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!admission.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST
+                || request.getAttribute(PERMIT) != null) {
+            return true;
+        }
+        String userName = userName(request, handler);
+        if (userName == null) {
+            return true;
+        }
+        try {
+            request.setAttribute(PERMIT, admission.admit(userName, isBulk(request)));
+            return true;
+        } catch (AdmissionRejectedException e) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getOutputStream().write("Too many requests".getBytes(StandardCharsets.UTF_8));
+            return false;
+        }
+    }
+
+    private static String userName(HttpServletRequest request, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request
+                .getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables != null && variables.get("userName") != null) {
+            return variables.get("userName");
+        }
+        // The handler reads the parameter anyway; otherwise stick to the query string, as asking for a parameter
+        // would make the container parse, and spool, a multipart body the handler means to stream.
+        if (handler instanceof HandlerMethod && takesUserName((HandlerMethod) handler)) {
+            return request.getParameter("userName");
+        }
+        if (request.getQueryString() == null) {
+            return null;
+        }
+        String userName = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                .getQueryParams().getFirst("userName");
+        return userName != null ? UriUtils.decode(userName, StandardCharsets.UTF_8) : null;
+    }
+
+    private static boolean takesUserName(HandlerMethod handler) {
+        for (MethodParameter parameter : handler.getMethodParameters()) {
+            RequestParam param = parameter.getParameterAnnotation(RequestParam.class);
+            if (param != null && "userName".equals(param.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBulk(HttpServletRequest request) {
+        Object path = request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        String requestPath = path != null ? path.toString() : request.getRequestURI();
+        return bulkPaths.stream().anyMatch(pattern -> matcher.match(pattern.trim(), requestPath));
+    }
+
+    private static AdmissionControl.Permit permit(HttpServletRequest request) {
+        return (AdmissionControl.Permit) request.getAttribute(PERMIT);
+    }
+
+    private static void release(HttpServletRequest request) {
+        AdmissionControl.Permit permit = permit(request);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static final class PacedRequest extends HttpServletRequestWrapper {
+        private ServletInputStream in;
+
+        PacedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new PacedInputStream((HttpServletRequest) getRequest(), super.getInputStream());
+            }
+            return in;
+        }
+    }
+
+    private static final class PacedResponse extends HttpServletResponseWrapper {
+        private final HttpServletRequest request;
+        private ServletOutputStream out;
+
+        PacedResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new PacedOutputStream(request, super.getOutputStream());
+            }
+            return out;
+        }
+    }
+
+    /** Takes from the user's byte rate after each read, once the request has been admitted. */
+    private static final class PacedInputStream extends ServletInputStream {
+        private final HttpServletRequest request;
+        private final ServletInputStream in;
+        private boolean nonBlocking;
+
+        PacedInputStream(HttpServletRequest request, ServletInputStream in) {
+            this.request = request;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                pace(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                pace(read);
+            }
+            return read;
+        }
+
+        private void pace(int bytes) throws IOException {
+            AdmissionControl.Permit permit = permit(request);
+            if (permit != null && !nonBlocking) {
+                permit.throttle(bytes);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return in.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            nonBlocking = true;
+            in.setReadListener(readListener);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Takes from the user's byte rate before each write, once the request has been admitted. */
+    private static final class PacedOutputStream extends ServletOutputStream {
+        private final HttpServletRequest request;
+        private final ServletOutputStream out;
+        private boolean nonBlocking;
+
+        PacedOutputStream(HttpServletRequest request, ServletOutputStream out) {
+            this.request = request;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pace(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            pace(len);
+            out.write(b, off, len);
+        }
+
+        private void pace(int bytes) throws IOException {
+            AdmissionControl.Permit permit = permit(request);
+            if (permit != null && !nonBlocking) {
+                permit.throttle(bytes);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            nonBlocking = true;
+            out.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.awsstorage.controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.awsstorage.entity.AsyncFileDownload;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.InvalidUserNameException;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.IAsyncFileService;
+
+import software.amazon.awssdk.core.async.SdkPublisher;
+
+/**
+ * Same API as {@link FileController}, served without holding a request thread while S3 works.
+ * Selected with {@code storage.mode=async}.
+ * <p>
+ * Downloads are piped from the SDK's publisher to the response with servlet non-blocking I/O. Only single
+ * ranges are honoured; a multi-range request is answered with the whole object, which HTTP permits. Zip
+ * archive and streamed multipart uploads need a blocking read of the request body, and zip bundle downloads
+ * blocking reads of many objects, so they are only offered by {@link FileController}.
+ */
+@RestController
+@ConditionalOnProperty(name = "storage.mode", havingValue = "async")
+public class AsyncFileController {
+
+    private final IAsyncFileService fileService;
+
+    public AsyncFileController(IAsyncFileService fileService) {
+        this.fileService = fileService;
+    }
+
+    @PostMapping("/upload")
+    public CompletableFuture<String> upload(@RequestParam("file") MultipartFile file, @RequestParam("userName") String userName) {
+        return fileService.saveFile(file, userName);
+    }
+
+    @PostMapping("/upload/batch")
+    public CompletableFuture<ResponseEntity<BatchUploadResult>> uploadFiles(@RequestParam("files") List<MultipartFile> files,
+            @RequestParam("userName") String userName) {
+        return fileService.saveFiles(files, userName).thenApply(ResponseEntity::ok);
+    }
+
+    @GetMapping("/download/{userName}/{filename}")
+    public void download(@PathVariable("userName") String userName, @PathVariable("filename") String filename,
+            @RequestHeader HttpHeaders requestHeaders, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+        DownloadOptions options = DownloadOptions.builder()
+                .range(ranges.size() == 1 ? HttpRange.toString(ranges) : null)
+                .ifNoneMatch(requestHeaders.getIfNoneMatch().isEmpty() ? null
+                        : String.join(", ", requestHeaders.getIfNoneMatch()))
+                .ifModifiedSince(requestHeaders.getIfModifiedSince() < 0 ? null
+                        : Instant.ofEpochMilli(requestHeaders.getIfModifiedSince()))
+                .build();
+        // Started before going async, so a request it rejects outright reaches the exception handlers.
+        CompletableFuture<AsyncFileDownload> found = fileService.streamFile(userName, filename, options);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(0);
+        ServletOutputSubscriber subscriber = new ServletOutputSubscriber(asyncContext);
+        found.whenComplete((download, e) -> {
+            if (e != null) {
+                writeError(response, subscriber, e instanceof CompletionException ? e.getCause() : e);
+                return;
+            }
+            try {
+                writeHeaders(response, filename, download);
+                download.getBody().subscribe(subscriber);
+            } catch (RuntimeException failure) {
+                // Nothing has been written yet. Left unanswered, the request would never complete, as it has
+                // no timeout.
+                response.reset();
+                writeError(response, subscriber, failure);
+            }
+        });
+    }
+
+    @DeleteMapping("/delete/{userName}/{filename}")
+    public CompletableFuture<ResponseEntity<String>> deleteFile(@PathVariable("userName") String userName, @PathVariable("filename") String filename) {
+        return fileService.deleteFile(userName, filename).thenApply(isDeleted -> isDeleted
+                ? ResponseEntity.ok("File deleted")
+                : ResponseEntity.status(HttpStatus.NOT_FOUND).body("File or user not found"));
+    }
+
+    @PostMapping("/delete/{userName}")
+    public CompletableFuture<ResponseEntity<BatchDeleteResult>> deleteFiles(@PathVariable("userName") String userName,
+            @RequestBody List<String> filenames) {
+        return fileService.deleteFiles(userName, filenames).thenApply(ResponseEntity::ok);
+    }
+
+    @DeleteMapping("/delete/{userName}")
+    public CompletableFuture<ResponseEntity<BatchDeleteResult>> deleteAllFiles(@PathVariable("userName") String userName) {
+        return fileService.deleteAllFiles(userName).thenApply(ResponseEntity::ok);
+    }
+
+    @GetMapping("/list/{userName}")
+    public CompletableFuture<ResponseEntity<List<String>>> getAllFiles(@PathVariable("userName") String userName) {
+        return fileService.listAllFiles(userName).thenApply(files -> files.isEmpty()
+                ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonList("No files found for the user."))
+                : ResponseEntity.ok(files));
+    }
+
+    @GetMapping(value = "/list/{userName}", params = "pageSize")
+    public CompletableFuture<ResponseEntity<FilePage>> getFilePage(@PathVariable("userName") String userName,
+            @RequestParam("pageSize") int pageSize,
+            @RequestParam(value = "continuationToken", required = false) String continuationToken) {
+        return fileService.listFiles(userName, pageSize, continuationToken).thenApply(ResponseEntity::ok);
+    }
+
+    /** Files with their details, and folders when a delimiter is given; see {@link ListOptions}. */
+    @GetMapping("/list/{userName}/entries")
+    public CompletableFuture<ResponseEntity<FileListing>> listEntries(@PathVariable("userName") String userName,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "delimiter", required = false) String delimiter,
+            @RequestParam(value = "modifiedSince", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedSince,
+            @RequestParam(value = "pageSize", defaultValue = "1000") int pageSize,
+            @RequestParam(value = "continuationToken", required = false) String continuationToken) {
+        ListOptions options = ListOptions.builder()
+                .prefix(prefix)
+                .delimiter(delimiter)
+                .modifiedSince(modifiedSince)
+                .pageSize(pageSize)
+                .continuationToken(continuationToken)
+                .build();
+        return fileService.listEntries(userName, options).thenApply(ResponseEntity::ok);
+    }
+
+    /** Every key as NDJSON; the next listing page is only fetched once the client has taken the last. */
+    @GetMapping(value = "/list/{userName}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamAllFiles(@PathVariable("userName") String userName, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        SdkPublisher<String> keys = fileService.streamAllFiles(userName);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(0);
+        keys.map(key -> ByteBuffer.wrap(Ndjson.line(key)))
+                .subscribe(new ServletOutputSubscriber(asyncContext));
+    }
+
+    @ExceptionHandler(InvalidUserNameException.class)
+    public ResponseEntity<String> invalidUserName(InvalidUserNameException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static void writeHeaders(HttpServletResponse response, String filename, AsyncFileDownload download) {
+        response.setStatus(download.isPartial() ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(download.getContentType() != null ? download.getContentType() : MediaType.ALL_VALUE);
+        if (download.getContentLength() != null) {
+            response.setContentLengthLong(download.getContentLength());
+        }
+        if (download.getETag() != null) {
+            response.setHeader(HttpHeaders.ETAG, download.getETag());
+        }
+        if (download.getLastModified() != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, download.getLastModified().toEpochMilli());
+        }
+        if (download.isPartial()) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, download.getContentRange());
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, ServletOutputSubscriber subscriber, Throwable error) {
+        if (error instanceof NotModifiedException) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            String eTag = ((NotModifiedException) error).getETag();
+            if (eTag != null) {
+                response.setHeader(HttpHeaders.ETAG, eTag);
+            }
+            subscriber.complete(new byte[0]);
+        } else if (error instanceof RangeNotSatisfiableException) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            subscriber.complete(new byte[0]);
+        } else if (error instanceof StoredFileNotFoundException) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            subscriber.complete("File not found".getBytes(StandardCharsets.UTF_8));
+        } else {
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            subscriber.complete(new byte[0]);
+        }
+    }
+}
@@ -1,54 +1,287 @@
 package com.example.awsstorage.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.MimeTypeUtils;
 
-import com.example.awsstorage.service.S3FileService;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.InvalidUserNameException;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.IFileService;
+import com.example.awsstorage.service.MultipartReader;
+import com.example.awsstorage.service.ZipBundler;
 
 @RestController
+@ConditionalOnProperty(name = "storage.mode", havingValue = "sync", matchIfMissing = true)
 public class FileController {
 
     @Autowired
-    private S3FileService s3Service;
+    private IFileService fileService;
 
-    public void setS3Service(S3FileService s3Service) {
-        this.s3Service = s3Service;
+    @Autowired
+    private ZipBundler zipBundler;
+
+    @Value("${download.bufferSize:65536}")
+    private int downloadBufferSize = 64 * 1024;
+
+    @Value("${upload.streamBufferSize:65536}")
+    private int uploadBufferSize = 64 * 1024;
+
+    public void setFileService(IFileService fileService) {
+        this.fileService = fileService;
+    }
+
+    public void setZipBundler(ZipBundler zipBundler) {
+        this.zipBundler = zipBundler;
     }
 
     @PostMapping("/upload")
     public String upload(@RequestParam("file") MultipartFile file, @RequestParam("userName") String userName) {
-        return s3Service.saveFile(file, userName);
+        return fileService.saveFile(file, userName);
     }
 
+    /**
+     * Streams the {@code file} part of a multipart request into storage while the request is still arriving,
+     * where {@link #upload} has the whole request spooled first. The user comes from the path because reading a
+     * form field would make the container parse, and spool, the entire body; fields before the file are skipped
+     * and anything after it is ignored.
+     */
+    @PostMapping(value = "/upload/stream/{userName}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<String> uploadStream(@PathVariable("userName") String userName,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        try {
+            MultipartReader parts = new MultipartReader(body,
+                    MediaType.parseMediaType(contentType).getParameter("boundary"), uploadBufferSize);
+            for (MultipartReader.Part part = parts.next(); part != null; part = parts.next()) {
+                if ("file".equals(part.getName()) && part.getFilename() != null) {
+                    return ResponseEntity.ok(fileService.saveFile(userName, part.getFilename(),
+                            part.getContentType(), part.getContent()));
+                }
+            }
+            return ResponseEntity.badRequest().body("No file part");
+        } catch (IOException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Could not read upload: " + e.getMessage());
+        }
+    }
+
+    /** Uploads every {@code files} part of one request, reporting the outcome per file. */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<BatchUploadResult> uploadFiles(@RequestParam("files") List<MultipartFile> files,
+            @RequestParam("userName") String userName) {
+        return ResponseEntity.ok(fileService.saveFiles(files, userName));
+    }
+
+    /** Explodes a zip archive sent as the request body into the user's files while it is still arriving. */
+    @PostMapping(value = "/upload/archive", consumes = "application/zip")
+    public ResponseEntity<BatchUploadResult> uploadArchive(@RequestParam("userName") String userName,
+            InputStream body) {
+        return ResponseEntity.ok(fileService.saveArchive(body, userName));
+    }
+
+    /**
+     * Declared as {@code ResponseEntity<StreamingResponseBody>} so Spring MVC recognises the streaming body;
+     * lookup failures are raised as exceptions and mapped to their status by the handlers below.
+     */
     @GetMapping("/download/{userName}/{filename}")
-    public ResponseEntity<?> download(@PathVariable("userName") String userName, @PathVariable("filename") String filename) {
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable("userName") String userName, @PathVariable("filename") String filename,
+            @RequestHeader HttpHeaders requestHeaders) {
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        }
+        DownloadOptions options = DownloadOptions.builder()
+                .range(ranges.isEmpty() ? null : HttpRange.toString(ranges.subList(0, 1)))
+                .ifNoneMatch(requestHeaders.getIfNoneMatch().isEmpty() ? null
+                        : requestHeaders.getIfNoneMatch().stream()
+                                // If-None-Match compares weakly; S3 only knows the strong form.
+                                .map(eTag -> eTag.startsWith("W/") ? eTag.substring(2) : eTag)
+                                .collect(Collectors.joining(", ")))
+                .ifModifiedSince(requestHeaders.getIfModifiedSince() < 0 ? null
+                        : Instant.ofEpochMilli(requestHeaders.getIfModifiedSince()))
+                .acceptEncoding(requestHeaders.containsKey(HttpHeaders.ACCEPT_ENCODING)
+                        ? String.join(", ", requestHeaders.get(HttpHeaders.ACCEPT_ENCODING)) : null)
+                .build();
+        FileDownload download = fileService.streamFile(userName, filename, options);
+        if (ranges.size() > 1 && download.isPartial()) {
+            return downloadRanges(userName, filename, ranges, options, download);
+        }
+        HttpHeaders headers = downloadHeaders(filename, download);
+        headers.add("Content-type", contentType(filename, download));
+        if (download.getContentEncoding() != null) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, download.getContentEncoding());
+        }
+        if (download.getContentLength() != null) {
+            headers.setContentLength(download.getContentLength());
+        }
+        if (download.isPartial()) {
+            headers.add(HttpHeaders.CONTENT_RANGE, download.getContentRange());
+        }
+        HttpStatus status = download.isPartial() ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK;
+        StreamingResponseBody body = out -> {
+            try (FileDownload content = download) {
+                content.transferTo(out, downloadBufferSize);
+            }
+        };
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    /**
+     * Serves a multi-range request as {@code multipart/byteranges}. S3 answers one range per GET, so the
+     * first range is fetched up front to settle preconditions and the rest are fetched one at a time while
+     * writing, pinned to the first response's ETag so every part comes from the same object version.
+     */
+    private ResponseEntity<StreamingResponseBody> downloadRanges(String userName, String filename, List<HttpRange> ranges,
+            DownloadOptions options, FileDownload first) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        String partType = contentType(filename, first);
+        DownloadOptions partOptions = options.toBuilder().ifMatch(first.getETag()).build();
+        HttpHeaders headers = downloadHeaders(filename, first);
+        headers.add("Content-type", "multipart/byteranges; boundary=" + boundary);
+        StreamingResponseBody body = out -> {
+            for (int i = 0; i < ranges.size(); i++) {
+                FileDownload part = i == 0 ? first : fileService.streamFile(userName, filename,
+                        partOptions.toBuilder().range(HttpRange.toString(ranges.subList(i, i + 1))).build());
+                try (FileDownload content = part) {
+                    writeAscii(out, "\r\n--" + boundary + "\r\n"
+                            + "Content-Type: " + partType + "\r\n"
+                            + "Content-Range: " + content.getContentRange() + "\r\n\r\n");
+                    content.transferTo(out, downloadBufferSize);
+                }
+            }
+            writeAscii(out, "\r\n--" + boundary + "--\r\n");
+        };
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+    }
+
+    @ExceptionHandler(StoredFileNotFoundException.class)
+    public ResponseEntity<String> fileNotFound(StoredFileNotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("File not found");
+    }
+
+    @ExceptionHandler(InvalidUserNameException.class)
+    public ResponseEntity<String> invalidUserName(InvalidUserNameException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(NotModifiedException.class)
+    public ResponseEntity<Void> notModified(NotModifiedException e) {
+        HttpHeaders headers = new HttpHeaders();
+        if (e.getETag() != null) {
+            headers.setETag(e.getETag());
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
+
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<Void> rangeNotSatisfiable(RangeNotSatisfiableException e) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+    }
+
+    /**
+     * Streams the user's files under {@code prefix}, or only those named in {@code files}, as one zip archive,
+     * deflated unless {@code compression=store}. Files that do not exist are left out, and a name given twice is
+     * bundled once, as a zip cannot hold two entries of one name.
+     */
+    @GetMapping("/bundle/{userName}")
+    public ResponseEntity<StreamingResponseBody> downloadBundle(@PathVariable("userName") String userName,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "files", required = false) List<String> files,
+            @RequestParam(value = "compression", defaultValue = "deflate") String compression) {
+        return bundle(userName, files != null ? files.stream().distinct().iterator()
+                : zipBundler.filesUnder(userName, prefix), compression);
+    }
+
+    /** The same archive for a list of names too long for a URL, sent as a JSON array. */
+    @PostMapping("/bundle/{userName}")
+    public ResponseEntity<StreamingResponseBody> downloadBundle(@PathVariable("userName") String userName,
+            @RequestBody List<String> files,
+            @RequestParam(value = "compression", defaultValue = "deflate") String compression) {
+        return bundle(userName, files.stream().distinct().iterator(), compression);
+    }
+
+    private ResponseEntity<StreamingResponseBody> bundle(String userName, Iterator<String> filenames,
+            String compression) {
+        if (!compression.equals("deflate") && !compression.equals("store")) {
+            return ResponseEntity.badRequest().build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=" + userName + ".zip");
+        headers.add("Content-type", "application/zip");
+        StreamingResponseBody body = out -> zipBundler.write(userName, filenames, compression.equals("deflate"), out);
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    private static HttpHeaders downloadHeaders(String filename, FileDownload download) {
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-type", MediaType.ALL_VALUE);
         headers.add("Content-Disposition", "attachment; filename=" + filename);
-        try {
-            byte[] bytes = s3Service.downloadFile(userName, filename);
-            return ResponseEntity.ok().headers(headers).body(bytes);
-        } catch (RuntimeException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("File not found");
+        headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (download.getETag() != null) {
+            headers.setETag(download.getETag());
+        }
+        if (download.getLastModified() != null) {
+            headers.setLastModified(download.getLastModified());
         }
+        return headers;
+    }
+
+    /** The stored content type, else one guessed from the file name, else {@code application/octet-stream}. */
+    private static String contentType(String filename, FileDownload download) {
+        if (download.getContentType() != null) {
+            return download.getContentType();
+        }
+        return MediaTypeFactory.getMediaType(filename)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
     }
     
     @DeleteMapping("/delete/{userName}/{filename}")
     public ResponseEntity<String> deleteFile(@PathVariable("userName") String userName, @PathVariable("filename") String filename) {
-        boolean isDeleted = s3Service.deleteFile(userName, filename);
+        boolean isDeleted = fileService.deleteFile(userName, filename);
         if (isDeleted) {
             return ResponseEntity.ok("File deleted");
         } else {
@@ -56,9 +289,22 @@ public class FileController {
         }
     }
 
+    /** Deletes the files named in the body, a thousand per S3 request, and reports the outcome per file. */
+    @PostMapping("/delete/{userName}")
+    public ResponseEntity<BatchDeleteResult> deleteFiles(@PathVariable("userName") String userName,
+            @RequestBody List<String> filenames) {
+        return ResponseEntity.ok(fileService.deleteFiles(userName, filenames));
+    }
+
+    /** Deletes every file the user has. */
+    @DeleteMapping("/delete/{userName}")
+    public ResponseEntity<BatchDeleteResult> deleteAllFiles(@PathVariable("userName") String userName) {
+        return ResponseEntity.ok(fileService.deleteAllFiles(userName));
+    }
+
     @GetMapping("/list/{userName}")
     public ResponseEntity<List<String>> getAllFiles(@PathVariable("userName") String userName) {
-        List<String> files = s3Service.listAllFiles(userName);
+        List<String> files = fileService.listAllFiles(userName);
         
         if (files.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -67,5 +313,53 @@ public class FileController {
         return ResponseEntity.ok(files);
     }
 
+    /** One page of keys; pass the returned {@code nextContinuationToken} back to get the next one. */
+    @GetMapping(value = "/list/{userName}", params = "pageSize")
+    public ResponseEntity<FilePage> getFilePage(@PathVariable("userName") String userName,
+            @RequestParam("pageSize") int pageSize,
+            @RequestParam(value = "continuationToken", required = false) String continuationToken) {
+        return ResponseEntity.ok(fileService.listFiles(userName, pageSize, continuationToken));
+    }
+
+    /**
+     * Files with their size, ETag, modification time and storage class, and the folders a {@code delimiter}
+     * rolls names up into, narrowed by {@code prefix} and {@code modifiedSince} (ISO-8601); see
+     * {@link ListOptions}.
+     */
+    @GetMapping("/list/{userName}/entries")
+    public ResponseEntity<FileListing> listEntries(@PathVariable("userName") String userName,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "delimiter", required = false) String delimiter,
+            @RequestParam(value = "modifiedSince", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedSince,
+            @RequestParam(value = "pageSize", defaultValue = "1000") int pageSize,
+            @RequestParam(value = "continuationToken", required = false) String continuationToken) {
+        ListOptions options = ListOptions.builder()
+                .prefix(prefix)
+                .delimiter(delimiter)
+                .modifiedSince(modifiedSince)
+                .pageSize(pageSize)
+                .continuationToken(continuationToken)
+                .build();
+        return ResponseEntity.ok(fileService.listEntries(userName, options));
+    }
+
+    /**
+     * Every key as NDJSON, written while the listing is walked page by page so neither side holds the
+     * whole key set.
+     */
+    @GetMapping(value = "/list/{userName}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFiles(@PathVariable("userName") String userName) {
+        StreamingResponseBody body = out -> {
+            try (Stream<String> files = fileService.streamAllFiles(userName)) {
+                Iterator<String> keys = files.iterator();
+                while (keys.hasNext()) {
+                    out.write(Ndjson.line(keys.next()));
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     
 }
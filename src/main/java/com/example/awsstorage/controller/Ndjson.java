@@ -0,0 +1,24 @@
+package com.example.awsstorage.controller;
+
+import java.io.ByteArrayOutputStream;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Encodes file keys as newline-delimited JSON: one quoted JSON string per line.
+ */
+final class Ndjson {
+
+    private Ndjson() {
+    }
+
+    static byte[] line(String value) {
+        byte[] quoted = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(quoted.length + 3);
+        line.write('"');
+        line.write(quoted, 0, quoted.length);
+        line.write('"');
+        line.write('\n');
+        return line.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.awsstorage.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.awsstorage.entity.PresignedMultipartUpload;
+import com.example.awsstorage.entity.PresignedUrl;
+import com.example.awsstorage.entity.UploadedPart;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.PresignedUrlService;
+
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+
+/**
+ * Presigned URLs for clients to upload and download directly with S3, available with either
+ * {@code storage.mode} as long as files are kept in S3.
+ */
+@RestController
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class PresignedUrlController {
+
+    @Autowired
+    private PresignedUrlService presignedUrlService;
+
+    public void setPresignedUrlService(PresignedUrlService presignedUrlService) {
+        this.presignedUrlService = presignedUrlService;
+    }
+
+    @GetMapping("/presign/download/{userName}/{filename}")
+    public ResponseEntity<PresignedUrl> presignDownload(@PathVariable("userName") String userName,
+            @PathVariable("filename") String filename) {
+        return ResponseEntity.ok(presignedUrlService.presignDownload(userName, filename));
+    }
+
+    /** A URL to PUT the whole file to; send {@code contentType}, if given, as the upload's Content-Type. */
+    @PostMapping("/presign/upload/{userName}/{filename}")
+    public ResponseEntity<PresignedUrl> presignUpload(@PathVariable("userName") String userName,
+            @PathVariable("filename") String filename,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+        return ResponseEntity.ok(presignedUrlService.presignUpload(userName, filename, contentType));
+    }
+
+    /** Starts a multipart upload of {@code size} bytes, returning a URL per part. */
+    @PostMapping("/presign/multipart/{userName}/{filename}")
+    public ResponseEntity<PresignedMultipartUpload> startMultipartUpload(@PathVariable("userName") String userName,
+            @PathVariable("filename") String filename, @RequestParam("size") long size,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+        return ResponseEntity.ok(presignedUrlService.startMultipartUpload(userName, filename, contentType, size));
+    }
+
+    /** Completes a multipart upload from the part numbers and ETags the client collected. */
+    @PostMapping("/presign/multipart/{userName}/{filename}/{uploadId}")
+    public ResponseEntity<String> completeMultipartUpload(@PathVariable("userName") String userName,
+            @PathVariable("filename") String filename, @PathVariable("uploadId") String uploadId,
+            @RequestBody List<UploadedPart> parts) {
+        presignedUrlService.completeMultipartUpload(userName, filename, uploadId, parts);
+        return ResponseEntity.ok("File uploaded");
+    }
+
+    @DeleteMapping("/presign/multipart/{userName}/{filename}/{uploadId}")
+    public ResponseEntity<String> abortMultipartUpload(@PathVariable("userName") String userName,
+            @PathVariable("filename") String filename, @PathVariable("uploadId") String uploadId) {
+        presignedUrlService.abortMultipartUpload(userName, filename, uploadId);
+        return ResponseEntity.ok("Upload aborted");
+    }
+
+    @ExceptionHandler({ StoredFileNotFoundException.class, NoSuchUploadException.class })
+    public ResponseEntity<String> notFound(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e instanceof NoSuchUploadException
+                ? "Upload not found" : "File not found");
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
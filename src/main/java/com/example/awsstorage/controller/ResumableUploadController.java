@@ -0,0 +1,92 @@
+package com.example.awsstorage.controller;
+
+import java.io.InputStream;
+import java.net.URI;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.awsstorage.entity.UploadStatus;
+import com.example.awsstorage.exception.UploadNotFoundException;
+import com.example.awsstorage.service.ResumableUploadService;
+
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+
+/**
+ * Resumable uploads: create one for the file's size, PUT its parts in any order, and after a dropped connection
+ * GET its status to see which parts are still missing. Available with either {@code storage.mode} as long as
+ * files are kept in S3.
+ */
+@RestController
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class ResumableUploadController {
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    public void setResumableUploadService(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadStatus> create(@RequestParam("userName") String userName,
+            @RequestParam("filename") String filename, @RequestParam("size") long size,
+            @RequestParam(value = "contentType", required = false) String contentType) {
+        UploadStatus status = resumableUploadService.create(userName, filename, contentType, size);
+        return ResponseEntity.created(URI.create("/uploads/" + status.getId())).body(status);
+    }
+
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<UploadStatus> status(@PathVariable("id") String id) {
+        return ResponseEntity.ok(resumableUploadService.status(id));
+    }
+
+    /** The raw body is the part; a Content-MD5 header has S3 reject it if it arrived damaged. */
+    @PutMapping("/uploads/{id}/parts/{partNumber}")
+    public ResponseEntity<UploadStatus> uploadPart(@PathVariable("id") String id,
+            @PathVariable("partNumber") int partNumber, InputStream body,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(value = "Content-MD5", required = false) String contentMd5) {
+        return ResponseEntity.ok(resumableUploadService.uploadPart(id, partNumber, body,
+                contentLength != null ? contentLength : -1, contentMd5));
+    }
+
+    @PostMapping("/uploads/{id}/complete")
+    public ResponseEntity<String> complete(@PathVariable("id") String id) {
+        resumableUploadService.complete(id);
+        return ResponseEntity.ok("File uploaded");
+    }
+
+    @DeleteMapping("/uploads/{id}")
+    public ResponseEntity<String> abort(@PathVariable("id") String id) {
+        resumableUploadService.abort(id);
+        return ResponseEntity.ok("Upload aborted");
+    }
+
+    @ExceptionHandler({ UploadNotFoundException.class, NoSuchUploadException.class })
+    public ResponseEntity<String> notFound(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload not found");
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.awsstorage.controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Writes a stream of buffers to an async servlet response using non-blocking I/O.
+ * <p>
+ * One buffer is requested at a time and only once the container reports the output as ready, so a slow
+ * client pushes back on the S3 connection instead of parking a thread or queueing the object in memory.
+ * The response is completed when the publisher finishes, fails, or the client goes away.
+ */
+public class ServletOutputSubscriber implements Subscriber<ByteBuffer>, WriteListener {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Subscription subscription;
+    private volatile ByteBuffer pending;
+    private volatile boolean demanded;
+    private volatile boolean upstreamDone;
+    private volatile boolean failed;
+    private volatile boolean finished;
+
+    /**
+     * Must be created on the container thread that started {@code asyncContext}, since it registers itself
+     * as the response's write listener.
+     */
+    public ServletOutputSubscriber(AsyncContext asyncContext) throws IOException {
+        this.asyncContext = asyncContext;
+        this.out = asyncContext.getResponse().getOutputStream();
+        out.setWriteListener(this);
+    }
+
+    /** Writes a final fixed body, such as an error message, and completes the response. */
+    public void complete(byte[] body) {
+        pending = ByteBuffer.wrap(body);
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer buffer) {
+        pending = buffer;
+        demanded = false;
+        drain();
+    }
+
+    /** Called both by the publisher when the download fails and by the container when the write fails. */
+    @Override
+    public void onError(Throwable error) {
+        failed = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    /**
+     * Moves data forward from whichever thread calls it: the container's (output became ready) or the
+     * publisher's (data or completion arrived). Concurrent calls collapse into one more pass by the thread
+     * already draining.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            drainOnce();
+        } while (wip.decrementAndGet() != 0);
+    }
+
+    private void drainOnce() {
+        if (finished) {
+            return;
+        }
+        if (failed) {
+            abort();
+            return;
+        }
+        try {
+            while (out.isReady()) {
+                ByteBuffer buffer = pending;
+                if (buffer != null) {
+                    pending = null;
+                    write(buffer);
+                    continue;
+                }
+                if (upstreamDone) {
+                    finish();
+                } else if (subscription != null && !demanded) {
+                    demanded = true;
+                    subscription.request(1);
+                }
+                return;
+            }
+        } catch (IOException e) {
+            abort();
+        }
+    }
+
+    private void abort() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        if (!response.isCommitted()) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        finish();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            asyncContext.complete();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.awsstorage.entity;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import org.reactivestreams.Publisher;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * An object body as a reactive stream together with the response metadata needed to serve it.
+ * The body must be subscribed to exactly once; cancelling the subscription releases the connection.
+ */
+@Getter
+@Builder
+public class AsyncFileDownload {
+    private final Publisher<ByteBuffer> body;
+    private final Long contentLength;
+    private final String eTag;
+    private final String contentType;
+    private final Instant lastModified;
+    /** The {@code Content-Range} of a partial body, or {@code null} for a full one. */
+    private final String contentRange;
+
+    public boolean isPartial() {
+        return contentRange != null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.awsstorage.entity;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Outcome of a batch delete. {@code deleted} lists the deleted files for an explicit batch and is left out
+ * when a whole prefix is purged, where only the count is kept; {@code failed} maps each file that could not
+ * be deleted to S3's reason.
+ */
+@Getter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchDeleteResult {
+
+    private final long deletedCount;
+    private final List<String> deleted;
+    private final Map<String, String> failed;
+}
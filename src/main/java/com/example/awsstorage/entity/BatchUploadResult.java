@@ -0,0 +1,19 @@
+package com.example.awsstorage.entity;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Outcome of a bulk upload: the files stored, and each file that was not mapped to the reason.
+ */
+@Getter
+@Builder
+public class BatchUploadResult {
+
+    private final long uploadedCount;
+    private final List<String> uploaded;
+    private final Map<String, String> failed;
+}
@@ -0,0 +1,24 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Range and precondition headers to forward to the object store with a download.
+ * Unset fields are simply not sent. {@code acceptEncoding} is the client's {@code Accept-Encoding}, which
+ * decides whether a compressed object is sent as stored or decompressed.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class DownloadOptions {
+
+    public static final DownloadOptions NONE = DownloadOptions.builder().build();
+
+    private final String range;
+    private final String ifMatch;
+    private final String ifNoneMatch;
+    private final Instant ifModifiedSince;
+    private final String acceptEncoding;
+}
@@ -0,0 +1,79 @@
+package com.example.awsstorage.entity;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * An open object body together with the response metadata needed to serve it.
+ * The caller owns the stream and must close it once the body has been written.
+ */
+@Getter
+@Builder
+public class FileDownload implements Closeable {
+    private final InputStream content;
+    private final Long contentLength;
+    private final String eTag;
+    private final String contentType;
+    /** The coding the body is compressed with, as sent in {@code Content-Encoding}; {@code null} if none. */
+    private final String contentEncoding;
+    private final Instant lastModified;
+    /** The {@code Content-Range} of a partial body, or {@code null} for a full one. */
+    private final String contentRange;
+    /**
+     * Open channel on a complete local file holding this body from {@code channelOffset} on, set when it is
+     * served from local disk. It is the channel {@code content} reads from, and is closed with it.
+     */
+    private final FileChannel channel;
+    private final long channelOffset;
+
+    public boolean isPartial() {
+        return contentRange != null;
+    }
+
+    /**
+     * Copies the body to {@code out} through a single fixed-size buffer, so heap use
+     * does not depend on the object size. A local file is sent with {@link FileChannel#transferTo}
+     * instead, from the channel already open on it.
+     */
+    public long transferTo(OutputStream out, int bufferSize) throws IOException {
+        if (channel != null && contentLength != null) {
+            return transferChannel(out);
+        }
+        byte[] buffer = new byte[bufferSize];
+        long transferred = 0;
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    private long transferChannel(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long transferred = 0;
+        while (transferred < contentLength) {
+            long sent = channel.transferTo(channelOffset + transferred, contentLength - transferred, target);
+            if (sent <= 0) {
+                throw new EOFException("File ended after " + transferred + " of " + contentLength + " bytes");
+            }
+            transferred += sent;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -1,10 +1,26 @@
 package com.example.awsstorage.entity;
 
-import lombok.Data;
+import java.time.Instant;
 
-@Data
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * One file in a listing, with the details the listing itself reports. {@code fileName} is the name within the
+ * user's files and {@code filePath} the full key. {@code size} is the size of the stored body, which is
+ * smaller than the file for a file stored compressed.
+ */
+@Getter
+@Builder
 public class FileEntity {
-    private String fileName;
-    private String filePath;
 
+    private final String fileName;
+    private final String filePath;
+    private final long size;
+    @Getter(onMethod_ = @JsonProperty("eTag"))
+    private final String eTag;
+    private final Instant lastModified;
+    private final String storageClass;
 }
@@ -0,0 +1,20 @@
+package com.example.awsstorage.entity;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * One page of a detailed listing: the files, and the folders the delimiter rolled names up into, each named
+ * within the user's files. {@code nextContinuationToken} fetches the following page and is {@code null} on
+ * the last one.
+ */
+@Getter
+@Builder
+public class FileListing {
+
+    private final List<FileEntity> files;
+    private final List<String> folders;
+    private final String nextContinuationToken;
+}
@@ -0,0 +1,22 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * What a HEAD request reports about a stored object.
+ */
+@Getter
+@Builder
+public class FileMetadata {
+
+    private final Long contentLength;
+    private final String eTag;
+    private final String contentType;
+    private final String contentEncoding;
+    private final Instant lastModified;
+    /** Set when the object is a reference to deduplicated content; the hash of that content. */
+    private final String contentSha256;
+}
@@ -0,0 +1,18 @@
+package com.example.awsstorage.entity;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * One page of a user's file listing. {@code nextContinuationToken} is passed back to fetch the following
+ * page and is {@code null} on the last one.
+ */
+@Getter
+@Builder
+public class FilePage {
+
+    private final List<String> files;
+    private final String nextContinuationToken;
+}
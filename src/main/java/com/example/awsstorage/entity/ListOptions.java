@@ -0,0 +1,26 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Narrows a listing of a user's files; every field is optional.
+ * <p>
+ * {@code prefix} keeps names that start with it. With a {@code delimiter}, usually {@code /}, names that
+ * contain it after the prefix are rolled up into one folder each, up to and including the delimiter, as S3's
+ * common prefixes are. {@code modifiedSince} keeps files last modified at or after it; folders are listed
+ * regardless. A page holds at most {@code pageSize} files and folders together, capped at 1000, and is
+ * followed by passing its {@code nextContinuationToken} back.
+ */
+@Getter
+@Builder
+public class ListOptions {
+
+    private final String prefix;
+    private final String delimiter;
+    private final Instant modifiedSince;
+    private final int pageSize;
+    private final String continuationToken;
+}
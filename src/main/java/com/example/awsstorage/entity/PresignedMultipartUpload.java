@@ -0,0 +1,22 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * A multipart upload for the client to send straight to S3. Part {@code n} is bytes
+ * {@code [(n - 1) * partSize, n * partSize)} of the file, PUT to {@code parts.get(n - 1)}; every part but the
+ * last is exactly {@code partSize} long. The ETag S3 returns for each part is handed back to complete the upload.
+ */
+@Getter
+@Builder
+public class PresignedMultipartUpload {
+
+    private final String uploadId;
+    private final long partSize;
+    private final List<PresignedUrl> parts;
+    private final Instant expiresAt;
+}
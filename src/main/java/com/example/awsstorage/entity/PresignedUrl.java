@@ -0,0 +1,22 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * A URL that lets a client make one request of S3 directly, without credentials, until {@code expiresAt}.
+ * {@code headers} are part of the signature and must be sent with exactly these values.
+ */
+@Getter
+@Builder
+public class PresignedUrl {
+
+    private final String method;
+    private final String url;
+    private final Map<String, List<String>> headers;
+    private final Instant expiresAt;
+}
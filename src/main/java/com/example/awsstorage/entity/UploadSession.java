@@ -0,0 +1,29 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * The saved state of a resumable upload: the S3 multipart upload behind it and the ETag of each part S3 has
+ * received, by part number. Part {@code n} is bytes {@code [(n - 1) * partSize, n * partSize)} of the file.
+ */
+@Getter
+@Builder(toBuilder = true)
+@Jacksonized
+public class UploadSession {
+
+    private final String id;
+    private final String userName;
+    private final String filename;
+    private final String contentType;
+    private final long size;
+    private final long partSize;
+    private final String uploadId;
+    private final Map<Integer, String> parts;
+    private final Instant createdAt;
+    private final Instant updatedAt;
+}
@@ -0,0 +1,26 @@
+package com.example.awsstorage.entity;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Where a resumable upload stands. {@code offset} is how many bytes from the start of the file have been
+ * received without a gap; {@code missingParts} are the part numbers still to send, after which the upload can
+ * be completed. The upload is discarded if it sees no progress until {@code expiresAt}.
+ */
+@Getter
+@Builder
+public class UploadStatus {
+
+    private final String id;
+    private final String filename;
+    private final long size;
+    private final long partSize;
+    private final int partCount;
+    private final long offset;
+    private final List<Integer> missingParts;
+    private final Instant expiresAt;
+}
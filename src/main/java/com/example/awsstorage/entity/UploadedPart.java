@@ -0,0 +1,20 @@
+package com.example.awsstorage.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * A part a client uploaded with a presigned URL, with the ETag S3 returned for it.
+ */
+@Getter
+@Builder
+@Jacksonized
+public class UploadedPart {
+
+    private final int partNumber;
+    @Getter(onMethod_ = @JsonProperty("eTag"))
+    private final String eTag;
+}
@@ -0,0 +1,20 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when a user already has as many requests running and queued as admission control allows, or a queued
+ * request waited too long for its turn.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String userName, long retryAfterSeconds) {
+        super("Too many requests for user " + userName);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** How long the client should wait before retrying, as sent in {@code Retry-After}. */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when a user name would put the user's files among objects the service keeps for itself, such as
+ * deduplicated content. An {@link IllegalArgumentException}, so handlers that answer those with 400 cover it.
+ */
+public class InvalidUserNameException extends IllegalArgumentException {
+
+    public InvalidUserNameException(String userName) {
+        super("Invalid user name: " + userName);
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when a conditional download matches the stored object, so the client's copy is current.
+ */
+public class NotModifiedException extends RuntimeException {
+
+    private final String eTag;
+
+    public NotModifiedException(String eTag) {
+        super("File not modified");
+        this.eTag = eTag;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when a requested byte range lies outside the stored object.
+ */
+public class RangeNotSatisfiableException extends RuntimeException {
+
+    public RangeNotSatisfiableException(Throwable cause) {
+        super("Requested range not satisfiable", cause);
+    }
+}
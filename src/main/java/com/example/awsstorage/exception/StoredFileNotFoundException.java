@@ -0,0 +1,11 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when the requested key does not exist in the bucket.
+ */
+public class StoredFileNotFoundException extends RuntimeException {
+
+    public StoredFileNotFoundException(String key, Throwable cause) {
+        super("File not found: " + key, cause);
+    }
+}
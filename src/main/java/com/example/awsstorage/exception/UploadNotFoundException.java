@@ -0,0 +1,12 @@
+package com.example.awsstorage.exception;
+
+/**
+ * Thrown when a resumable upload does not exist, or no longer does because it was completed, aborted or
+ * expired.
+ */
+public class UploadNotFoundException extends RuntimeException {
+
+    public UploadNotFoundException(String id) {
+        super("Upload not found: " + id);
+    }
+}
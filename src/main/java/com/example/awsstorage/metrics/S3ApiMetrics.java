@@ -0,0 +1,94 @@
+package com.example.awsstorage.metrics;
+
+import java.time.Duration;
+import java.util.List;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+/**
+ * Turns the metrics the SDK reports after each call into meters tagged with the client and operation, so the
+ * time S3 itself took can be told apart from the SDK's retries and our own overhead:
+ * <ul>
+ * <li>{@code s3.api.call}: the whole call as our code saw it, tagged {@code outcome=success|failure};</li>
+ * <li>{@code s3.api.attempt}: each HTTP attempt's time on the wire, tagged with its status code;</li>
+ * <li>{@code s3.api.backoff}: time slept before a retry;</li>
+ * <li>{@code s3.api.retries}: attempts beyond the first.</li>
+ * </ul>
+ * Waits for a pooled connection are reported by {@link S3PoolMetrics}.
+ */
+public class S3ApiMetrics implements MetricPublisher {
+
+    private final MeterRegistry registry;
+    private final String client;
+
+    public S3ApiMetrics(MeterRegistry registry, String client) {
+        this.registry = registry;
+        this.client = client;
+    }
+
+    @Override
+    public void publish(MetricCollection metrics) {
+        String operation = first(metrics.metricValues(CoreMetric.OPERATION_NAME), "UNKNOWN");
+        boolean successful = first(metrics.metricValues(CoreMetric.API_CALL_SUCCESSFUL), Boolean.FALSE);
+        for (Duration duration : metrics.metricValues(CoreMetric.API_CALL_DURATION)) {
+            timer("s3.api.call", "S3 calls including retries", operation)
+                    .tag("outcome", successful ? "success" : "failure")
+                    .register(registry)
+                    .record(duration);
+        }
+        for (Integer retries : metrics.metricValues(CoreMetric.RETRY_COUNT)) {
+            Counter.builder("s3.api.retries")
+                    .description("S3 attempts retried after a failure")
+                    .tag("client", client)
+                    .tag("operation", operation)
+                    .register(registry)
+                    .increment(retries);
+        }
+        metrics.childrenWithName("ApiCallAttempt").forEach(attempt -> publishAttempt(operation, attempt));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void publishAttempt(String operation, MetricCollection attempt) {
+        Integer status = first(attempt.metricValues(HttpMetric.HTTP_STATUS_CODE), null);
+        if (status == null) {
+            status = attempt.children().stream()
+                    .map(child -> first(child.metricValues(HttpMetric.HTTP_STATUS_CODE), null))
+                    .filter(code -> code != null)
+                    .findFirst()
+                    .orElse(null);
+        }
+        for (Duration duration : attempt.metricValues(CoreMetric.SERVICE_CALL_DURATION)) {
+            timer("s3.api.attempt", "One HTTP attempt of an S3 call", operation)
+                    .tag("status", status != null ? status.toString() : "NONE")
+                    .register(registry)
+                    .record(duration);
+        }
+        for (Duration backoff : attempt.metricValues(CoreMetric.BACKOFF_DELAY_DURATION)) {
+            if (!backoff.isZero()) {
+                timer("s3.api.backoff", "Delay before retrying an S3 call", operation)
+                        .register(registry)
+                        .record(backoff);
+            }
+        }
+    }
+
+    private Timer.Builder timer(String name, String description, String operation) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("client", client)
+                .tag("operation", operation);
+    }
+
+    private static <T> T first(List<T> values, T fallback) {
+        return values.isEmpty() ? fallback : values.get(0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.awsstorage.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+/**
+ * Records how many S3 API calls each HTTP request makes, as the {@code s3.calls.per.request} summary
+ * tagged with the endpoint's URI pattern.
+ * <p>
+ * Registered both as an SDK execution interceptor, which counts calls, and as an MVC handler interceptor,
+ * which opens and closes the count around each request. Counting is per thread, so calls made after a
+ * handler hands its response body to another thread (the later parts of a multi-range download) are not
+ * included.
+ */
+@Component
+public class S3CallCounter implements ExecutionInterceptor, AsyncHandlerInterceptor {
+
+    private static final ThreadLocal<int[]> CALLS = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+
+    public S3CallCounter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        int[] calls = CALLS.get();
+        if (calls != null) {
+            calls[0]++;
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        CALLS.set(new int[1]);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        record(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        record(request);
+    }
+
+    private void record(HttpServletRequest request) {
+        int[] calls = CALLS.get();
+        CALLS.remove();
+        if (calls == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("s3.calls.per.request")
+                .description("S3 API calls made while handling one request")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .register(registry)
+                .record(calls[0]);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.awsstorage.metrics;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.sync.RequestBody;
+
+/**
+ * Records every S3 call our code makes, tagged with the SDK operation name ({@code PutObject},
+ * {@code GetObject}, ...):
+ * <ul>
+ * <li>{@code s3.calls.active}: calls started and not yet finished;</li>
+ * <li>{@code s3.bytes}: body sizes per call, tagged {@code direction=sent|received}, whose rate is the
+ * throughput;</li>
+ * <li>{@code s3.errors}: failed calls, tagged with the exception's class name.</li>
+ * </ul>
+ * Sizes come from the request body and the response's Content-Length, so a download the client abandons
+ * still counts in full. Latency and retries are reported by {@link S3ApiMetrics}.
+ */
+@Component
+public class S3CallMetrics implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Boolean> ACTIVE = new ExecutionAttribute<>("S3CallMetrics.active");
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    public S3CallMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(ACTIVE, Boolean.TRUE);
+        active(operation(executionAttributes)).incrementAndGet();
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        String operation = finish(executionAttributes);
+        Optional<Long> sent = context.requestBody().flatMap(RequestBody::optionalContentLength);
+        if (!sent.isPresent()) {
+            sent = context.asyncRequestBody().flatMap(body -> body.contentLength());
+        }
+        sent.ifPresent(bytes -> bytes(operation, "sent").record(bytes));
+        context.httpResponse().firstMatchingHeader("Content-Length")
+                .ifPresent(length -> bytes(operation, "received").record(Long.parseLong(length)));
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        String operation = finish(executionAttributes);
+        Counter.builder("s3.errors")
+                .description("S3 calls that failed")
+                .tag("operation", operation)
+                .tag("exception", context.exception().getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    private String finish(ExecutionAttributes executionAttributes) {
+        String operation = operation(executionAttributes);
+        if (Boolean.TRUE.equals(executionAttributes.getAttribute(ACTIVE))) {
+            executionAttributes.putAttribute(ACTIVE, Boolean.FALSE);
+            active(operation).decrementAndGet();
+        }
+        return operation;
+    }
+
+    private AtomicInteger active(String operation) {
+        return active.computeIfAbsent(operation, op -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("s3.calls.active", count, AtomicInteger::get)
+                    .description("S3 calls in progress")
+                    .tag("operation", op)
+                    .register(registry);
+            return count;
+        });
+    }
+
+    private DistributionSummary bytes(String operation, String direction) {
+        return DistributionSummary.builder("s3.bytes")
+                .description("Bytes sent or received by one S3 call")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return operation != null ? operation : "UNKNOWN";
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.awsstorage.metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+/**
+ * Exports the S3 HTTP connection pool's state as the {@code s3.http.pool.*} gauges, tagged with the client
+ * ({@code sync} or {@code async}), and the time spent waiting for a connection as {@code s3.http.pool.acquire}.
+ * <p>
+ * Neither HTTP client exposes its pool directly, so this listens to the metrics the SDK reports after every
+ * call: each attempt records the pool as it found it when leasing a connection. The gauges therefore show the
+ * state at the most recent acquisition, which is when it matters. A pool whose {@code pending} gauge stays above
+ * zero, or whose acquire time approaches {@code s3.connectionAcquireTimeoutMillis}, needs more connections.
+ */
+public class S3PoolMetrics implements MetricPublisher {
+
+    private final AtomicInteger max = new AtomicInteger();
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Timer acquire;
+
+    public S3PoolMetrics(MeterRegistry registry, String client) {
+        gauge(registry, client, "s3.http.pool.max", "Connections the pool may open", max);
+        gauge(registry, client, "s3.http.pool.leased", "Connections in use by a call", leased);
+        gauge(registry, client, "s3.http.pool.available", "Open connections waiting for a call", available);
+        gauge(registry, client, "s3.http.pool.pending", "Calls waiting for a connection", pending);
+        this.acquire = Timer.builder("s3.http.pool.acquire")
+                .description("Time a call waited to lease a connection")
+                .tag("client", client)
+                .register(registry);
+    }
+
+    @Override
+    public void publish(MetricCollection metrics) {
+        record(metrics, HttpMetric.MAX_CONCURRENCY, max);
+        record(metrics, HttpMetric.LEASED_CONCURRENCY, leased);
+        record(metrics, HttpMetric.AVAILABLE_CONCURRENCY, available);
+        record(metrics, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, pending);
+        for (Duration wait : metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+            acquire.record(wait);
+        }
+        for (MetricCollection child : metrics.children()) {
+            publish(child);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void record(MetricCollection metrics, SdkMetric<Integer> metric, AtomicInteger gauge) {
+        List<Integer> values = metrics.metricValues(metric);
+        if (!values.isEmpty()) {
+            gauge.set(values.get(values.size() - 1));
+        }
+    }
+
+    private static void gauge(MeterRegistry registry, String client, String name, String description,
+            AtomicInteger value) {
+        Gauge.builder(name, value, AtomicInteger::get)
+                .description(description)
+                .tag("client", client)
+                .register(registry);
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.awsstorage.service;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.exception.AdmissionRejectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Shares the service fairly between users, so one user's bulk transfers cannot starve everyone else.
+ * <p>
+ * Each user may run {@code admission.maxConcurrent} requests at once, of which at most
+ * {@code admission.maxConcurrentBulk} may be bulk transfers, so interactive requests always find room. A
+ * request over the limit waits up to {@code admission.maxWaitMillis} in the user's queue, interactive requests
+ * ahead of bulk ones; one that would make the queue longer than {@code admission.maxQueued}, or that waits too
+ * long, is rejected with {@link AdmissionRejectedException}. With {@code admission.bytesPerSecond} set, the
+ * bytes each user sends and receives are also paced by a token bucket holding up to
+ * {@code admission.burstBytes}.
+ * <p>
+ * Meters: the {@code admission.active} and {@code admission.queued} gauges, and the {@code admission.rejected}
+ * and {@code admission.throttled} (seconds spent pacing) counters, totalled over all users. User names are
+ * chosen by callers and there may be {@code admission.maxUsers} of them, so only with
+ * {@code admission.perUserMetrics=true} are they kept per user instead, tagged {@code user}. A user's
+ * state and meters are dropped once they have had no request running or queued for ten minutes, or, least
+ * recently used first, to stay within {@code admission.maxUsers} users. A user with requests running or queued
+ * is never dropped, as that would reset their limits mid-request; while more than {@code admission.maxUsers}
+ * users are busy, all of them are kept.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Duration IDLE = Duration.ofMinutes(10);
+
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final int maxConcurrentBulk;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final long retryAfterSeconds;
+    private final long bytesPerSecond;
+    private final long burstBytes;
+    private final MeterRegistry registry;
+    private final boolean perUserMetrics;
+    private final Cache<String, UserState> users;
+    private final Counter rejected;
+    private final Counter throttled;
+
+    public AdmissionControl(@Value("${admission.enabled:false}") boolean enabled,
+            @Value("${admission.maxConcurrent:16}") int maxConcurrent,
+            @Value("${admission.maxConcurrentBulk:8}") int maxConcurrentBulk,
+            @Value("${admission.maxQueued:32}") int maxQueued,
+            @Value("${admission.maxWaitMillis:1000}") long maxWaitMillis,
+            @Value("${admission.retryAfterSeconds:1}") long retryAfterSeconds,
+            @Value("${admission.bytesPerSecond:0}") long bytesPerSecond,
+            @Value("${admission.burstBytes:8388608}") long burstBytes,
+            @Value("${admission.maxUsers:10000}") long maxUsers,
+            @Value("${admission.perUserMetrics:false}") boolean perUserMetrics,
+            MeterRegistry registry) {
+        this.enabled = enabled;
+        this.maxConcurrent = Math.max(maxConcurrent, 1);
+        this.maxConcurrentBulk = Math.max(Math.min(maxConcurrentBulk, this.maxConcurrent), 1);
+        this.maxQueued = Math.max(maxQueued, 0);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxWaitMillis, 0));
+        this.retryAfterSeconds = Math.max(retryAfterSeconds, 1);
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = Math.max(burstBytes, 1);
+        this.registry = registry;
+        this.perUserMetrics = perUserMetrics;
+        this.users = Caffeine.newBuilder()
+                .executor(Runnable::run)
+                .maximumWeight(maxUsers)
+                .<String, UserState>weigher((userName, state) -> state.holders > 0 ? 0 : 1)
+                .expireAfter(new Expiry<String, UserState>() {
+                    @Override
+                    public long expireAfterCreate(String userName, UserState state, long currentTime) {
+                        return state.holders > 0 ? Long.MAX_VALUE : IDLE.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String userName, UserState state, long currentTime,
+                            long currentDuration) {
+                        return expireAfterCreate(userName, state, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String userName, UserState state, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((String userName, UserState state, RemovalCause cause) -> {
+                    if (state != null) {
+                        state.removeMeters();
+                    }
+                })
+                .build();
+        if (perUserMetrics) {
+            this.rejected = null;
+            this.throttled = null;
+        } else {
+            Gauge.builder("admission.active", users, all -> all.asMap().values().stream()
+                            .mapToInt(state -> state.active).sum())
+                    .description("Requests users are running")
+                    .register(registry);
+            Gauge.builder("admission.queued", users, all -> all.asMap().values().stream()
+                            .mapToInt(state -> state.waitingInteractive + state.waitingBulk).sum())
+                    .description("Users' requests waiting for a slot")
+                    .register(registry);
+            this.rejected = rejectedCounter().register(registry);
+            this.throttled = throttledCounter().register(registry);
+        }
+    }
+
+    private static Counter.Builder rejectedCounter() {
+        return Counter.builder("admission.rejected").description("Requests turned away with 429");
+    }
+
+    private static Counter.Builder throttledCounter() {
+        return Counter.builder("admission.throttled")
+                .description("Time transfers were paused to keep a user to their byte rate")
+                .baseUnit("seconds");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits for the user's turn to run a request, which must be {@link Permit#release released} once done.
+     *
+     * @param bulk whether the request is a bulk transfer, which yields to the user's interactive requests
+     * @throws AdmissionRejectedException if the user's queue is full or the wait timed out
+     */
+    public Permit admit(String userName, boolean bulk) {
+        UserState state = hold(userName);
+        boolean admitted = false;
+        state.lock.lock();
+        try {
+            if (!state.canStart(bulk)) {
+                if (state.waitingInteractive + state.waitingBulk >= maxQueued) {
+                    throw state.reject();
+                }
+                await(state, bulk);
+            }
+            state.active++;
+            if (bulk) {
+                state.activeBulk++;
+            }
+            admitted = true;
+            return new Permit(state, bulk);
+        } finally {
+            state.lock.unlock();
+            if (!admitted) {
+                unhold(state);
+            }
+        }
+    }
+
+    /**
+     * The user's state, counted as held by one more request until {@link #unhold}, so it is not dropped while
+     * the request runs or waits. The count only changes inside the cache's own compute for the user, where the
+     * weigher and expiry read it.
+     */
+    private UserState hold(String userName) {
+        return users.asMap().compute(userName, (user, state) -> {
+            UserState held = state != null ? state : new UserState(user);
+            held.holders++;
+            return held;
+        });
+    }
+
+    private void unhold(UserState state) {
+        users.asMap().computeIfPresent(state.userName, (user, current) -> {
+            if (current == state) {
+                current.holders--;
+            }
+            return current;
+        });
+    }
+
+    private void await(UserState state, boolean bulk) {
+        if (bulk) {
+            state.waitingBulk++;
+        } else {
+            state.waitingInteractive++;
+        }
+        try {
+            long nanos = maxWaitNanos;
+            while (!state.canStart(bulk)) {
+                if (nanos <= 0) {
+                    throw state.reject();
+                }
+                nanos = (bulk ? state.bulkTurn : state.interactiveTurn).awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw state.reject();
+        } finally {
+            if (bulk) {
+                state.waitingBulk--;
+            } else {
+                state.waitingInteractive--;
+            }
+        }
+    }
+
+    /** A running request's share of its user's limits. */
+    public static final class Permit {
+        private final UserState state;
+        private final boolean bulk;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(UserState state, boolean bulk) {
+            this.state = state;
+            this.bulk = bulk;
+        }
+
+        /** Blocks until the user's byte rate allows {@code bytes} more; returns at once without a rate. */
+        public void throttle(long bytes) throws InterruptedIOException {
+            state.throttle(bytes);
+        }
+
+        /** Gives the slot to the next queued request; only the first call counts. */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                state.release(bulk);
+            }
+        }
+    }
+
+    final class UserState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition interactiveTurn = lock.newCondition();
+        private final Condition bulkTurn = lock.newCondition();
+        private int active;
+        private int activeBulk;
+        private int waitingInteractive;
+        private int waitingBulk;
+        private int holders;
+
+        private final Object bucketLock = new Object();
+        private double tokens = burstBytes;
+        private long refilledAt = System.nanoTime();
+
+        private final String userName;
+        private final Gauge activeGauge;
+        private final Gauge queuedGauge;
+        private final Counter rejected;
+        private final Counter throttled;
+
+        UserState(String userName) {
+            this.userName = userName;
+            if (!perUserMetrics) {
+                activeGauge = null;
+                queuedGauge = null;
+                rejected = AdmissionControl.this.rejected;
+                throttled = AdmissionControl.this.throttled;
+                return;
+            }
+            activeGauge = Gauge.builder("admission.active", this, state -> state.active)
+                    .description("Requests a user is running")
+                    .tag("user", userName)
+                    .register(registry);
+            queuedGauge = Gauge.builder("admission.queued", this, state -> state.waitingInteractive + state.waitingBulk)
+                    .description("A user's requests waiting for a slot")
+                    .tag("user", userName)
+                    .register(registry);
+            rejected = rejectedCounter().tag("user", userName).register(registry);
+            throttled = throttledCounter().tag("user", userName).register(registry);
+        }
+
+        /** Bulk requests also leave room for interactive ones, and go after any that are waiting. */
+        private boolean canStart(boolean bulk) {
+            if (active >= maxConcurrent) {
+                return false;
+            }
+            return !bulk || (activeBulk < maxConcurrentBulk && waitingInteractive == 0);
+        }
+
+        private AdmissionRejectedException reject() {
+            rejected.increment();
+            return new AdmissionRejectedException(userName, retryAfterSeconds);
+        }
+
+        private void release(boolean bulk) {
+            lock.lock();
+            try {
+                active--;
+                if (bulk) {
+                    activeBulk--;
+                }
+                interactiveTurn.signalAll();
+                bulkTurn.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            unhold(this);
+        }
+
+        /**
+         * Takes the bytes from the bucket, going into debt if it is short, and sleeps the debt off; concurrent
+         * transfers of one user so share its rate.
+         */
+        private void throttle(long bytes) throws InterruptedIOException {
+            if (bytesPerSecond <= 0 || bytes <= 0) {
+                return;
+            }
+            long waitNanos;
+            synchronized (bucketLock) {
+                long now = System.nanoTime();
+                tokens = Math.min(burstBytes, tokens + (now - refilledAt) * bytesPerSecond / 1e9);
+                refilledAt = now;
+                tokens -= bytes;
+                waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+            }
+            if (waitNanos > 0) {
+                throttled.increment(waitNanos / 1e9);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while pacing a transfer");
+                }
+            }
+        }
+
+        private void removeMeters() {
+            if (!perUserMetrics) {
+                return;
+            }
+            registry.remove(activeGauge);
+            registry.remove(queuedGauge);
+            registry.remove(rejected);
+            registry.remove(throttled);
+        }
+    }
+}
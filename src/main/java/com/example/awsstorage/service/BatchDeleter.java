@@ -0,0 +1,111 @@
+package com.example.awsstorage.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.entity.BatchDeleteResult;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+/**
+ * Deletes many keys with DeleteObjects, {@value #MAX_KEYS_PER_REQUEST} keys per request.
+ * <p>
+ * Keys are pulled from the caller's iterator one batch at a time and each batch is sent on the transfer
+ * executor, with at most {@code delete.concurrency} requests in flight, so a purge of any size holds only
+ * that many batches in memory. Requests run in quiet mode: S3 reports only the keys it failed to delete.
+ */
+@Component
+public class BatchDeleter {
+
+    /** The most keys S3 accepts in one DeleteObjects request. */
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final S3Client s3;
+    private final Executor executor;
+    private final int concurrency;
+
+    public BatchDeleter(S3Client s3, @Qualifier("transferExecutor") Executor executor,
+            @Value("${delete.concurrency:8}") int concurrency) {
+        this.s3 = s3;
+        this.executor = executor;
+        this.concurrency = Math.max(concurrency, 1);
+    }
+
+    /**
+     * Deletes every key the iterator yields from {@code bucket}. Keys are reported without
+     * {@code prefixToStrip}; when {@code listDeleted} is false only the count of deleted keys is kept.
+     */
+    public BatchDeleteResult delete(String bucket, Iterator<String> keys, String prefixToStrip, boolean listDeleted) {
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicLong deletedCount = new AtomicLong();
+        List<String> deleted = listDeleted ? Collections.synchronizedList(new ArrayList<>()) : null;
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        while (keys.hasNext()) {
+            List<String> batch = new ArrayList<>(MAX_KEYS_PER_REQUEST);
+            while (keys.hasNext() && batch.size() < MAX_KEYS_PER_REQUEST) {
+                batch.add(keys.next());
+            }
+            inFlight.acquireUninterruptibly();
+            CompletableFuture.runAsync(() -> {
+                Map<String, String> errors = deleteBatch(bucket, batch);
+                errors.forEach((key, reason) -> failed.put(strip(key, prefixToStrip), reason));
+                deletedCount.addAndGet(batch.size() - errors.size());
+                if (deleted != null) {
+                    batch.stream()
+                            .filter(key -> !errors.containsKey(key))
+                            .forEach(key -> deleted.add(strip(key, prefixToStrip)));
+                }
+            }, executor).whenComplete((done, e) -> inFlight.release());
+        }
+        inFlight.acquireUninterruptibly(concurrency);
+        return BatchDeleteResult.builder()
+                .deletedCount(deletedCount.get())
+                .deleted(deleted)
+                .failed(failed)
+                .build();
+    }
+
+    /** Sends one DeleteObjects request and returns the keys it failed to delete, each with its reason. */
+    private Map<String, String> deleteBatch(String bucket, List<String> batch) {
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder()
+                        .objects(batch.stream()
+                                .map(key -> ObjectIdentifier.builder().key(key).build())
+                                .collect(Collectors.toList()))
+                        .quiet(true)
+                        .build())
+                .build();
+        try {
+            DeleteObjectsResponse response = s3.deleteObjects(request);
+            return response.errors().stream()
+                    .collect(Collectors.toMap(S3Error::key, error -> error.code() + ": " + error.message(),
+                            (first, second) -> first));
+        } catch (RuntimeException e) {
+            return batch.stream()
+                    .collect(Collectors.toMap(key -> key, key -> String.valueOf(e.getMessage()), (first, second) -> first));
+        }
+    }
+
+    private static String strip(String key, String prefix) {
+        return prefix != null && key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+    }
+}
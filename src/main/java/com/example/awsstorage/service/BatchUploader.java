@@ -0,0 +1,161 @@
+package com.example.awsstorage.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.entity.BatchUploadResult;
+
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Uploads many files arriving one after another on a single stream, such as the parts of a multi-file form
+ * or the entries of a zip archive.
+ * <p>
+ * Files up to {@code upload.partSize} are read into memory and put on the transfer executor, with at most
+ * {@code upload.batchConcurrency} puts in flight, so reading the next file overlaps with sending the
+ * previous ones and the reader blocks while S3 catches up. A larger file is uploaded in parts by
+ * {@link MultipartUploader} before the next one is read, since a sequential source cannot be skipped ahead.
+ */
+@Component
+public class BatchUploader {
+
+    /** One file of a batch. Its content can only be read until the source is asked for the next entry. */
+    public static final class Entry {
+        private final String name;
+        private final String contentType;
+        private final InputStream content;
+
+        public Entry(String name, String contentType, InputStream content) {
+            this.name = name;
+            this.contentType = contentType;
+            this.content = content;
+        }
+    }
+
+    /** Yields the files of a batch in order. */
+    @FunctionalInterface
+    public interface EntrySource {
+        /** Advances to the next file, or returns {@code null} when there are no more. */
+        Entry next() throws IOException;
+    }
+
+    private final MultipartUploader uploader;
+    private final Executor executor;
+    private final int concurrency;
+    private final int smallFileLimit;
+
+    public BatchUploader(MultipartUploader uploader, @Qualifier("transferExecutor") Executor executor,
+            @Value("${upload.batchConcurrency:16}") int concurrency,
+            @Value("${upload.partSize:16777216}") int smallFileLimit) {
+        this.uploader = uploader;
+        this.executor = executor;
+        this.concurrency = Math.max(concurrency, 1);
+        this.smallFileLimit = smallFileLimit;
+    }
+
+    /**
+     * Uploads every entry to where {@code locate} puts its name. A file that fails is reported and the rest
+     * carry on; if the source itself cannot be read, the files already read are still finished and the
+     * remainder are reported under the name of the entry being read.
+     */
+    public BatchUploadResult upload(Function<String, KeyLayout.Location> locate, EntrySource source) {
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicLong uploadedCount = new AtomicLong();
+        List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        Map<String, String> failed = Collections.synchronizedMap(new LinkedHashMap<>());
+        String current = null;
+        try {
+            Entry entry;
+            while ((entry = source.next()) != null) {
+                current = entry.name;
+                String name = entry.name;
+                if (!isValidName(name)) {
+                    failed.put(name, "Invalid file name");
+                    continue;
+                }
+                byte[] head = entry.content.readNBytes(smallFileLimit + 1);
+                if (head.length > smallFileLimit) {
+                    PutObjectRequest request = request(locate.apply(name), entry.contentType, null);
+                    try {
+                        uploader.upload(request, new SequenceInputStream(new ByteArrayInputStream(head), entry.content));
+                        uploadedCount.incrementAndGet();
+                        uploaded.add(name);
+                    } catch (RuntimeException e) {
+                        failed.put(name, String.valueOf(e.getMessage()));
+                    }
+                    continue;
+                }
+                PutObjectRequest request = request(locate.apply(name), entry.contentType, (long) head.length);
+                inFlight.acquireUninterruptibly();
+                CompletableFuture.runAsync(() -> put(request, head), executor).whenComplete((done, e) -> {
+                    if (e == null) {
+                        uploadedCount.incrementAndGet();
+                        uploaded.add(name);
+                    } else {
+                        failed.put(name, String.valueOf(S3Errors.unwrap(e).getMessage()));
+                    }
+                    inFlight.release();
+                });
+            }
+            current = null;
+        } catch (IOException e) {
+            failed.put(current != null ? current : "", "Could not read upload: " + e.getMessage());
+        }
+        inFlight.acquireUninterruptibly(concurrency);
+        return BatchUploadResult.builder()
+                .uploadedCount(uploadedCount.get())
+                .uploaded(new ArrayList<>(uploaded))
+                .failed(new LinkedHashMap<>(failed))
+                .build();
+    }
+
+    private void put(PutObjectRequest request, byte[] body) {
+        try {
+            uploader.upload(request, new ByteArrayResource(body), body.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PutObjectRequest request(KeyLayout.Location location, String contentType, Long size) {
+        PutObjectRequest.Builder request = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType);
+        if (size != null) {
+            request.metadata(Collections.singletonMap("Content-Length", String.valueOf(size)));
+        }
+        return request.build();
+    }
+
+    /** Rejects names that would escape the user's prefix or address it as a whole. */
+    static boolean isValidName(String name) {
+        if (name == null || name.isEmpty() || name.startsWith("/")) {
+            return false;
+        }
+        for (String segment : name.split("/")) {
+            if (segment.equals("..") || segment.equals(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.awsstorage.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The compressed form of a stream, produced as it is read. Each refill feeds one chunk of the source to the
+ * encoder and serves whatever compressed output that yields, so memory stays at one chunk and its output
+ * whatever the size of the source.
+ */
+final class CompressingInputStream extends InputStream {
+
+    private final InputStream source;
+    private final Output compressed = new Output();
+    private final OutputStream encoder;
+    private final byte[] chunk = new byte[ContentCodec.BUFFER_SIZE];
+    private int position;
+    private boolean finished;
+
+    CompressingInputStream(InputStream source, ContentCodec codec) throws IOException {
+        this.source = source;
+        this.encoder = codec.encoder(compressed);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == compressed.size() && !finished) {
+            refill();
+        }
+        int available = compressed.size() - position;
+        if (available == 0) {
+            return -1;
+        }
+        int read = Math.min(length, available);
+        System.arraycopy(compressed.bytes(), position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return compressed.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            if (!finished) {
+                finished = true;
+                encoder.close();
+            }
+        }
+    }
+
+    private void refill() throws IOException {
+        compressed.reset();
+        position = 0;
+        int read = source.read(chunk);
+        if (read == -1) {
+            finished = true;
+            encoder.close();
+        } else {
+            encoder.write(chunk, 0, read);
+        }
+    }
+
+    /** Exposes its buffer so reads copy straight out of it. */
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(ContentCodec.BUFFER_SIZE);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
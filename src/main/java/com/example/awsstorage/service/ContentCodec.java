@@ -0,0 +1,113 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * The content codings an upload can be stored with, named as in {@code Content-Encoding}.
+ */
+public enum ContentCodec {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream encoder(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decoder(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    ZSTD("zstd") {
+        @Override
+        OutputStream encoder(OutputStream out) throws IOException {
+            return new ZstdOutputStream(out, 3);
+        }
+
+        @Override
+        public InputStream decoder(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String encoding;
+
+    ContentCodec(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /** The {@code Content-Encoding} token. */
+    public String encoding() {
+        return encoding;
+    }
+
+    abstract OutputStream encoder(OutputStream out) throws IOException;
+
+    /** Decompresses {@code in} as it is read; closing the result closes {@code in}. */
+    public abstract InputStream decoder(InputStream in) throws IOException;
+
+    /**
+     * Compresses {@code in} as it is read, holding only the output of one chunk of input at a time;
+     * closing the result closes {@code in}.
+     */
+    public InputStream compressing(InputStream in) throws IOException {
+        return new CompressingInputStream(in, this);
+    }
+
+    /**
+     * Whether a client sending {@code acceptEncoding} takes this coding: it is listed, or covered by
+     * {@code *}, without {@code q=0}.
+     */
+    public boolean isAcceptedBy(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equals(encoding)) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    /** The codec for a stored {@code Content-Encoding}, or {@code null} for none or one this service did not write. */
+    public static ContentCodec of(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        for (ContentCodec codec : values()) {
+            if (codec.encoding.equalsIgnoreCase(contentEncoding.trim())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
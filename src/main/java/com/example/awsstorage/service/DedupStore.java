@@ -0,0 +1,199 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Optional whole-file deduplication of uploads, enabled with {@code dedup.enabled}.
+ * <p>
+ * An upload of at least {@code dedup.minBytes} is hashed with SHA-256 before anything is sent to S3. Its bytes
+ * are stored once, at {@code <dedup.prefix>content/<sha256>} in {@code bucketName}, and the user's key becomes an
+ * empty object whose {@code content-sha256} metadata names that content; downloads follow the reference. When
+ * the content is already stored, the upload is done once it has been hashed. Content stays in that bucket
+ * whichever bucket the {@link KeyLayout} puts the reference in, so it is shared by every user.
+ * <p>
+ * Each reference is also recorded in an index, as the empty object
+ * {@code <dedup.prefix>refs/<sha256>/<userName>/<filename>}, by the file's name rather than its key so the
+ * reference can move when the layout changes, and content is deleted when the last reference to it is
+ * released. S3 has no conditional delete, so both steps are serialised per hash on this instance; an upload on
+ * another instance that races the release of the last reference to the same content can still lose it.
+ * {@link KeyLayout} rejects user names that would put a user's files under the prefix, and the async service,
+ * which does not follow references, refuses to start with deduplication on.
+ */
+@Component
+public class DedupStore {
+
+    /** User metadata on a reference naming the content it refers to. */
+    public static final String CONTENT_SHA256 = "content-sha256";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final S3Client s3;
+    private final MultipartUploader uploader;
+    private final String bucket;
+    private final boolean enabled;
+    private final long minBytes;
+    private final String prefix;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public DedupStore(S3Client s3, MultipartUploader uploader, @Value("${bucketName}") String bucket,
+            @Value("${dedup.enabled:false}") boolean enabled,
+            @Value("${dedup.minBytes:1048576}") long minBytes,
+            @Value("${dedup.prefix:.dedup/}") String prefix) {
+        this.s3 = s3;
+        this.uploader = uploader;
+        this.bucket = bucket;
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.prefix = prefix;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Whether an upload of {@code size} bytes is stored as a reference. */
+    public boolean accepts(long size) {
+        return enabled && size >= minBytes;
+    }
+
+    /** The bucket content is stored in. */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /** The key the content with this hash is stored under. */
+    public String contentKey(String sha256) {
+        return prefix + "content/" + sha256;
+    }
+
+    /** Whether {@code key} is one {@link #contentKey} returned rather than a user's file. */
+    public boolean isContentKey(String key) {
+        return key.startsWith(prefix + "content/");
+    }
+
+    /** Whether {@code key} is one of this store's own objects, content or index, rather than a user's file. */
+    public boolean isStoreKey(String key) {
+        return key.startsWith(prefix);
+    }
+
+    /**
+     * Stores {@code source} at {@code request}'s key as a reference to its content, uploading the content
+     * first unless it is already stored. The reference the key held before, if any, is released.
+     *
+     * @param request the put for the user's key; the content is stored with the same content type
+     * @param name the file's name, {@code userName/filename}
+     * @param previous the hash the file referred to before, or {@code null}
+     * @return the content's hash
+     */
+    public String save(PutObjectRequest request, String name, InputStreamSource source, long size, String previous)
+            throws IOException {
+        String sha256 = hash(source);
+        boolean stored;
+        synchronized (lock(sha256)) {
+            s3.putObject(PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(referenceKey(sha256, name))
+                    .build(), RequestBody.empty());
+            stored = exists(contentKey(sha256));
+        }
+        try {
+            if (!stored) {
+                uploader.upload(request.toBuilder().bucket(bucket).key(contentKey(sha256)).build(), source, size);
+            }
+            Map<String, String> metadata = new HashMap<>(request.metadata());
+            metadata.put(CONTENT_SHA256, sha256);
+            s3.putObject(request.toBuilder().metadata(metadata).build(), RequestBody.empty());
+        } catch (IOException | RuntimeException e) {
+            if (!sha256.equals(previous)) {
+                release(name, sha256);
+            }
+            throw e;
+        }
+        if (previous != null && !previous.equals(sha256)) {
+            release(name, previous);
+        }
+        return sha256;
+    }
+
+    /**
+     * Drops the reference of the file named {@code userName/filename} to the content with hash {@code sha256},
+     * deleting the content if none remain.
+     */
+    public void release(String name, String sha256) {
+        synchronized (lock(sha256)) {
+            s3.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(referenceKey(sha256, name))
+                    .build());
+            boolean referenced = !s3.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(prefix + "refs/" + sha256 + "/")
+                    .maxKeys(1)
+                    .build()).contents().isEmpty();
+            if (!referenced) {
+                s3.deleteObject(DeleteObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(contentKey(sha256))
+                        .build());
+            }
+        }
+    }
+
+    private String referenceKey(String sha256, String name) {
+        return prefix + "refs/" + sha256 + "/" + name;
+    }
+
+    private boolean exists(String key) {
+        try {
+            s3.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+
+    private Object lock(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String hash(InputStreamSource source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = source.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.awsstorage.service;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileMetadata;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import software.amazon.awssdk.http.Abortable;
+
+/**
+ * Optional on-disk tier for hot objects, enabled with {@code cache.disk.enabled}.
+ * <p>
+ * An object is cached by its first plain GET: the body is written under {@code cache.disk.directory} as that
+ * request reads it from S3, and later downloads, ranges included, are served from the file. Requests arriving
+ * while it is being written read the file as it grows, so concurrent misses on one key share one S3 fetch. If
+ * the request filling it closes its download early, say because its client went away, with no other request
+ * reading the copy, the rest of the body is not fetched: the S3 response is aborted, the partial file deleted,
+ * and the next plain GET fills the cache instead.
+ * Range and conditional requests for an object that is not cached go to S3 and leave the cache alone. A cached
+ * copy is only used while its ETag matches the object's current metadata, so it is revalidated as often as
+ * {@link FileMetadataCache} re-reads that metadata. Files are evicted least recently used once they exceed
+ * {@code cache.disk.maxBytes}; objects over {@code cache.disk.maxObjectBytes}, going by the GET's own
+ * Content-Length, are never cached. Every download reads through a channel it opened itself, so evicting or
+ * replacing a copy never cuts a response short. Hit, miss and eviction counts are the {@code cache.*} meters
+ * tagged {@code cache=file.disk}.
+ */
+@Component
+public class DiskObjectCache {
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxObjectBytes;
+    private final AsyncCache<String, CachedObject> objects;
+    private final AtomicLong fills = new AtomicLong();
+
+    public DiskObjectCache(@Value("${cache.disk.enabled:false}") boolean enabled,
+            @Value("${cache.disk.directory:${java.io.tmpdir}/awsstorage-cache}") String directory,
+            @Value("${cache.disk.maxBytes:10737418240}") long maxBytes,
+            @Value("${cache.disk.maxObjectBytes:268435456}") long maxObjectBytes,
+            MeterRegistry registry) throws IOException {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.maxObjectBytes = Math.min(maxObjectBytes, Integer.MAX_VALUE);
+        this.objects = Caffeine.newBuilder()
+                // Removal deletes the file; doing it on the caller's thread keeps the directory in step.
+                .executor(Runnable::run)
+                .maximumWeight(maxBytes)
+                .<String, CachedObject>weigher((key, object) -> (int) object.length)
+                .removalListener((String key, CachedObject object, RemovalCause cause) -> {
+                    if (object != null) {
+                        deleteQuietly(object.path);
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, objects, "file.disk");
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            deleteLeftovers();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Serves {@code key} from its cached copy, or fetches it and fills the cache while the body is read. Range
+     * and precondition headers are evaluated against the cached copy, as S3 would evaluate them.
+     *
+     * @param current the object's current metadata, only asked for when there is a cached copy to revalidate
+     * @param fetch a plain GET of the whole object, made on a miss by a request without range or preconditions
+     * @return the download, or {@code null} when this request should go to S3 itself: nothing is cached and the
+     *         request has a range or preconditions, or {@code If-Match} names another version
+     */
+    public FileDownload open(String key, DownloadOptions options, Supplier<Optional<FileMetadata>> current,
+            Supplier<FileDownload> fetch) {
+        if (!enabled) {
+            return null;
+        }
+        CompletableFuture<CachedObject> entry = objects.getIfPresent(key);
+        if (entry != null) {
+            CachedObject object = settled(entry);
+            if (object != null && (object.isFilling() || isCurrent(object, current.get()))) {
+                return serve(key, entry, object, options);
+            }
+            objects.asMap().remove(key, entry);
+        }
+        if (options.getRange() != null || options.getIfMatch() != null || options.getIfNoneMatch() != null
+                || options.getIfModifiedSince() != null) {
+            return null;
+        }
+        CompletableFuture<CachedObject> slot = new CompletableFuture<>();
+        CompletableFuture<CachedObject> filling = objects.asMap().putIfAbsent(key, slot);
+        if (filling != null) {
+            // Another request started filling it in the meantime.
+            CachedObject object = settled(filling);
+            return object == null ? null : serve(key, filling, object, options);
+        }
+        return fill(key, slot, fetch);
+    }
+
+    /** Drops the cached copy of {@code key}, for when it has been overwritten or deleted. */
+    public void invalidate(String key) {
+        objects.synchronous().invalidate(key);
+    }
+
+    /** Drops the cached copies of every key starting with {@code prefix}. */
+    public void invalidatePrefix(String prefix) {
+        objects.synchronous().asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /** The entry's copy once its fetch has started, or {@code null} if the fetch or the fill failed. */
+    private static CachedObject settled(CompletableFuture<CachedObject> entry) {
+        try {
+            CachedObject object = entry.join();
+            return object.hasFailed() ? null : object;
+        } catch (CancellationException | CompletionException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCurrent(CachedObject object, Optional<FileMetadata> current) {
+        return current.map(metadata -> object.metadata.getETag().equals(metadata.getETag())).orElse(false);
+    }
+
+    private FileDownload serve(String key, CompletableFuture<CachedObject> entry, CachedObject object,
+            DownloadOptions options) {
+        if (options.getIfMatch() != null && !LocalDownloads.matches(options.getIfMatch(), object.metadata.getETag())) {
+            return null;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(object.path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Evicted between lookup and open; let S3 serve this one.
+            objects.asMap().remove(key, entry);
+            return null;
+        }
+        if (!object.isFilling()) {
+            try {
+                return LocalDownloads.open(channel, object.metadata, options);
+            } catch (RuntimeException e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        }
+        if (!object.attach()) {
+            // The fill was given up in the meantime.
+            closeQuietly(channel);
+            return null;
+        }
+        FileDownload download;
+        try {
+            download = LocalDownloads.open(channel, object.metadata, options, object);
+        } catch (RuntimeException e) {
+            object.detach();
+            closeQuietly(channel);
+            throw e;
+        }
+        return FileDownload.builder()
+                .content(new FilterInputStream(download.getContent()) {
+                    private boolean closed;
+
+                    @Override
+                    public void close() throws IOException {
+                        if (!closed) {
+                            closed = true;
+                            object.detach();
+                        }
+                        super.close();
+                    }
+                })
+                .contentLength(download.getContentLength())
+                .eTag(download.getETag())
+                .contentType(download.getContentType())
+                .contentEncoding(download.getContentEncoding())
+                .lastModified(download.getLastModified())
+                .contentRange(download.getContentRange())
+                .build();
+    }
+
+    /**
+     * Fetches the object for the request holding {@code slot}. A full, versioned body small enough to cache is
+     * written to a new file while the request reads it; anything else gives the slot up and is returned as is.
+     */
+    private FileDownload fill(String key, CompletableFuture<CachedObject> slot, Supplier<FileDownload> fetch) {
+        FileDownload download;
+        try {
+            download = fetch.get();
+        } catch (RuntimeException e) {
+            abandon(key, slot);
+            throw e;
+        }
+        Long length = download.getContentLength();
+        if (download.isPartial() || download.getETag() == null || length == null || length > maxObjectBytes) {
+            abandon(key, slot);
+            return download;
+        }
+        Path path = directory.resolve(DigestUtils.md5DigestAsHex(
+                (key + "\n" + download.getETag()).getBytes(StandardCharsets.UTF_8)) + "-" + fills.incrementAndGet());
+        FileChannel target;
+        try {
+            target = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            abandon(key, slot);
+            return download;
+        }
+        CachedObject object = new CachedObject(path, length, FileMetadata.builder()
+                .contentLength(length)
+                .eTag(download.getETag())
+                .contentType(download.getContentType())
+                .contentEncoding(download.getContentEncoding())
+                .lastModified(download.getLastModified())
+                .build());
+        slot.complete(object);
+        return FileDownload.builder()
+                .content(new FillingInputStream(key, slot, object, download.getContent(), target))
+                .contentLength(length)
+                .eTag(download.getETag())
+                .contentType(download.getContentType())
+                .contentEncoding(download.getContentEncoding())
+                .lastModified(download.getLastModified())
+                .build();
+    }
+
+    /** Gives up the slot, so requests waiting on it go to S3 themselves. */
+    private void abandon(String key, CompletableFuture<CachedObject> slot) {
+        slot.cancel(false);
+        objects.asMap().remove(key, slot);
+    }
+
+    private void deleteLeftovers() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*")) {
+            for (Path file : files) {
+                if (file.getFileName().toString().matches("[0-9a-f]{32}(-[0-9]+|\\.part)?")) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Left for the next startup's cleanup.
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more goes through it.
+        }
+    }
+
+    /**
+     * The body as read from S3, written to the cache file on the way through. Closed before the end, it gives
+     * the fill up and aborts the S3 response, unless other requests are reading the copy as it grows; for them
+     * it reads the rest of the body first, so they are not cut short.
+     */
+    private final class FillingInputStream extends InputStream {
+        private final String key;
+        private final CompletableFuture<CachedObject> slot;
+        private final CachedObject object;
+        private final InputStream source;
+        private final FileChannel target;
+        private long position;
+        private boolean closed;
+
+        private FillingInputStream(String key, CompletableFuture<CachedObject> slot, CachedObject object,
+                InputStream source, FileChannel target) {
+            this.key = key;
+            this.slot = slot;
+            this.object = object;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                int read = source.read(buffer, offset, length);
+                if (read > 0) {
+                    ByteBuffer written = ByteBuffer.wrap(buffer, offset, read);
+                    while (written.hasRemaining()) {
+                        position += target.write(written, position);
+                    }
+                    object.advance(position);
+                } else if (read == -1 && object.isFilling()) {
+                    if (position != object.length) {
+                        throw new EOFException("Body ended after " + position + " of " + object.length + " bytes");
+                    }
+                    target.close();
+                    object.finish(null);
+                }
+                return read;
+            } catch (IOException | RuntimeException e) {
+                if (object.isFilling()) {
+                    object.finish(e instanceof IOException ? (IOException) e : new IOException(e));
+                    objects.asMap().remove(key, slot);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (object.abandonUnread()) {
+                    objects.asMap().remove(key, slot);
+                    if (source instanceof Abortable) {
+                        ((Abortable) source).abort();
+                    }
+                    return;
+                }
+                byte[] rest = new byte[64 * 1024];
+                while (object.isFilling() && read(rest, 0, rest.length) != -1) {
+                    // Finishing the copy for the requests reading it.
+                }
+            } catch (IOException e) {
+                // The fill is marked failed; this request no longer needs the body.
+            } finally {
+                closeQuietly(target);
+                source.close();
+            }
+        }
+    }
+
+    /** A cached copy, which may still be being written; readers of such a copy wait for the bytes they need. */
+    private static final class CachedObject implements LocalDownloads.Progress {
+        private final Path path;
+        private final long length;
+        private final FileMetadata metadata;
+        private long written;
+        private boolean done;
+        private IOException failure;
+        private int readers;
+
+        private CachedObject(Path path, long length, FileMetadata metadata) {
+            this.path = path;
+            this.length = length;
+            this.metadata = metadata;
+        }
+
+        private synchronized void advance(long written) {
+            this.written = written;
+            notifyAll();
+        }
+
+        private synchronized void finish(IOException failure) {
+            this.done = true;
+            this.failure = failure;
+            notifyAll();
+        }
+
+        /** Counts a request reading the copy as it grows; {@code false} if the fill has failed or been given up. */
+        private synchronized boolean attach() {
+            if (failure != null) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        private synchronized void detach() {
+            readers--;
+        }
+
+        /** Gives the fill up, unless it is done or another request is reading the copy. */
+        private synchronized boolean abandonUnread() {
+            if (done || readers > 0) {
+                return false;
+            }
+            finish(new IOException("Filling the cached copy was given up"));
+            return true;
+        }
+
+        private synchronized boolean isFilling() {
+            return !done;
+        }
+
+        private synchronized boolean hasFailed() {
+            return failure != null;
+        }
+
+        @Override
+        public synchronized void awaitWritten(long position) throws IOException {
+            while (written <= position && !done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the cached copy");
+                }
+            }
+            if (written <= position) {
+                throw new IOException("Filling the cached copy failed", failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.awsstorage.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.entity.FileMetadata;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Local cache of per-user key listings and per-key HEAD results, so repeated lists and existence checks
+ * don't each cost an S3 request.
+ * <p>
+ * Listings are bounded by the total number of keys they hold ({@code cache.metadata.maxListedKeys}) and
+ * HEAD results by entry count ({@code cache.metadata.maxObjects}); both expire
+ * {@code cache.metadata.ttlSeconds} after being loaded, which bounds how stale a listing can be when another
+ * instance writes to the bucket. Writes through this instance are applied to the cache directly. Hit, miss
+ * and eviction counts are published as the {@code cache.*} meters tagged {@code cache=file.listings} and
+ * {@code cache=file.metadata}.
+ */
+@Component
+public class FileMetadataCache {
+
+    private final Cache<String, List<String>> listings;
+    private final Cache<String, Optional<FileMetadata>> metadata;
+
+    public FileMetadataCache(@Value("${cache.metadata.maxListedKeys:1000000}") long maxListedKeys,
+            @Value("${cache.metadata.maxObjects:100000}") long maxObjects,
+            @Value("${cache.metadata.ttlSeconds:60}") long ttlSeconds,
+            MeterRegistry registry) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.listings = Caffeine.newBuilder()
+                .maximumWeight(maxListedKeys)
+                .<String, List<String>>weigher((userName, keys) -> keys.size() + 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.metadata = Caffeine.newBuilder()
+                .maximumSize(maxObjects)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, listings, "file.listings");
+        CaffeineCacheMetrics.monitor(registry, metadata, "file.metadata");
+    }
+
+    /** The user's full listing, loaded with {@code loader} on a miss. */
+    public List<String> listing(String userName, Function<String, List<String>> loader) {
+        return listings.get(userName, user -> Collections.unmodifiableList(loader.apply(user)));
+    }
+
+    /** The user's listing if it is cached, without loading it. */
+    public List<String> cachedListing(String userName) {
+        return listings.getIfPresent(userName);
+    }
+
+    /** HEAD result for {@code key}, empty when the key doesn't exist; loaded with {@code loader} on a miss. */
+    public Optional<FileMetadata> metadata(String key, Function<String, Optional<FileMetadata>> loader) {
+        return metadata.get(key, loader);
+    }
+
+    /** HEAD result for {@code key} if it is cached, without loading it; {@code null} when it is not. */
+    public Optional<FileMetadata> cachedMetadata(String key) {
+        return metadata.getIfPresent(key);
+    }
+
+    /** Records metadata learned some other way, such as from a full GET. */
+    public void putMetadata(String key, FileMetadata fileMetadata) {
+        metadata.put(key, Optional.of(fileMetadata));
+    }
+
+    /** Forgets what is known about {@code key}, so the next lookup asks S3. */
+    public void invalidateMetadata(String key) {
+        metadata.invalidate(key);
+    }
+
+    /** Forgets the user's listing and every cached HEAD result under their prefix, after a bulk delete. */
+    public void invalidateUser(String userName) {
+        listings.invalidate(userName);
+        String prefix = userName + "/";
+        metadata.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /** Adds a newly written key to the user's cached listing, keeping it sorted, and drops its old metadata. */
+    public void added(String userName, String key) {
+        metadata.invalidate(key);
+        listings.asMap().computeIfPresent(userName, (user, keys) -> {
+            int index = Collections.binarySearch(keys, key);
+            if (index >= 0) {
+                return keys;
+            }
+            List<String> updated = new ArrayList<>(keys.size() + 1);
+            updated.addAll(keys);
+            updated.add(-index - 1, key);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+
+    /** Removes a deleted key from the user's cached listing and remembers that it no longer exists. */
+    public void removed(String userName, String key) {
+        metadata.put(key, Optional.empty());
+        listings.asMap().computeIfPresent(userName, (user, keys) -> {
+            int index = Collections.binarySearch(keys, key);
+            if (index < 0) {
+                return keys;
+            }
+            List<String> updated = new ArrayList<>(keys);
+            updated.remove(index);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.awsstorage.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.awsstorage.entity.AsyncFileDownload;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+
+import software.amazon.awssdk.core.async.SdkPublisher;
+
+/**
+ * Non-blocking counterpart of {@link IFileService}. Results complete on the SDK's I/O threads, so callers
+ * must not block in their continuations.
+ */
+public interface IAsyncFileService {
+    CompletableFuture<String> saveFile(MultipartFile file, String userName);
+    CompletableFuture<BatchUploadResult> saveFiles(List<MultipartFile> files, String userName);
+    CompletableFuture<AsyncFileDownload> streamFile(String userName, String filename, DownloadOptions options);
+    CompletableFuture<Boolean> deleteFile(String userName, String filename);
+    CompletableFuture<BatchDeleteResult> deleteFiles(String userName, List<String> filenames);
+    CompletableFuture<BatchDeleteResult> deleteAllFiles(String userName);
+    CompletableFuture<List<String>> listAllFiles(String userName);
+    CompletableFuture<FilePage> listFiles(String userName, int pageSize, String continuationToken);
+    CompletableFuture<FileListing> listEntries(String userName, ListOptions options);
+    SdkPublisher<String> streamAllFiles(String userName);
+}
@@ -1,11 +1,37 @@
 package com.example.awsstorage.service;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.stream.Stream;
+
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+
+/**
+ * A storage backend for the blocking controllers. Keys are {@code <user>/<filename>}. {@code storage.backend}
+ * picks the implementation: {@link S3FileService} ({@code s3}, the default) or {@link LocalFileService}
+ * ({@code local}).
+ */
 public interface IFileService {
     String saveFile(MultipartFile file,String userName);
+    String saveFile(String userName,String filename,String contentType,InputStream content);
+    BatchUploadResult saveFiles(List<MultipartFile> files,String userName);
+    BatchUploadResult saveArchive(InputStream zip,String userName);
     byte[] downloadFile(String userName,String filename);
+    FileDownload streamFile(String userName,String filename);
+    FileDownload streamFile(String userName,String filename,DownloadOptions options);
     boolean deleteFile(String userName,String filename);
+    BatchDeleteResult deleteFiles(String userName,List<String> filenames);
+    BatchDeleteResult deleteAllFiles(String userName);
     List<String> listAllFiles(String userName);
+    FilePage listFiles(String userName,int pageSize,String continuationToken);
+    FileListing listEntries(String userName,ListOptions options);
+    Stream<String> streamAllFiles(String userName);
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.example.awsstorage.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.example.awsstorage.exception.InvalidUserNameException;
+
+/**
+ * Decides where in S3 each of a user's files is kept.
+ * <p>
+ * By default a file is at {@code userName/filename} in {@code bucketName}, which puts all of a user's requests on
+ * one key prefix. S3 scales request rates per prefix, so a busy user's uploads are answered with 503 SlowDown
+ * long before the bucket's limits are reached. With {@code storage.layout.shards} above zero, each key has a
+ * shard taken from a hash of the user and file name, as in {@code .shards/3f/userName/filename}, which spreads a
+ * user's files over that many prefixes; listing the user's files then merges one listing per shard. The shards
+ * sit under a root of their own so that no user's {@code userName/} prefix, looked in while
+ * {@code storage.layout.legacyFallback} is on, also holds other users' sharded files. With
+ * {@code storage.layout.buckets}, users are spread over those buckets by a hash of their name, each user's
+ * files all in one bucket.
+ * <p>
+ * Changing the layout changes where files are looked for. While {@code storage.layout.legacyFallback} is on, a
+ * file that is not where the layout puts it is also looked for at {@code userName/filename} in
+ * {@code bucketName}, and listings include those files, so they stay available while {@link LayoutMigrator}
+ * moves them.
+ * <p>
+ * A user's files must not fall under {@code dedup.prefix}, where {@link DedupStore} keeps its own objects, or
+ * the shard root, so a user name that would put them there is rejected with {@link InvalidUserNameException}.
+ */
+@Component
+public class KeyLayout {
+
+    /** The prefix every sharded key starts with; reserved whether or not shards are on, so they can be later. */
+    public static final String SHARD_ROOT = ".shards/";
+
+    /** An object, or a prefix of objects, in a bucket. */
+    public static final class Location {
+        private final String bucket;
+        private final String key;
+
+        public Location(String bucket, String key) {
+            this.bucket = bucket;
+            this.key = key;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Location)) {
+                return false;
+            }
+            Location location = (Location) other;
+            return bucket.equals(location.bucket) && key.equals(location.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, key);
+        }
+    }
+
+    private final String bucketName;
+    private final List<String> buckets;
+    private final int shards;
+    private final int shardWidth;
+    private final boolean legacyFallback;
+    private final String reservedPrefix;
+
+    public KeyLayout(@Value("${bucketName}") String bucketName,
+            @Value("${storage.layout.buckets:}") List<String> buckets,
+            @Value("${storage.layout.shards:0}") int shards,
+            @Value("${storage.layout.legacyFallback:false}") boolean legacyFallback,
+            @Value("${dedup.prefix:.dedup/}") String reservedPrefix) {
+        List<String> named = buckets.stream()
+                .map(String::trim)
+                .filter(bucket -> !bucket.isEmpty())
+                .collect(Collectors.toList());
+        this.bucketName = bucketName;
+        this.buckets = named.isEmpty() ? Collections.singletonList(bucketName) : named;
+        this.shards = Math.max(shards, 0);
+        this.shardWidth = Integer.toHexString(Math.max(this.shards - 1, 0)).length();
+        this.legacyFallback = legacyFallback && !isFlat();
+        this.reservedPrefix = reservedPrefix;
+    }
+
+    /** Whether every file is at {@code userName/filename} in {@code bucketName}, as before layouts existed. */
+    public boolean isFlat() {
+        return shards == 0 && buckets.equals(Collections.singletonList(bucketName));
+    }
+
+    /** The bucket the files were kept in before the layout changed, and files that are not a user's are. */
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public boolean isLegacyFallback() {
+        return legacyFallback;
+    }
+
+    /**
+     * Rejects a user name whose files would fall among the service's own objects. Every location this layout
+     * gives out for a user is checked; callers only need it for keys they resolve some other way.
+     *
+     * @throws InvalidUserNameException if the user's files would fall under the dedup prefix or the shard root
+     */
+    public void checkUserName(String userName) {
+        if (isReserved(userName)) {
+            throw new InvalidUserNameException(userName);
+        }
+    }
+
+    /** Whether the user's {@code userName/} prefix overlaps the dedup prefix or the shard root. */
+    public boolean isReserved(String userName) {
+        String prefix = userName + "/";
+        return prefix.startsWith(reservedPrefix) || reservedPrefix.startsWith(prefix)
+                || prefix.startsWith(SHARD_ROOT) || SHARD_ROOT.startsWith(prefix);
+    }
+
+    /** The bucket holding the user's files. */
+    public String bucket(String userName) {
+        checkUserName(userName);
+        return buckets.size() == 1 ? buckets.get(0) : buckets.get(Math.floorMod(hash(userName), buckets.size()));
+    }
+
+    /** Where the file belongs. */
+    public Location locate(String userName, String filename) {
+        String key = userName + "/" + filename;
+        return new Location(bucket(userName), shards == 0 ? key : SHARD_ROOT + shard(key) + "/" + key);
+    }
+
+    /** Where the file named {@code userName/filename} belongs. */
+    public Location locate(String key) {
+        int slash = key.indexOf('/');
+        return locate(key.substring(0, slash), key.substring(slash + 1));
+    }
+
+    /** Where the file was kept before the layout changed, or {@code null} when it is not to be looked for there. */
+    public Location legacy(String userName, String filename) {
+        if (!legacyFallback) {
+            return null;
+        }
+        Location legacy = new Location(bucketName, userName + "/" + filename);
+        return legacy.equals(locate(userName, filename)) ? null : legacy;
+    }
+
+    /** Where the file named {@code userName/filename} was kept before the layout changed, like {@link #legacy}. */
+    public Location legacy(String key) {
+        int slash = key.indexOf('/');
+        return legacy(key.substring(0, slash), key.substring(slash + 1));
+    }
+
+    /**
+     * Every prefix holding the user's files, each ending in {@code /}: one per shard, and the user's old prefix
+     * last while files are looked for there too. A file's name is its key after the prefix it was listed under.
+     */
+    public List<Location> prefixes(String userName) {
+        String bucket = bucket(userName);
+        List<Location> prefixes = new ArrayList<>();
+        if (shards == 0) {
+            prefixes.add(new Location(bucket, userName + "/"));
+        } else {
+            for (int shard = 0; shard < shards; shard++) {
+                prefixes.add(new Location(bucket, SHARD_ROOT + shardName(shard) + "/" + userName + "/"));
+            }
+        }
+        Location legacy = new Location(bucketName, userName + "/");
+        if (legacyFallback && !prefixes.contains(legacy)) {
+            prefixes.add(legacy);
+        }
+        return prefixes;
+    }
+
+    /**
+     * Every key the named files can be at, grouped by bucket and each mapped to its file's name: where the layout
+     * puts them and, while files are looked for there too, where they were kept before.
+     */
+    public Map<String, Map<String, String>> keysByBucket(String userName, Collection<String> filenames) {
+        Map<String, Map<String, String>> keys = new LinkedHashMap<>();
+        for (String filename : filenames) {
+            Location location = locate(userName, filename);
+            keys.computeIfAbsent(location.getBucket(), bucket -> new LinkedHashMap<>())
+                    .put(location.getKey(), filename);
+            Location legacy = legacy(userName, filename);
+            if (legacy != null) {
+                keys.computeIfAbsent(legacy.getBucket(), bucket -> new LinkedHashMap<>())
+                        .put(legacy.getKey(), filename);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Whether the object already is where the layout puts the file it holds; never for an object that is not a
+     * user's file, such as one under a reserved prefix.
+     */
+    public boolean isPlaced(Location object) {
+        String key = object.getKey();
+        if (shards > 0) {
+            if (!key.startsWith(SHARD_ROOT)) {
+                return false;
+            }
+            key = key.substring(SHARD_ROOT.length());
+            int slash = key.indexOf('/');
+            if (slash != shardWidth) {
+                return false;
+            }
+            key = key.substring(slash + 1);
+        }
+        int slash = key.indexOf('/');
+        return slash > 0 && !isReserved(key.substring(0, slash)) && locate(key).equals(object);
+    }
+
+    private String shard(String key) {
+        return shardName(Math.floorMod(hash(key), shards));
+    }
+
+    private String shardName(int shard) {
+        String name = Integer.toHexString(shard);
+        StringBuilder padded = new StringBuilder(shardWidth);
+        for (int i = name.length(); i < shardWidth; i++) {
+            padded.append('0');
+        }
+        return padded.append(name).toString();
+    }
+
+    /** A hash that is the same on every instance and spreads similar names, such as numbered files, apart. */
+    private static int hash(String value) {
+        return ByteBuffer.wrap(DigestUtils.md5Digest(value.getBytes(StandardCharsets.UTF_8))).getInt();
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.awsstorage.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+/**
+ * Moves files kept at {@code userName/filename} in {@code bucketName} to where the {@link KeyLayout} puts them,
+ * enabled with {@code storage.layout.migrate}.
+ * <p>
+ * Every {@code storage.layout.migrateIntervalSeconds} the bucket is listed and each file not yet in place is
+ * copied, server side, and then deleted, {@code storage.layout.migrateConcurrency} at a time. A file already at
+ * its new location has been written since the layout changed, so only its old copy is deleted. The copy is made
+ * only if the file is unchanged since it was listed, but S3 has no conditional delete, so a write to the file
+ * between the copy and the delete is lost; run the migrator when writes are quiet, on one instance, with
+ * {@code storage.layout.legacyFallback} on everywhere until it has moved every file.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.layout.migrate", havingValue = "true")
+public class LayoutMigrator {
+
+    /** The largest object a single CopyObject request can copy. */
+    static final long MAX_COPY_BYTES = 5L * 1024 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final KeyLayout layout;
+    private final DedupStore dedupStore;
+    private final Executor executor;
+    private final int concurrency;
+    private final long partSize;
+    private final Counter moved;
+
+    public LayoutMigrator(S3Client s3, KeyLayout layout, DedupStore dedupStore,
+            @Qualifier("transferExecutor") Executor executor,
+            @Value("${storage.layout.migrateConcurrency:8}") int concurrency,
+            @Value("${upload.partSize:16777216}") long partSize,
+            MeterRegistry registry) {
+        this.s3 = s3;
+        this.layout = layout;
+        this.dedupStore = dedupStore;
+        this.executor = executor;
+        this.concurrency = Math.max(concurrency, 1);
+        this.partSize = partSize;
+        this.moved = Counter.builder("storage.layout.migrated")
+                .description("Files moved to where the key layout puts them")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.layout.migrateIntervalSeconds:300}",
+            initialDelayString = "${storage.layout.migrateIntervalSeconds:300}", timeUnit = TimeUnit.SECONDS)
+    public void sweep() {
+        try {
+            migrate();
+        } catch (RuntimeException e) {
+            // Retried on the next sweep.
+        }
+    }
+
+    /**
+     * Moves every file that is not where the layout puts it. Files that fail to move are left where they are,
+     * for the next sweep.
+     *
+     * @return the number of files moved
+     */
+    public int migrate() {
+        if (layout.isFlat()) {
+            return 0;
+        }
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger count = new AtomicInteger();
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(layout.getBucketName())
+                .build();
+        try {
+            for (S3Object object : s3.listObjectsV2Paginator(request).contents()) {
+                if (!isMisplaced(object.key())) {
+                    continue;
+                }
+                inFlight.acquire();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        move(object);
+                        count.incrementAndGet();
+                        moved.increment();
+                    } catch (RuntimeException e) {
+                        // Left in place for the next sweep.
+                    }
+                }, executor).whenComplete((done, e) -> inFlight.release());
+            }
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return count.get();
+    }
+
+    /** Whether the key is a file at {@code userName/filename}, not a sharded key or one of the service's own. */
+    private boolean isMisplaced(String key) {
+        int slash = key.indexOf('/');
+        return slash > 0 && !dedupStore.isStoreKey(key) && !layout.isReserved(key.substring(0, slash))
+                && !layout.isPlaced(new KeyLayout.Location(layout.getBucketName(), key));
+    }
+
+    private void move(S3Object object) {
+        KeyLayout.Location target = layout.locate(object.key());
+        if (!exists(target)) {
+            if (object.size() > MAX_COPY_BYTES) {
+                copyInParts(object, target);
+            } else {
+                s3.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(layout.getBucketName())
+                        .sourceKey(object.key())
+                        .copySourceIfMatch(object.eTag())
+                        .destinationBucket(target.getBucket())
+                        .destinationKey(target.getKey())
+                        .build());
+            }
+        }
+        s3.deleteObject(DeleteObjectRequest.builder()
+                .bucket(layout.getBucketName())
+                .key(object.key())
+                .build());
+    }
+
+    /** Copies an object too large for CopyObject with a multipart upload whose parts are copied from it. */
+    private void copyInParts(S3Object object, KeyLayout.Location target) {
+        HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder()
+                .bucket(layout.getBucketName())
+                .key(object.key())
+                .ifMatch(object.eTag())
+                .build());
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(target.getBucket())
+                .key(target.getKey())
+                .contentType(head.contentType())
+                .contentEncoding(head.contentEncoding())
+                .metadata(head.metadata())
+                .build()).uploadId();
+        try {
+            long size = object.size();
+            long length = MultipartUploader.partSize(size, partSize);
+            List<CompletedPart> parts = new ArrayList<>();
+            for (long from = 0; from < size; from += length) {
+                int partNumber = parts.size() + 1;
+                String eTag = s3.uploadPartCopy(UploadPartCopyRequest.builder()
+                        .sourceBucket(layout.getBucketName())
+                        .sourceKey(object.key())
+                        .copySourceIfMatch(object.eTag())
+                        .copySourceRange("bytes=" + from + "-" + (Math.min(from + length, size) - 1))
+                        .destinationBucket(target.getBucket())
+                        .destinationKey(target.getKey())
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .build()).copyPartResult().eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(target.getBucket())
+                    .key(target.getKey())
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            try {
+                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(target.getBucket())
+                        .key(target.getKey())
+                        .uploadId(uploadId)
+                        .build());
+            } catch (RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private boolean exists(KeyLayout.Location location) {
+        try {
+            s3.headObject(HeadObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+}
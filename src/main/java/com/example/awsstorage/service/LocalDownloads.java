@@ -0,0 +1,135 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.HttpRange;
+
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+
+/**
+ * Serves downloads from files on local disk, evaluating range and conditional headers the way S3 would.
+ */
+final class LocalDownloads {
+
+    /** Lets readers of a file that is still being written wait for the bytes they need. */
+    interface Progress {
+        /** Returns once the byte at {@code position} has been written; throws if it never will be. */
+        void awaitWritten(long position) throws IOException;
+    }
+
+    private LocalDownloads() {
+    }
+
+    /** Builds the download of a complete file; see {@link #open(FileChannel, FileMetadata, DownloadOptions, Progress)}. */
+    static FileDownload open(FileChannel channel, FileMetadata metadata, DownloadOptions options) {
+        return open(channel, metadata, options, null);
+    }
+
+    /**
+     * Builds the download of {@code channel}, an open read channel on a file, which is closed with the download.
+     * The body is read from that channel even if the file is replaced or deleted in the meantime, so it stays the
+     * version {@code metadata} describes.
+     *
+     * @param metadata the file's metadata; its content length is the file's full length
+     * @param progress for a file still being written, what reads wait on; {@code null} for a complete file
+     * @throws NotModifiedException if {@code If-None-Match} or {@code If-Modified-Since} says so
+     * @throws RangeNotSatisfiableException if the requested range lies outside the file
+     */
+    static FileDownload open(FileChannel channel, FileMetadata metadata, DownloadOptions options, Progress progress) {
+        if (options.getIfNoneMatch() != null) {
+            if (matches(options.getIfNoneMatch(), metadata.getETag())) {
+                throw new NotModifiedException(metadata.getETag());
+            }
+        } else if (options.getIfModifiedSince() != null && metadata.getLastModified() != null
+                && !metadata.getLastModified().truncatedTo(ChronoUnit.SECONDS)
+                        .isAfter(options.getIfModifiedSince())) {
+            throw new NotModifiedException(metadata.getETag());
+        }
+        long length = metadata.getContentLength();
+        long start = 0;
+        long end = length - 1;
+        String contentRange = null;
+        if (options.getRange() != null) {
+            try {
+                HttpRange range = HttpRange.parseRanges(options.getRange()).get(0);
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                throw new RangeNotSatisfiableException(e);
+            }
+            if (start > end) {
+                throw new RangeNotSatisfiableException(null);
+            }
+            contentRange = "bytes " + start + "-" + end + "/" + length;
+        }
+        return FileDownload.builder()
+                .content(new ChannelInputStream(channel, start, end + 1, progress))
+                .contentLength(end + 1 - start)
+                .eTag(metadata.getETag())
+                .contentType(metadata.getContentType())
+                .contentEncoding(metadata.getContentEncoding())
+                .lastModified(metadata.getLastModified())
+                .contentRange(contentRange)
+                .channel(progress == null ? channel : null)
+                .channelOffset(start)
+                .build();
+    }
+
+    /** Whether an {@code If-Match} or {@code If-None-Match} header names {@code eTag}. */
+    static boolean matches(String header, String eTag) {
+        List<String> candidates = Arrays.asList(header.split("\\s*,\\s*"));
+        return candidates.contains("*") || candidates.contains(eTag)
+                || candidates.contains("W/" + eTag);
+    }
+
+    /** Reads {@code [position, end)} of a file with positional reads, closing the channel on close. */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private final Progress progress;
+
+        private ChannelInputStream(FileChannel channel, long position, long end, Progress progress) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            if (progress != null) {
+                progress.awaitWritten(position);
+            }
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
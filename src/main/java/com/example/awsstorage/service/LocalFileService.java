@@ -0,0 +1,539 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+
+/**
+ * Storage backend that keeps files on local disk under {@code storage.local.directory}, selected with
+ * {@code storage.backend=local}. It needs no AWS account, so tests and load runs can exercise the whole
+ * application on one machine.
+ * <p>
+ * A file is stored at {@code <user>/<xx>/<yy>/<name>}, where {@code xx/yy} are the first two bytes of the MD5
+ * of its name: the 65536 shard directories keep each directory small however many files a user has. User and
+ * file names are percent-encoded into single path segments, so a name can never leave its user's directory.
+ * Uploads are written to a hidden temporary file beside their target and renamed over it, so readers see
+ * either the old file or the new one, never a partial write. A download reads through the channel it opened,
+ * so it keeps serving the version its headers describe even if the file is replaced or deleted meanwhile;
+ * ETags are derived from the file's identity, modification time and size.
+ * <p>
+ * Listings walk the shards in order: pages come back in shard order, each page resuming from the shard its
+ * token names, while {@link #listAllFiles}, and listings rolled up into folders, sort the whole listing by key
+ * as S3 does.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalFileService implements IFileService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String PART_SUFFIX = ".part";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** Writes a file's body to {@code part}, which does not exist yet. */
+    @FunctionalInterface
+    private interface Body {
+        void writeTo(Path part) throws IOException;
+    }
+
+    private final Path root;
+
+    public LocalFileService(
+            @Value("${storage.local.directory:${java.io.tmpdir}/awsstorage-files}") String directory)
+            throws IOException {
+        this.root = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(root);
+    }
+
+    /**
+     * Moves or copies the upload into place. It goes through {@link MultipartFile#transferTo(java.io.File)},
+     * which Tomcat implements with {@code Part.write} and so renames a part it spooled to disk when the spool
+     * directory is on the same file system; the {@code Path} overload would always copy.
+     */
+    @Override
+    public String saveFile(MultipartFile file, String userName) {
+        try {
+            write(userName, file.getOriginalFilename(), part -> file.transferTo(part.toFile()));
+            return "File uploaded";
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Copies the body into place as it arrives. */
+    @Override
+    public String saveFile(String userName, String filename, String contentType, InputStream content) {
+        try {
+            write(userName, filename, part -> Files.copy(content, part));
+            return "File uploaded";
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public BatchUploadResult saveFiles(List<MultipartFile> files, String userName) {
+        List<String> uploaded = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (MultipartFile file : files) {
+            store(userName, file.getOriginalFilename(), part -> file.transferTo(part.toFile()), uploaded, failed);
+        }
+        return uploadResult(uploaded, failed);
+    }
+
+    /** Stores every file in a zip archive read from {@code zip} as it arrives; directories are skipped. */
+    @Override
+    public BatchUploadResult saveArchive(InputStream zip, String userName) {
+        List<String> uploaded = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        ZipInputStream entries = new ZipInputStream(zip);
+        try {
+            ZipEntry entry;
+            while ((entry = entries.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    store(userName, entry.getName(), part -> Files.copy(entries, part), uploaded, failed);
+                }
+            }
+        } catch (IOException e) {
+            failed.put("", "Could not read upload: " + e.getMessage());
+        }
+        return uploadResult(uploaded, failed);
+    }
+
+    @Override
+    public byte[] downloadFile(String userName, String filename) {
+        try (FileDownload download = streamFile(userName, filename)) {
+            return download.getContent().readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public FileDownload streamFile(String userName, String filename) {
+        return streamFile(userName, filename, DownloadOptions.NONE);
+    }
+
+    /** Opens the file and evaluates range and conditional headers against it, as S3 would. */
+    @Override
+    public FileDownload streamFile(String userName, String filename, DownloadOptions options) {
+        String key = userName + "/" + filename;
+        Path path = path(userName, filename);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new StoredFileNotFoundException(key, e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            FileMetadata metadata = metadata(path, filename, channel.size());
+            if (options.getIfMatch() != null && !LocalDownloads.matches(options.getIfMatch(), metadata.getETag())) {
+                throw new IllegalStateException("File changed during download: " + key);
+            }
+            return LocalDownloads.open(channel, metadata, options);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean deleteFile(String userName, String filename) {
+        try {
+            return Files.deleteIfExists(path(userName, filename));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Deletes the named files; as with S3, a file that was already gone counts as deleted. */
+    @Override
+    public BatchDeleteResult deleteFiles(String userName, List<String> filenames) {
+        List<String> deleted = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (String filename : new LinkedHashSet<>(filenames)) {
+            try {
+                Files.deleteIfExists(path(userName, filename));
+                deleted.add(filename);
+            } catch (IOException e) {
+                failed.put(filename, String.valueOf(e.getMessage()));
+            }
+        }
+        return BatchDeleteResult.builder()
+                .deletedCount(deleted.size())
+                .deleted(deleted)
+                .failed(failed)
+                .build();
+    }
+
+    /**
+     * Deletes every file the user has along with the emptied shard directories. Uploads still being written
+     * are left to finish; only the count of deleted files is reported.
+     */
+    @Override
+    public BatchDeleteResult deleteAllFiles(String userName) {
+        Path directory = userDirectory(userName);
+        AtomicLong deletedCount = new AtomicLong();
+        Map<String, String> failed = new LinkedHashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return BatchDeleteResult.builder().deletedCount(0).failed(failed).build();
+        }
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    String name = file.getFileName().toString();
+                    if (!isPart(name)) {
+                        try {
+                            Files.deleteIfExists(file);
+                            deletedCount.incrementAndGet();
+                        } catch (IOException e) {
+                            failed.put(decode(name), String.valueOf(e.getMessage()));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    try {
+                        Files.deleteIfExists(dir);
+                    } catch (IOException notEmpty) {
+                        // An upload landed meanwhile, or one of its files could not be deleted.
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return BatchDeleteResult.builder()
+                .deletedCount(deletedCount.get())
+                .failed(failed)
+                .build();
+    }
+
+    @Override
+    public List<String> listAllFiles(String userName) {
+        return entries(userName, null)
+                .map(entry -> key(userName, entry))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns at most {@code pageSize} keys, capped at 1000 as S3 caps them, in shard order. The token is the
+     * position of the last file returned, so each page only reads the shards from there on.
+     */
+    @Override
+    public FilePage listFiles(String userName, int pageSize, String continuationToken) {
+        int limit = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        List<String> entries = entries(userName, continuationToken)
+                .limit(limit + 1L)
+                .collect(Collectors.toList());
+        boolean more = entries.size() > limit;
+        List<String> page = more ? entries.subList(0, limit) : entries;
+        return FilePage.builder()
+                .files(page.stream()
+                        .map(entry -> key(userName, entry))
+                        .collect(Collectors.toList()))
+                .nextContinuationToken(more ? page.get(limit - 1) : null)
+                .build();
+    }
+
+    /**
+     * Without a delimiter, pages in shard order as {@link #listFiles} does, reading only the shards from the token
+     * on and stopping once the page is full; the token is the position of the last file returned. Rolling names
+     * up into folders needs them in name order, so with a delimiter every page sorts all of the user's names, as
+     * {@link #listAllFiles} does, and costs as much as listing them all; the token is then the last file or
+     * folder returned. Either way only the files that make the page are read for their details.
+     */
+    @Override
+    public FileListing listEntries(String userName, ListOptions options) {
+        int pageSize = Math.max(1, Math.min(options.getPageSize() <= 0 ? MAX_PAGE_SIZE : options.getPageSize(),
+                MAX_PAGE_SIZE));
+        String prefix = options.getPrefix() != null ? options.getPrefix() : "";
+        String delimiter = options.getDelimiter() != null && !options.getDelimiter().isEmpty()
+                ? options.getDelimiter() : null;
+        String after = options.getContinuationToken();
+        Instant modifiedSince = options.getModifiedSince();
+        if (delimiter == null) {
+            return listInShardOrder(userName, prefix, modifiedSince, pageSize, after);
+        }
+        List<FileEntity> files = new ArrayList<>();
+        List<String> folders = new ArrayList<>();
+        String last = null;
+        boolean more = false;
+        Iterator<String> names;
+        try (Stream<String> entries = entries(userName, null)) {
+            names = entries.map(entry -> decode(entry.substring(entry.lastIndexOf('/') + 1)))
+                    .filter(name -> name.startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList())
+                    .iterator();
+        }
+        while (names.hasNext()) {
+            String name = names.next();
+            int end = delimiter != null ? name.indexOf(delimiter, prefix.length()) : -1;
+            String folder = end >= 0 ? name.substring(0, end + delimiter.length()) : null;
+            String item = folder != null ? folder : name;
+            if (item.equals(last) || (after != null && item.compareTo(after) <= 0)) {
+                continue;
+            }
+            FileEntity file = folder == null ? fileEntity(userName, name) : null;
+            if (folder == null && (file == null
+                    || (modifiedSince != null && file.getLastModified().isBefore(modifiedSince)))) {
+                continue;
+            }
+            if (files.size() + folders.size() == pageSize) {
+                more = true;
+                break;
+            }
+            if (folder != null) {
+                folders.add(folder);
+            } else {
+                files.add(file);
+            }
+            last = item;
+        }
+        return FileListing.builder()
+                .files(files)
+                .folders(folders)
+                .nextContinuationToken(more ? last : null)
+                .build();
+    }
+
+    private FileListing listInShardOrder(String userName, String prefix, Instant modifiedSince, int pageSize,
+            String after) {
+        List<FileEntity> files = new ArrayList<>();
+        String last = null;
+        boolean more = false;
+        try (Stream<String> entries = entries(userName, after)) {
+            Iterator<String> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                String entry = iterator.next();
+                String name = decode(entry.substring(entry.lastIndexOf('/') + 1));
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                FileEntity file = fileEntity(userName, name);
+                if (file == null || (modifiedSince != null && file.getLastModified().isBefore(modifiedSince))) {
+                    continue;
+                }
+                if (files.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+                files.add(file);
+                last = entry;
+            }
+        }
+        return FileListing.builder()
+                .files(files)
+                .folders(Collections.emptyList())
+                .nextContinuationToken(more ? last : null)
+                .build();
+    }
+
+    /** Lazily walks the user's shards in order, reading one shard directory at a time. */
+    @Override
+    public Stream<String> streamAllFiles(String userName) {
+        return entries(userName, null).map(entry -> key(userName, entry));
+    }
+
+    private void store(String userName, String name, Body body, List<String> uploaded, Map<String, String> failed) {
+        if (!BatchUploader.isValidName(name)) {
+            failed.put(name, "Invalid file name");
+            return;
+        }
+        try {
+            write(userName, name, body);
+            uploaded.add(name);
+        } catch (IOException e) {
+            failed.put(name, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static BatchUploadResult uploadResult(List<String> uploaded, Map<String, String> failed) {
+        return BatchUploadResult.builder()
+                .uploadedCount(uploaded.size())
+                .uploaded(uploaded)
+                .failed(failed)
+                .build();
+    }
+
+    private void write(String userName, String filename, Body body) throws IOException {
+        Path target = path(userName, filename);
+        Files.createDirectories(target.getParent());
+        Path part = target.resolveSibling("." + UUID.randomUUID() + PART_SUFFIX);
+        try {
+            body.writeTo(part);
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private FileMetadata metadata(Path path, String filename, long length) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object identity = attributes.fileKey();
+        return FileMetadata.builder()
+                .contentLength(length)
+                .eTag("\"" + (identity != null ? Integer.toHexString(identity.hashCode()) + "-" : "")
+                        + Long.toHexString(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)) + "-"
+                        + Long.toHexString(length) + "\"")
+                .contentType(MediaTypeFactory.getMediaType(filename)
+                        .map(MediaType::toString)
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE))
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .build();
+    }
+
+    /** The file's details, or {@code null} if it was deleted since it was listed. */
+    private FileEntity fileEntity(String userName, String name) {
+        Path path = path(userName, name);
+        try {
+            FileMetadata metadata = metadata(path, name, Files.size(path));
+            return FileEntity.builder()
+                    .fileName(name)
+                    .filePath(userName + "/" + name)
+                    .size(metadata.getContentLength())
+                    .eTag(metadata.getETag())
+                    .lastModified(metadata.getLastModified())
+                    .build();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The user's files after {@code after}, as paths relative to the user's directory. Shards wholly before
+     * {@code after} are skipped without being read.
+     */
+    private Stream<String> entries(String userName, String after) {
+        Path directory = userDirectory(userName);
+        return children(directory).stream()
+                .flatMap(first -> children(directory.resolve(first)).stream().map(second -> first + "/" + second))
+                .filter(shard -> after == null || after.compareTo(shard + "/") < 0 || after.startsWith(shard + "/"))
+                .flatMap(shard -> children(directory.resolve(shard)).stream()
+                        .filter(name -> !isPart(name))
+                        .map(name -> shard + "/" + name))
+                .filter(entry -> after == null || entry.compareTo(after) > 0);
+    }
+
+    /** The sorted names in {@code directory}; none if it does not exist. */
+    private static List<String> children(Path directory) {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path path(String userName, String filename) {
+        String hash = DigestUtils.md5DigestAsHex(filename.getBytes(StandardCharsets.UTF_8));
+        return userDirectory(userName)
+                .resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(encode(filename));
+    }
+
+    private Path userDirectory(String userName) {
+        if (userName.isEmpty()) {
+            throw new IllegalArgumentException("User name must not be empty");
+        }
+        return root.resolve(encode(userName));
+    }
+
+    private static String key(String userName, String entry) {
+        return userName + "/" + decode(entry.substring(entry.lastIndexOf('/') + 1));
+    }
+
+    private static boolean isPart(String name) {
+        return name.startsWith(".");
+    }
+
+    /**
+     * Percent-encodes every byte but letters, digits, {@code -}, {@code _} and a {@code .} that does not lead,
+     * so the result is one portable path segment that never starts with a dot.
+     */
+    private static String encode(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        StringBuilder encoded = new StringBuilder(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '_' || (b == '.' && i > 0)) {
+                encoded.append((char) b);
+            } else {
+                encoded.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String decode(String name) {
+        return URLDecoder.decode(name, StandardCharsets.UTF_8);
+    }
+}
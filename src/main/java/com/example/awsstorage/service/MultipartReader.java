@@ -0,0 +1,242 @@
+package com.example.awsstorage.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.springframework.http.ContentDisposition;
+
+/**
+ * Reads a {@code multipart/form-data} body part by part while it arrives, so a file part can be handed to S3
+ * without first being spooled to disk or memory.
+ * <p>
+ * The body is scanned through a single buffer of fixed size, whatever the size of the parts. Each part's content
+ * can only be read until {@link #next()} is called again, which skips whatever of it is left.
+ */
+public class MultipartReader {
+
+    /** Headers of one part may take at most this much of the buffer. */
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    /** One part of the body. */
+    public static final class Part {
+        private final String name;
+        private final String filename;
+        private final String contentType;
+        private final InputStream content;
+
+        Part(String name, String filename, String contentType, InputStream content) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        /** The form field's name. */
+        public String getName() {
+            return name;
+        }
+
+        /** The uploaded file's name, or {@code null} for a plain field. */
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public InputStream getContent() {
+            return content;
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int head;
+    private int tail;
+    private boolean inBody = true;
+    private boolean finished;
+    private int parts;
+
+    /**
+     * @param boundary the {@code boundary} parameter of the request's Content-Type, quoted or not
+     * @param bufferSize bytes to scan the body through; raised to fit a part's headers if smaller
+     */
+    public MultipartReader(InputStream in, String boundary, int bufferSize) {
+        if (boundary != null && boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary: " + boundary);
+        }
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(bufferSize, MAX_HEADER_BYTES + delimiter.length)];
+        // The first boundary is not preceded by a line break; start as if it were, inside an empty preamble.
+        buffer[tail++] = '\r';
+        buffer[tail++] = '\n';
+    }
+
+    /** Advances to the next part, or returns {@code null} after the last. */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        byte[] skip = new byte[4096];
+        while (inBody) {
+            readBody(skip, 0, skip.length);
+        }
+        ensure(2);
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        readLine(); // Anything after the boundary on its line is transport padding.
+        String disposition = null;
+        String contentType = null;
+        int headerBytes = 0;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            headerBytes += line.length() + 2;
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers are larger than " + MAX_HEADER_BYTES + " bytes");
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw new IOException("Malformed multipart header: " + line);
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("content-disposition")) {
+                disposition = value;
+            } else if (name.equals("content-type")) {
+                contentType = value;
+            }
+        }
+        if (disposition == null) {
+            throw new IOException("Multipart part has no Content-Disposition");
+        }
+        ContentDisposition parsed;
+        try {
+            parsed = ContentDisposition.parse(disposition);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed Content-Disposition: " + disposition, e);
+        }
+        inBody = true;
+        return new Part(parsed.getName(), parsed.getFilename(), contentType, new PartInputStream(++parts));
+    }
+
+    /** Reads the current part's content up to the next delimiter, which it consumes once reached. */
+    private int readBody(byte[] b, int off, int len) throws IOException {
+        if (!inBody) {
+            return -1;
+        }
+        while (true) {
+            int found = indexOf(delimiter, head, tail);
+            // Bytes that could be the start of a delimiter split across reads are held back.
+            int available = (found >= 0 ? found : Math.max(head, tail - delimiter.length + 1)) - head;
+            if (available > 0) {
+                int n = Math.min(len, available);
+                System.arraycopy(buffer, head, b, off, n);
+                head += n;
+                return n;
+            }
+            if (found == head) {
+                head += delimiter.length;
+                inBody = false;
+                return -1;
+            }
+            if (!fill()) {
+                throw new EOFException("Multipart body ended before its closing boundary");
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = head; i + 1 < tail; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, head, i - head, StandardCharsets.UTF_8);
+                    head = i + 2;
+                    return line;
+                }
+            }
+            if (tail - head >= MAX_HEADER_BYTES) {
+                throw new IOException("Multipart header line is longer than " + MAX_HEADER_BYTES + " bytes");
+            }
+            if (!fill()) {
+                throw new EOFException("Multipart body ended inside a part's headers");
+            }
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        while (tail - head < bytes) {
+            if (!fill()) {
+                throw new EOFException("Multipart body ended before its closing boundary");
+            }
+        }
+    }
+
+    /** Moves unread bytes to the front of the buffer and reads more after them; false at the end of the body. */
+    private boolean fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            head = 0;
+        }
+        int read = in.read(buffer, tail, buffer.length - tail);
+        if (read < 0) {
+            return false;
+        }
+        tail += read;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private final class PartInputStream extends InputStream {
+
+        private final int number;
+
+        PartInputStream(int number) {
+            this.number = number;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (number != parts) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            return readBody(b, off, len);
+        }
+
+        /** Leaves the request body open; the rest of the part is skipped by {@link MultipartReader#next()}. */
+        @Override
+        public void close() {
+        }
+    }
+}
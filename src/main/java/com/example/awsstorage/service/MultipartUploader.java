@@ -0,0 +1,224 @@
+package com.example.awsstorage.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads objects to S3, splitting large bodies into parts that are sent concurrently.
+ * <p>
+ * Parts are read from the source stream one at a time and handed to the transfer executor. At most
+ * {@code upload.concurrency} parts are in flight per upload, which bounds memory to roughly
+ * {@code (concurrency + 1) * partSize} and blocks the reader while S3 catches up. Retries are left to the
+ * S3 client's retry policy, so every body is given to it in a form it can replay; a failure it gives up on
+ * aborts the multipart upload so no orphaned parts are left behind.
+ */
+@Component
+public class MultipartUploader {
+
+    /** S3 rejects multipart parts (other than the last) below 5 MiB. */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /** S3 allows at most this many parts in one multipart upload. */
+    static final int MAX_PARTS = 10_000;
+
+    private final S3Client s3;
+    private final Executor executor;
+    private final int partSize;
+    private final long multipartThreshold;
+    private final int concurrency;
+
+    public MultipartUploader(S3Client s3, @Qualifier("transferExecutor") Executor executor,
+            @Value("${upload.partSize:16777216}") int partSize,
+            @Value("${upload.multipartThreshold:67108864}") long multipartThreshold,
+            @Value("${upload.concurrency:4}") int concurrency) {
+        this.s3 = s3;
+        this.executor = executor;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        this.multipartThreshold = multipartThreshold;
+        this.concurrency = Math.max(concurrency, 1);
+    }
+
+    /**
+     * The part size for a client-driven multipart upload of {@code size} bytes: {@code preferred}, at least
+     * S3's minimum, or larger if the upload would otherwise need more than S3's 10,000 parts.
+     */
+    static long partSize(long size, long preferred) {
+        return Math.max(Math.max(preferred, MIN_PART_SIZE), (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    /**
+     * Uploads a body of known size. Bodies up to the multipart threshold go up in a single PUT, the client
+     * reopening the source for each attempt; larger ones are uploaded in parts.
+     */
+    public void upload(PutObjectRequest request, InputStreamSource source, long size) throws IOException {
+        if (size > multipartThreshold) {
+            try (InputStream in = source.getInputStream()) {
+                upload(request, in);
+            }
+            return;
+        }
+        s3.putObject(request, RequestBody.fromContentProvider(() -> {
+            try {
+                return source.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read upload body", e);
+            }
+        }, size, MediaType.APPLICATION_OCTET_STREAM_VALUE));
+    }
+
+    /**
+     * Uploads a body of unknown size. A body that fits in one part goes up in a single PUT, anything larger
+     * as a multipart upload.
+     */
+    public void upload(PutObjectRequest request, InputStream in) throws IOException {
+        byte[] first = new byte[partSize];
+        int firstLength = readFully(in, first);
+        if (firstLength < partSize) {
+            s3.putObject(request, bodyOf(first, firstLength));
+            return;
+        }
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .contentType(request.contentType())
+                .contentEncoding(request.contentEncoding())
+                .metadata(request.metadata())
+                .build()).uploadId();
+        try {
+            List<CompletedPart> parts = uploadParts(request, uploadId, in, first);
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(request.bucket())
+                    .key(request.key())
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            abort(request, uploadId, e);
+            throw e;
+        }
+    }
+
+    private List<CompletedPart> uploadParts(PutObjectRequest request, String uploadId, InputStream in, byte[] first)
+            throws IOException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<CompletedPart>> futures = new ArrayList<>();
+        boolean completed = false;
+        try {
+            byte[] buffer = first;
+            int length = first.length;
+            for (int partNumber = 1; length > 0 && !failed.get(); partNumber++) {
+                acquire(inFlight);
+                byte[] body = buffer;
+                int bodyLength = length;
+                int number = partNumber;
+                futures.add(CompletableFuture.supplyAsync(() -> uploadPart(request, uploadId, number, body, bodyLength),
+                        executor).whenComplete((part, e) -> {
+                            if (e != null) {
+                                failed.set(true);
+                            }
+                            freeBuffers.offer(body);
+                            inFlight.release();
+                        }));
+                if (bodyLength < partSize) {
+                    break;
+                }
+                buffer = freeBuffers.poll();
+                if (buffer == null) {
+                    buffer = new byte[partSize];
+                }
+                length = readFully(in, buffer);
+            }
+            List<CompletedPart> parts = new ArrayList<>();
+            for (CompletableFuture<CompletedPart> future : futures) {
+                parts.add(future.join());
+            }
+            parts.sort(Comparator.comparing(CompletedPart::partNumber));
+            completed = true;
+            return parts;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            if (!completed) {
+                // Let parts already in flight settle so the abort is not raced by late uploads.
+                futures.forEach(future -> future.handle((part, e) -> part).join());
+            }
+        }
+    }
+
+    private CompletedPart uploadPart(PutObjectRequest request, String uploadId, int partNumber, byte[] body, int length) {
+        UploadPartRequest partRequest = UploadPartRequest.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build();
+        String eTag = s3.uploadPart(partRequest, bodyOf(body, length)).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+
+    private void abort(PutObjectRequest request, String uploadId, Exception cause) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(request.bucket())
+                    .key(request.key())
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /** Wraps the buffer without copying; the stream is resettable, so the SDK can replay it on its own retries. */
+    private static RequestBody bodyOf(byte[] buffer, int length) {
+        return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, length), length);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload slot", e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.awsstorage.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.entity.PresignedMultipartUpload;
+import com.example.awsstorage.entity.PresignedUrl;
+import com.example.awsstorage.entity.UploadedPart;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+
+import software.amazon.awssdk.awscore.presigner.PresignedRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedUploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+
+/**
+ * Hands out presigned URLs so clients move file bytes to and from S3 directly, leaving this service only the
+ * small requests that set transfers up.
+ * <p>
+ * URLs address the same keys as {@link S3FileService}, wherever the {@link KeyLayout} puts them, and stay
+ * valid for {@code presign.expirySeconds}. Multipart uploads are created here and completed through
+ * {@link S3FileService}, which keeps the metadata and disk caches and deduplicated content references in step
+ * with them. A single presigned PUT is not seen by this service, so other instances, and this one, notice it
+ * once their cached metadata expires.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class PresignedUrlService {
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final S3FileService fileService;
+    private final DedupStore dedupStore;
+    private final KeyLayout layout;
+    private final Duration expiry;
+    private final long partSize;
+
+    public PresignedUrlService(S3Client s3, S3Presigner presigner, S3FileService fileService,
+            DedupStore dedupStore, KeyLayout layout,
+            @Value("${presign.expirySeconds:900}") long expirySeconds,
+            @Value("${upload.partSize:16777216}") long partSize) {
+        this.s3 = s3;
+        this.presigner = presigner;
+        this.fileService = fileService;
+        this.dedupStore = dedupStore;
+        this.layout = layout;
+        this.expiry = Duration.ofSeconds(expirySeconds);
+        this.partSize = partSize;
+    }
+
+    /**
+     * A GET of the file, which S3 serves with ranges and conditional requests as usual. A file stored as a
+     * reference to deduplicated content is signed for that content, under the file's own name.
+     *
+     * @throws StoredFileNotFoundException if there is no such file
+     */
+    public PresignedUrl presignDownload(String userName, String filename) {
+        String key = userName + "/" + filename;
+        FileMetadata metadata = fileService.findFileMetadata(key)
+                .orElseThrow(() -> new StoredFileNotFoundException(key, null));
+        KeyLayout.Location location;
+        if (metadata.getContentSha256() != null && dedupStore.isEnabled()) {
+            location = new KeyLayout.Location(dedupStore.getBucket(),
+                    dedupStore.contentKey(metadata.getContentSha256()));
+        } else if (layout.legacy(userName, filename) != null) {
+            location = fileService.locateFile(userName, filename);
+        } else {
+            location = layout.locate(userName, filename);
+        }
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .responseContentDisposition("attachment; filename=" + filename)
+                .build();
+        return toUrl(presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(expiry)
+                .getObjectRequest(request)
+                .build()));
+    }
+
+    /**
+     * A single PUT of the whole file, for files up to 5 GiB. S3 would replace a file stored as a reference to
+     * deduplicated content without the reference being released, leaking the content for good, so such a file
+     * is refused; it can still be replaced through this service's uploads or a multipart upload, or deleted
+     * first. The check goes by this instance's metadata, so a file another instance deduplicates after the URL
+     * is signed, or while its cached metadata is stale, can still be overwritten that way.
+     *
+     * @throws IllegalStateException if the file is stored as a reference to deduplicated content
+     */
+    public PresignedUrl presignUpload(String userName, String filename, String contentType) {
+        if (dedupStore.isEnabled() && fileService.findFileMetadata(userName + "/" + filename)
+                .map(metadata -> metadata.getContentSha256() != null)
+                .orElse(false)) {
+            throw new IllegalStateException("File is stored deduplicated and cannot be replaced by a direct PUT: "
+                    + userName + "/" + filename);
+        }
+        KeyLayout.Location location = layout.locate(userName, filename);
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType)
+                .build();
+        return toUrl(presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(expiry)
+                .putObjectRequest(request)
+                .build()));
+    }
+
+    /**
+     * Starts a multipart upload of a file of {@code size} bytes and signs a URL for each of its parts. Parts are
+     * {@code upload.partSize}, or larger if the file would otherwise need more than S3's 10,000 parts.
+     */
+    public PresignedMultipartUpload startMultipartUpload(String userName, String filename, String contentType,
+            long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("A multipart upload needs a positive size, got " + size);
+        }
+        KeyLayout.Location location = layout.locate(userName, filename);
+        long effectivePartSize = MultipartUploader.partSize(size, partSize);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType)
+                .build()).uploadId();
+        List<PresignedUrl> parts = new ArrayList<>(partCount);
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            UploadPartRequest part = UploadPartRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .build();
+            PresignedUploadPartRequest presigned = presigner.presignUploadPart(UploadPartPresignRequest.builder()
+                    .signatureDuration(expiry)
+                    .uploadPartRequest(part)
+                    .build());
+            parts.add(toUrl(presigned));
+        }
+        return PresignedMultipartUpload.builder()
+                .uploadId(uploadId)
+                .partSize(effectivePartSize)
+                .parts(parts)
+                .expiresAt(parts.get(0).getExpiresAt())
+                .build();
+    }
+
+    /**
+     * Assembles the uploaded parts into the file, replacing any file of that name and releasing the content it
+     * referred to if it was deduplicated.
+     */
+    public void completeMultipartUpload(String userName, String filename, String uploadId, List<UploadedPart> parts) {
+        fileService.completeMultipartUpload(userName, filename, uploadId, parts.stream()
+                .map(part -> CompletedPart.builder().partNumber(part.getPartNumber()).eTag(part.getETag()).build())
+                .collect(Collectors.toList()));
+    }
+
+    /** Discards an unfinished multipart upload and the parts already sent for it. */
+    public void abortMultipartUpload(String userName, String filename, String uploadId) {
+        fileService.abortMultipartUpload(userName, filename, uploadId);
+    }
+
+    private static PresignedUrl toUrl(PresignedRequest presigned) {
+        // The client's HTTP library sets Host from the URL itself.
+        Map<String, List<String>> headers = presigned.signedHeaders().entrySet().stream()
+                .filter(header -> !header.getKey().equalsIgnoreCase("host"))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return PresignedUrl.builder()
+                .method(presigned.httpRequest().method().name())
+                .url(presigned.url().toString())
+                .headers(headers)
+                .expiresAt(presigned.expiration())
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.awsstorage.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import com.example.awsstorage.entity.AsyncFileDownload;
+
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Completes as soon as the response headers arrive, handing the body over as an unconsumed publisher
+ * instead of collecting it.
+ */
+class PublishingResponseTransformer implements AsyncResponseTransformer<GetObjectResponse, AsyncFileDownload> {
+
+    private volatile CompletableFuture<AsyncFileDownload> future;
+    private volatile GetObjectResponse response;
+
+    @Override
+    public CompletableFuture<AsyncFileDownload> prepare() {
+        future = new CompletableFuture<>();
+        return future;
+    }
+
+    @Override
+    public void onResponse(GetObjectResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void onStream(SdkPublisher<ByteBuffer> publisher) {
+        future.complete(AsyncFileDownload.builder()
+                .body(publisher)
+                .contentLength(response.contentLength())
+                .eTag(response.eTag())
+                .contentType(response.contentType())
+                .lastModified(response.lastModified())
+                .contentRange(response.contentRange())
+                .build());
+    }
+
+    @Override
+    public void exceptionOccurred(Throwable error) {
+        future.completeExceptionally(error);
+    }
+}
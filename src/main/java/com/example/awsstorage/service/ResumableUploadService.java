@@ -0,0 +1,230 @@
+package com.example.awsstorage.service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.awsstorage.entity.UploadSession;
+import com.example.awsstorage.entity.UploadStatus;
+import com.example.awsstorage.exception.UploadNotFoundException;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads that survive dropped connections and restarts, built on S3 multipart uploads.
+ * <p>
+ * Creating an upload fixes the file's size and so its parts. Each part is streamed to S3 as it arrives and
+ * recorded in the {@link UploadSessionStore} once S3 has it; a part whose request fails is simply not
+ * recorded, so a client that lost its connection asks for the upload's status and sends only the parts still
+ * missing. Completing the upload assembles the parts into the file. An upload that sees no progress for
+ * {@code upload.sessions.ttlSeconds} is aborted, along with the parts S3 holds for it, by a sweep that runs
+ * every {@code upload.sessions.gcIntervalSeconds}. Sessions are kept on this instance's disk, so an upload has
+ * to be resumed through the instance that created it.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class ResumableUploadService {
+
+    private final S3Client s3;
+    private final S3FileService fileService;
+    private final UploadSessionStore store;
+    private final KeyLayout layout;
+    private final long partSize;
+    private final Duration ttl;
+
+    public ResumableUploadService(S3Client s3, S3FileService fileService, UploadSessionStore store,
+            KeyLayout layout,
+            @Value("${upload.partSize:16777216}") long partSize,
+            @Value("${upload.sessions.ttlSeconds:86400}") long ttlSeconds) {
+        this.s3 = s3;
+        this.fileService = fileService;
+        this.store = store;
+        this.layout = layout;
+        this.partSize = partSize;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    /** Starts an upload of {@code size} bytes to {@code userName/filename}. */
+    public UploadStatus create(String userName, String filename, String contentType, long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("A resumable upload needs a positive size, got " + size);
+        }
+        KeyLayout.Location location = layout.locate(userName, filename);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType)
+                .metadata(Collections.singletonMap("Content-Length", String.valueOf(size)))
+                .build()).uploadId();
+        Instant now = Instant.now();
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .userName(userName)
+                .filename(filename)
+                .contentType(contentType)
+                .size(size)
+                .partSize(MultipartUploader.partSize(size, partSize))
+                .uploadId(uploadId)
+                .parts(Collections.emptyMap())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        store.create(session);
+        return status(session);
+    }
+
+    /** @throws UploadNotFoundException if there is no such upload */
+    public UploadStatus status(String id) {
+        return status(session(id));
+    }
+
+    /**
+     * Streams part {@code partNumber} to S3 and records it. Sending a part again replaces it.
+     *
+     * @param contentLength the request's Content-Length, or {@code -1} if it had none; it must be the part's length
+     * @param contentMd5 the part's Content-MD5, which S3 checks, or {@code null}
+     * @throws IllegalArgumentException if there is no such part, the length is wrong or the MD5 does not match
+     */
+    public UploadStatus uploadPart(String id, int partNumber, InputStream body, long contentLength, String contentMd5) {
+        UploadSession session = session(id);
+        long length = partLength(session, partNumber);
+        if (contentLength >= 0 && contentLength != length) {
+            throw new IllegalArgumentException("Part " + partNumber + " is " + length + " bytes, got " + contentLength);
+        }
+        KeyLayout.Location location = layout.locate(session.getUserName(), session.getFilename());
+        String eTag;
+        try {
+            eTag = s3.uploadPart(UploadPartRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .uploadId(session.getUploadId())
+                    .partNumber(partNumber)
+                    .contentLength(length)
+                    .contentMD5(contentMd5)
+                    .build(), RequestBody.fromInputStream(body, length)).eTag();
+        } catch (S3Exception e) {
+            if ("BadDigest".equals(e.awsErrorDetails().errorCode())
+                    || "InvalidDigest".equals(e.awsErrorDetails().errorCode())) {
+                throw new IllegalArgumentException("Part " + partNumber + " does not match its Content-MD5", e);
+            }
+            throw e;
+        }
+        return status(store.update(id, current -> {
+            Map<Integer, String> parts = new TreeMap<>(current.getParts());
+            parts.put(partNumber, eTag);
+            return current.toBuilder().parts(parts).updatedAt(Instant.now()).build();
+        }));
+    }
+
+    /**
+     * Assembles the parts into the file, replacing any file of that name, and forgets the upload.
+     *
+     * @throws IllegalStateException if parts are still missing
+     */
+    public void complete(String id) {
+        UploadSession session = session(id);
+        List<Integer> missing = missingParts(session);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Upload " + id + " is missing parts " + missing);
+        }
+        fileService.completeMultipartUpload(session.getUserName(), session.getFilename(), session.getUploadId(),
+                session.getParts().entrySet().stream()
+                        .map(part -> CompletedPart.builder().partNumber(part.getKey()).eTag(part.getValue()).build())
+                        .collect(Collectors.toList()));
+        store.delete(id);
+    }
+
+    /** Discards the upload and the parts S3 holds for it. */
+    public void abort(String id) {
+        abort(session(id));
+    }
+
+    /**
+     * Aborts every upload that has seen no progress for {@code upload.sessions.ttlSeconds}. One that cannot be
+     * aborted now is left for the next sweep.
+     */
+    @Scheduled(fixedDelayString = "${upload.sessions.gcIntervalSeconds:3600}",
+            initialDelayString = "${upload.sessions.gcIntervalSeconds:3600}", timeUnit = TimeUnit.SECONDS)
+    public void expireSessions() {
+        Instant cutoff = Instant.now().minus(ttl);
+        for (UploadSession session : store.all()) {
+            if (session.getUpdatedAt().isBefore(cutoff)) {
+                try {
+                    abort(session);
+                } catch (RuntimeException e) {
+                    // Retried on the next sweep.
+                }
+            }
+        }
+    }
+
+    private void abort(UploadSession session) {
+        try {
+            fileService.abortMultipartUpload(session.getUserName(), session.getFilename(), session.getUploadId());
+        } catch (NoSuchUploadException e) {
+            // Already completed or aborted in S3; only the session is left.
+        }
+        store.delete(session.getId());
+    }
+
+    private UploadSession session(String id) {
+        return store.find(id).orElseThrow(() -> new UploadNotFoundException(id));
+    }
+
+    private UploadStatus status(UploadSession session) {
+        List<Integer> missing = missingParts(session);
+        return UploadStatus.builder()
+                .id(session.getId())
+                .filename(session.getFilename())
+                .size(session.getSize())
+                .partSize(session.getPartSize())
+                .partCount(partCount(session))
+                .offset(missing.isEmpty() ? session.getSize() : (missing.get(0) - 1) * session.getPartSize())
+                .missingParts(missing)
+                .expiresAt(session.getUpdatedAt().plus(ttl))
+                .build();
+    }
+
+    private static List<Integer> missingParts(UploadSession session) {
+        int partCount = partCount(session);
+        List<Integer> missing = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            if (!session.getParts().containsKey(partNumber)) {
+                missing.add(partNumber);
+            }
+        }
+        return missing;
+    }
+
+    private static long partLength(UploadSession session, int partNumber) {
+        int partCount = partCount(session);
+        if (partNumber < 1 || partNumber > partCount) {
+            throw new IllegalArgumentException("Part numbers run from 1 to " + partCount + ", got " + partNumber);
+        }
+        return partNumber < partCount ? session.getPartSize()
+                : session.getSize() - (partCount - 1) * session.getPartSize();
+    }
+
+    private static int partCount(UploadSession session) {
+        return (int) ((session.getSize() + session.getPartSize() - 1) / session.getPartSize());
+    }
+}
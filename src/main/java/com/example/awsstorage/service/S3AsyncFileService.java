@@ -0,0 +1,394 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.awsstorage.entity.AsyncFileDownload;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * {@link IAsyncFileService} backed by {@link S3AsyncClient}. Selected with {@code storage.mode=async}. Files are
+ * kept where the {@link KeyLayout} puts them, as {@link S3FileService} keeps them.
+ * <p>
+ * It does not follow or maintain {@link DedupStore} references: it would serve a deduplicated file as its empty
+ * reference object and leak content on overwrite and delete. It therefore refuses to start with
+ * {@code dedup.enabled}.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.mode", havingValue = "async")
+public class S3AsyncFileService implements IAsyncFileService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final S3AsyncClient s3;
+    private final KeyLayout layout;
+
+    public S3AsyncFileService(S3AsyncClient s3, KeyLayout layout, @Value("${dedup.enabled:false}") boolean dedup) {
+        if (dedup) {
+            throw new IllegalStateException("dedup.enabled is not supported with storage.mode=async");
+        }
+        this.s3 = s3;
+        this.layout = layout;
+    }
+
+    /**
+     * Moves the upload out of the servlet container's spool file and sends it from there. The move goes through
+     * {@code Part.write}, which renames a part spooled to disk rather than copying it; the {@code Path} overload
+     * of {@code transferTo} would copy.
+     */
+    @Override
+    public CompletableFuture<String> saveFile(MultipartFile file, String userName) {
+        KeyLayout.Location location = layout.locate(userName, file.getOriginalFilename());
+        Path body;
+        try {
+            body = Files.createTempFile("upload-", null);
+            file.transferTo(body.toFile());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException(e));
+        }
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(file.getContentType())
+                .metadata(Collections.singletonMap("Content-Length", String.valueOf(file.getSize())))
+                .build();
+        return s3.putObject(request, AsyncRequestBody.fromFile(body))
+                .whenComplete((response, e) -> body.toFile().delete())
+                .thenCompose(response -> removeLegacy(userName, file.getOriginalFilename()))
+                .thenApply(done -> "File uploaded");
+    }
+
+    /** Starts every put at once; the HTTP client's connection limit queues any beyond it. */
+    @Override
+    public CompletableFuture<BatchUploadResult> saveFiles(List<MultipartFile> files, String userName) {
+        Map<String, CompletableFuture<String>> uploads = new LinkedHashMap<>();
+        files.forEach(file -> uploads.put(file.getOriginalFilename(), saveFile(file, userName)));
+        return CompletableFuture.allOf(uploads.values().stream()
+                        .map(upload -> upload.handle((result, e) -> result))
+                        .toArray(CompletableFuture<?>[]::new))
+                .thenApply(done -> {
+                    List<String> uploaded = new ArrayList<>();
+                    Map<String, String> failed = new LinkedHashMap<>();
+                    uploads.forEach((name, upload) -> upload.handle((result, e) -> e == null
+                            ? uploaded.add(name)
+                            : failed.put(name, String.valueOf(S3Errors.unwrap(e).getMessage()))).join());
+                    return BatchUploadResult.builder()
+                            .uploadedCount(uploaded.size())
+                            .uploaded(uploaded)
+                            .failed(failed)
+                            .build();
+                });
+    }
+
+    /** Looks where the file was kept before, too, while files are being migrated. */
+    @Override
+    public CompletableFuture<AsyncFileDownload> streamFile(String userName, String filename, DownloadOptions options) {
+        String key = userName + "/" + filename;
+        CompletableFuture<AsyncFileDownload> download = get(layout.locate(userName, filename), options);
+        KeyLayout.Location legacy = layout.legacy(userName, filename);
+        if (legacy != null) {
+            download = download.thenApply(CompletableFuture::completedFuture)
+                    .exceptionally(e -> S3Errors.isNoSuchKey(e)
+                            ? get(legacy, options) : CompletableFuture.failedFuture(S3Errors.unwrap(e)))
+                    .thenCompose(Function.identity());
+        }
+        return download.handle((found, e) -> {
+            if (e != null) {
+                throw S3Errors.translate(key, e);
+            }
+            return found;
+        });
+    }
+
+    private CompletableFuture<AsyncFileDownload> get(KeyLayout.Location location, DownloadOptions options) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .range(options.getRange())
+                .ifMatch(options.getIfMatch())
+                .ifNoneMatch(options.getIfNoneMatch())
+                .ifModifiedSince(options.getIfModifiedSince())
+                .build();
+        return s3.getObject(request, new PublishingResponseTransformer());
+    }
+
+    /**
+     * Deletes the file, and its old copy while files are being migrated. S3 answers a DELETE of a missing key
+     * with success, so a HEAD settles first whether there is a file to delete.
+     */
+    @Override
+    public CompletableFuture<Boolean> deleteFile(String userName, String filename) {
+        KeyLayout.Location location = layout.locate(userName, filename);
+        KeyLayout.Location legacy = layout.legacy(userName, filename);
+        CompletableFuture<Boolean> exists = exists(location);
+        if (legacy != null) {
+            exists = exists.thenCombine(exists(legacy), (current, old) -> current || old);
+        }
+        return exists.thenCompose(found -> {
+            if (!found) {
+                return CompletableFuture.completedFuture(false);
+            }
+            CompletableFuture<Boolean> deleted = delete(location);
+            return legacy == null ? deleted : deleted.thenCombine(delete(legacy), (current, old) -> current || old);
+        });
+    }
+
+    private CompletableFuture<Boolean> exists(KeyLayout.Location location) {
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .build();
+        return s3.headObject(request)
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return true;
+                    }
+                    if (S3Errors.isNoSuchKey(e)) {
+                        return false;
+                    }
+                    throw S3Errors.translate(request.key(), e);
+                });
+    }
+
+    private CompletableFuture<Boolean> delete(KeyLayout.Location location) {
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .build();
+        return s3.deleteObject(request)
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return true;
+                    }
+                    if (S3Errors.isNoSuchKey(e)) {
+                        return false;
+                    }
+                    throw S3Errors.translate(request.key(), e);
+                });
+    }
+
+    /** Deletes the file's old copy once it has been written where the layout puts it. */
+    private CompletableFuture<Void> removeLegacy(String userName, String filename) {
+        KeyLayout.Location legacy = layout.legacy(userName, filename);
+        return legacy == null ? CompletableFuture.completedFuture(null) : delete(legacy).thenApply(deleted -> null);
+    }
+
+    /** Deletes the named files with one DeleteObjects request per thousand keys in each bucket, all sent at once. */
+    @Override
+    public CompletableFuture<BatchDeleteResult> deleteFiles(String userName, List<String> filenames) {
+        List<String> names = filenames.stream()
+                .distinct()
+                .collect(Collectors.toList());
+        // Each batch completes with the files it failed to delete.
+        List<CompletableFuture<Map<String, String>>> batches = new ArrayList<>();
+        layout.keysByBucket(userName, names).forEach((bucket, files) -> {
+            List<String> keys = new ArrayList<>(files.keySet());
+            for (int from = 0; from < keys.size(); from += BatchDeleter.MAX_KEYS_PER_REQUEST) {
+                batches.add(deleteBatch(bucket,
+                        keys.subList(from, Math.min(from + BatchDeleter.MAX_KEYS_PER_REQUEST, keys.size())))
+                        .thenApply(errors -> errors.entrySet().stream().collect(Collectors.toMap(
+                                error -> files.get(error.getKey()), Map.Entry::getValue, (first, second) -> first))));
+            }
+        });
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    Map<String, String> failed = new HashMap<>();
+                    batches.forEach(batch -> failed.putAll(batch.join()));
+                    List<String> deleted = names.stream()
+                            .filter(filename -> !failed.containsKey(filename))
+                            .collect(Collectors.toList());
+                    return BatchDeleteResult.builder()
+                            .deletedCount(deleted.size())
+                            .deleted(deleted)
+                            .failed(failed)
+                            .build();
+                });
+    }
+
+    /**
+     * Deletes every file the user has, listing each prefix of the layout at once and sending a DeleteObjects
+     * request for each listing page as it arrives.
+     */
+    @Override
+    public CompletableFuture<BatchDeleteResult> deleteAllFiles(String userName) {
+        AtomicLong deletedCount = new AtomicLong();
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> batches = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> listings = layout.prefixes(userName).stream()
+                .map(prefix -> s3.listObjectsV2Paginator(listRequest(prefix)).subscribe(page -> {
+                    List<String> keys = page.contents().stream().map(S3Object::key).collect(Collectors.toList());
+                    if (!keys.isEmpty()) {
+                        batches.add(deleteBatch(prefix.getBucket(), keys).thenAccept(errors -> {
+                            errors.forEach((key, reason) -> failed.put(S3Listings.name(prefix, key), reason));
+                            deletedCount.addAndGet(keys.size() - errors.size());
+                        }));
+                    }
+                }))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(listings.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(done -> CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])))
+                .thenApply(done -> BatchDeleteResult.builder()
+                        .deletedCount(deletedCount.get())
+                        .failed(failed)
+                        .build());
+    }
+
+    /** Completes with the keys S3 failed to delete, each with its reason; a failed request fails every key. */
+    private CompletableFuture<Map<String, String>> deleteBatch(String bucket, List<String> keys) {
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder()
+                        .objects(keys.stream()
+                                .map(key -> ObjectIdentifier.builder().key(key).build())
+                                .collect(Collectors.toList()))
+                        .quiet(true)
+                        .build())
+                .build();
+        return s3.deleteObjects(request).handle((response, e) -> e == null
+                ? response.errors().stream().collect(Collectors.toMap(S3Error::key,
+                        error -> error.code() + ": " + error.message(), (first, second) -> first))
+                : keys.stream().collect(Collectors.toMap(key -> key,
+                        key -> String.valueOf(S3Errors.unwrap(e).getMessage()), (first, second) -> first)));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> listAllFiles(String userName) {
+        List<String> files = new ArrayList<>();
+        return streamAllFiles(userName).subscribe(files::add)
+                .thenApply(done -> files);
+    }
+
+    /** Keys are named {@code userName/filename} whatever the layout. */
+    @Override
+    public CompletableFuture<FilePage> listFiles(String userName, int pageSize, String continuationToken) {
+        int maxKeys = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            return ShardedListing.page(prefixes, s3::listObjectsV2,
+                            ListOptions.builder().pageSize(maxKeys).continuationToken(continuationToken).build())
+                    .thenApply(page -> FilePage.builder()
+                            .files(page.getFiles().stream()
+                                    .map(file -> userName + "/" + file.getName())
+                                    .collect(Collectors.toList()))
+                            .nextContinuationToken(page.getNextContinuationToken())
+                            .build());
+        }
+        KeyLayout.Location prefix = prefixes.get(0);
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(prefix.getBucket())
+                .prefix(prefix.getKey())
+                .maxKeys(maxKeys)
+                .continuationToken(continuationToken)
+                .build();
+        return s3.listObjectsV2(request)
+                .thenApply(response -> FilePage.builder()
+                        .files(response.contents().stream()
+                                .map(object -> userName + "/" + S3Listings.name(prefix, object.key()))
+                                .collect(Collectors.toList()))
+                        .nextContinuationToken(response.nextContinuationToken())
+                        .build());
+    }
+
+    /**
+     * Like {@link S3FileService#listEntries}, topping the page up from further S3 pages, each requested once the
+     * last has arrived. References to deduplicated content are listed with the size of their own, empty, object.
+     */
+    @Override
+    public CompletableFuture<FileListing> listEntries(String userName, ListOptions options) {
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            return ShardedListing.page(prefixes, s3::listObjectsV2, options)
+                    .thenApply(page -> FileListing.builder()
+                            .files(page.getFiles().stream()
+                                    .map(file -> S3Listings.entry(userName, file.getName(), file.getObject(),
+                                            file.getObject().size()))
+                                    .collect(Collectors.toList()))
+                            .folders(page.getFolders())
+                            .nextContinuationToken(page.getNextContinuationToken())
+                            .build());
+        }
+        return listEntries(userName, prefixes.get(0), options, S3Listings.pageSize(options), new ArrayList<>(),
+                new ArrayList<>(), options.getContinuationToken());
+    }
+
+    private CompletableFuture<FileListing> listEntries(String userName, KeyLayout.Location prefix, ListOptions options,
+            int pageSize, List<FileEntity> files, List<String> folders, String continuationToken) {
+        return s3.listObjectsV2(S3Listings.request(prefix, options, pageSize - files.size() - folders.size(),
+                continuationToken))
+                .thenCompose(response -> {
+                    for (S3Object object : response.contents()) {
+                        if (S3Listings.matches(object, options)) {
+                            files.add(S3Listings.entry(userName, S3Listings.name(prefix, object.key()), object,
+                                    object.size()));
+                        }
+                    }
+                    response.commonPrefixes().forEach(folder -> folders.add(S3Listings.name(prefix, folder.prefix())));
+                    String next = response.nextContinuationToken();
+                    if (next != null && files.size() + folders.size() < pageSize) {
+                        return listEntries(userName, prefix, options, pageSize, files, folders, next);
+                    }
+                    return CompletableFuture.completedFuture(FileListing.builder()
+                            .files(files)
+                            .folders(folders)
+                            .nextContinuationToken(next)
+                            .build());
+                });
+    }
+
+    /** Pages are fetched as the subscriber requests keys, so a slow reader holds back the listing. */
+    @Override
+    public SdkPublisher<String> streamAllFiles(String userName) {
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            return ShardedListing.publisher(prefixes, s3::listObjectsV2)
+                    .map(file -> userName + "/" + file.getName());
+        }
+        KeyLayout.Location prefix = prefixes.get(0);
+        return s3.listObjectsV2Paginator(listRequest(prefix)).contents()
+                .map(object -> userName + "/" + S3Listings.name(prefix, object.key()));
+    }
+
+    private static ListObjectsV2Request listRequest(KeyLayout.Location prefix) {
+        return ListObjectsV2Request.builder()
+                .bucket(prefix.getBucket())
+                .prefix(prefix.getKey())
+                .build();
+    }
+}
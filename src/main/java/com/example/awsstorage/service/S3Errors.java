@@ -0,0 +1,55 @@
+package com.example.awsstorage.service;
+
+import java.util.concurrent.CompletionException;
+
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Maps S3 error responses onto this service's exceptions.
+ */
+final class S3Errors {
+
+    private S3Errors() {
+    }
+
+    /**
+     * Translates a failed request for {@code key}. Errors without a specific meaning for callers are returned as is.
+     */
+    static RuntimeException translate(String key, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof NoSuchKeyException) {
+            return new StoredFileNotFoundException(key, cause);
+        }
+        if (cause instanceof S3Exception) {
+            S3Exception e = (S3Exception) cause;
+            if (e.statusCode() == 304) {
+                return new NotModifiedException(responseHeader(e, "ETag"));
+            }
+            if (e.statusCode() == 416) {
+                return new RangeNotSatisfiableException(e);
+            }
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    static boolean isNoSuchKey(Throwable error) {
+        return unwrap(error) instanceof NoSuchKeyException;
+    }
+
+    /** The failure behind a future's {@link CompletionException}, or {@code error} itself. */
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static String responseHeader(S3Exception e, String name) {
+        if (e.awsErrorDetails() == null || e.awsErrorDetails().sdkHttpResponse() == null) {
+            return null;
+        }
+        return e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader(name).orElse(null);
+    }
+}
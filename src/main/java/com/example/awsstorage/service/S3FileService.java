@@ -2,138 +2,779 @@ package com.example.awsstorage.service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
 
 import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
 @Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
 public class S3FileService implements IFileService {
 
-    @Value("${bucketName}")
-    private String bucketName;
+    private static final int MAX_PAGE_SIZE = 1000;
 
     private final S3Client s3;
+    private final KeyLayout layout;
+    private final MultipartUploader uploader;
+    private final FileMetadataCache metadataCache;
+    private final DiskObjectCache diskCache;
+    private final BatchDeleter batchDeleter;
+    private final BatchUploader batchUploader;
+    private final DedupStore dedupStore;
+    private final UploadCompression compression;
+    private final Executor executor;
 
-    public S3FileService(S3Client s3) {
+    public S3FileService(S3Client s3, KeyLayout layout, MultipartUploader uploader, FileMetadataCache metadataCache,
+            DiskObjectCache diskCache, BatchDeleter batchDeleter, BatchUploader batchUploader,
+            DedupStore dedupStore, UploadCompression compression, @Qualifier("transferExecutor") Executor executor) {
         this.s3 = s3;
-    }
-    // Setter method for bucketName
-    public void setBucketName(String bucketName) {
-        this.bucketName = bucketName;
+        this.layout = layout;
+        this.uploader = uploader;
+        this.metadataCache = metadataCache;
+        this.diskCache = diskCache;
+        this.batchDeleter = batchDeleter;
+        this.batchUploader = batchUploader;
+        this.dedupStore = dedupStore;
+        this.compression = compression;
+        this.executor = executor;
     }
 
+    /**
+     * Uploads the file to where the {@link KeyLayout} puts {@code userName/originalFilename}, compressed if
+     * {@link UploadCompression} says so. With deduplication on, a large enough file is stored as a reference to
+     * its content instead, and content the file referred to before is released.
+     */
     @Override
     public String saveFile(MultipartFile file, String userName) {
         String originalFilename = file.getOriginalFilename();
         String key = userName + "/" + originalFilename;
-        int count = 0;
-        int maxTries = 3;
+        KeyLayout.Location location = layout.locate(userName, originalFilename);
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(file.getContentType())
+                .metadata(Collections.singletonMap("Content-Length", String.valueOf(file.getSize())))
+                .build();
         try {
-            InputStream inputStream = file.getInputStream();
-            PutObjectRequest request = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .metadata(Collections.singletonMap("Content-Length", String.valueOf(file.getSize())))
-                    .build();
-            s3.putObject(request, RequestBody.fromInputStream(inputStream, file.getSize()));
+            String previous = dedupStore.isEnabled() ? contentSha256(key) : null;
+            if (dedupStore.accepts(file.getSize())) {
+                dedupStore.save(request, key, file, file.getSize(), previous);
+            } else {
+                upload(request, file);
+                if (previous != null) {
+                    dedupStore.release(key, previous);
+                }
+            }
+            removeLegacy(userName, originalFilename);
+            metadataCache.added(userName, key);
+            diskCache.invalidate(key);
             return "File uploaded";
         } catch (IOException e) {
-            if (++count == maxTries) throw new RuntimeException(e);
+            throw new RuntimeException(e);
         }
-        return null;
     }
+    private void upload(PutObjectRequest request, MultipartFile file) throws IOException {
+        if (!compression.accepts(file.getOriginalFilename(), file.getContentType(), file.getSize())) {
+            uploader.upload(request, file, file.getSize());
+            return;
+        }
+        ContentCodec codec = compression.codec();
+        try (InputStream compressed = codec.compressing(file.getInputStream())) {
+            uploader.upload(request.toBuilder().contentEncoding(codec.encoding()).build(), compressed);
+        }
+    }
+
+    /**
+     * Uploads a file of unknown length as it is read from {@code content}, holding no more of it than
+     * {@link MultipartUploader} buffers. With its size unknown, whether it is compressed depends on its name and
+     * content type alone, and it is never deduplicated, since its hash is only known once it has all been sent;
+     * content the key referred to before is still released.
+     */
     @Override
-    public byte[] downloadFile(String userName, String filename) {
+    public String saveFile(String userName, String filename, String contentType, InputStream content) {
         String key = userName + "/" + filename;
-        if (!doesFileExist(key)) {
-            throw new RuntimeException("File not found");
-        }
-        GetObjectRequest request = GetObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
+        KeyLayout.Location location = layout.locate(userName, filename);
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .contentType(contentType)
                 .build();
-        try (ResponseInputStream<GetObjectResponse> response = s3.getObject(request)) {
-            return response.readAllBytes();
-        } catch (NoSuchKeyException e) {
+        try {
+            String previous = dedupStore.isEnabled() ? contentSha256(key) : null;
+            if (compression.accepts(filename, contentType, Long.MAX_VALUE)) {
+                ContentCodec codec = compression.codec();
+                try (InputStream compressed = codec.compressing(content)) {
+                    uploader.upload(request.toBuilder().contentEncoding(codec.encoding()).build(), compressed);
+                }
+            } else {
+                uploader.upload(request, content);
+            }
+            if (previous != null) {
+                dedupStore.release(key, previous);
+            }
+            removeLegacy(userName, filename);
+            metadataCache.added(userName, key);
+            diskCache.invalidate(key);
+            return "File uploaded";
+        } catch (IOException e) {
             throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Completes a multipart upload the client sent the parts of itself, through presigned URLs or a resumable
+     * upload, and records it like {@link #saveFile} does: the file replaces any of that name, releasing the
+     * deduplicated content it referred to, and the caches learn of it.
+     */
+    public void completeMultipartUpload(String userName, String filename, String uploadId, List<CompletedPart> parts) {
+        String key = userName + "/" + filename;
+        KeyLayout.Location location = layout.locate(userName, filename);
+        String previous = dedupStore.isEnabled() ? contentSha256(key) : null;
+        List<CompletedPart> sorted = new ArrayList<>(parts);
+        sorted.sort(Comparator.comparing(CompletedPart::partNumber));
+        s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(sorted).build())
+                .build());
+        if (previous != null) {
+            dedupStore.release(key, previous);
+        }
+        removeLegacy(userName, filename);
+        metadataCache.added(userName, key);
+        diskCache.invalidate(key);
+    }
+
+    /** Discards an unfinished multipart upload and the parts already sent for it. */
+    public void abortMultipartUpload(String userName, String filename, String uploadId) {
+        KeyLayout.Location location = layout.locate(userName, filename);
+        s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .uploadId(uploadId)
+                .build());
+    }
+
+    /** Uploads several files from one multipart request, overlapping the puts. */
+    @Override
+    public BatchUploadResult saveFiles(List<MultipartFile> files, String userName) {
+        Iterator<MultipartFile> remaining = files.iterator();
+        InputStream[] open = new InputStream[1];
+        return saveBatch(userName, () -> {
+            if (open[0] != null) {
+                open[0].close();
+            }
+            if (!remaining.hasNext()) {
+                return null;
+            }
+            MultipartFile file = remaining.next();
+            open[0] = file.getInputStream();
+            return new BatchUploader.Entry(file.getOriginalFilename(), file.getContentType(), open[0]);
+        });
+    }
+
+    /**
+     * Uploads every file in a zip archive read from {@code zip} as it arrives, keeping the entries' paths
+     * under the user's prefix. Directories are skipped; content types are guessed from the file names.
+     */
+    @Override
+    public BatchUploadResult saveArchive(InputStream zip, String userName) {
+        ZipInputStream entries = new ZipInputStream(zip);
+        return saveBatch(userName, () -> {
+            ZipEntry entry = entries.getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = entries.getNextEntry();
+            }
+            if (entry == null) {
+                return null;
+            }
+            String contentType = MediaTypeFactory.getMediaType(entry.getName())
+                    .map(MediaType::toString)
+                    .orElse(null);
+            return new BatchUploader.Entry(entry.getName(), contentType, entries);
+        });
+    }
+
+    /**
+     * Uploads the entries, never deduplicated, and releases the deduplicated content each file they replace
+     * referred to, looked up before it is put.
+     */
+    private BatchUploadResult saveBatch(String userName, BatchUploader.EntrySource entries) {
+        String prefix = userName + "/";
+        Map<String, String> previous = new ConcurrentHashMap<>();
+        BatchUploadResult result = batchUploader.upload(name -> {
+            KeyLayout.Location location = layout.locate(userName, name);
+            String sha256 = dedupStore.isEnabled() ? contentSha256(prefix + name) : null;
+            if (sha256 != null) {
+                previous.putIfAbsent(name, sha256);
+            }
+            return location;
+        }, entries);
+        result.getUploaded().stream()
+                .distinct()
+                .filter(previous::containsKey)
+                .forEach(name -> dedupStore.release(prefix + name, previous.get(name)));
+        if (layout.isLegacyFallback()) {
+            batchDeleter.delete(layout.getBucketName(), result.getUploaded().stream()
+                    .map(name -> layout.legacy(userName, name))
+                    .filter(Objects::nonNull)
+                    .map(KeyLayout.Location::getKey)
+                    .iterator(), null, false);
+        }
+        metadataCache.invalidateUser(userName);
+        result.getUploaded().forEach(name -> diskCache.invalidate(prefix + name));
+        return result;
+    }
+
+    @Override
+    public byte[] downloadFile(String userName, String filename) {
+        try (FileDownload download = streamFile(userName, filename)) {
+            return download.getContent().readAllBytes();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public FileDownload streamFile(String userName, String filename) {
+        return streamFile(userName, filename, DownloadOptions.NONE);
+    }
+
+    /**
+     * Downloads the object, forwarding range and precondition headers to S3. A reference to deduplicated
+     * content is followed first, so those headers apply to the content. A compressed object is sent as stored
+     * when the client accepts its coding, and otherwise decompressed while it is sent, whole, since ranges of
+     * the stored bytes mean nothing to such a client.
+     */
+    @Override
+    public FileDownload streamFile(String userName, String filename, DownloadOptions options) {
+        // The key may be swapped for a content key below, which the layout would not check.
+        layout.checkUserName(userName);
+        String key = userName + "/" + filename;
+        if (dedupStore.isEnabled()) {
+            String sha256 = contentSha256(key);
+            if (sha256 != null) {
+                key = dedupStore.contentKey(sha256);
+            }
+        }
+        FileDownload download = open(key, options);
+        ContentCodec codec = ContentCodec.of(download.getContentEncoding());
+        if (codec == null || codec.isAcceptedBy(options.getAcceptEncoding())) {
+            return download;
+        }
+        if (download.isPartial()) {
+            closeQuietly(download);
+            download = open(key, options.toBuilder().range(null).build());
+            codec = ContentCodec.of(download.getContentEncoding());
+            if (codec == null) {
+                return download;
+            }
+        }
+        return decompressed(download, codec);
+    }
+
+    /**
+     * Opens the object, through the disk cache when it is enabled. The cache only asks for the object's metadata
+     * to revalidate a copy it holds, so a miss costs the GET alone.
+     */
+    private FileDownload open(String key, DownloadOptions options) {
+        if (diskCache.isEnabled()) {
+            FileDownload cached = diskCache.open(key, options, () -> findFileMetadata(key), () -> fetch(key, options));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return fetch(key, options);
+    }
+
+    private FileDownload fetch(String key, DownloadOptions options) {
+        try {
+            ResponseInputStream<GetObjectResponse> response = withFallback(key, location -> s3.getObject(
+                    GetObjectRequest.builder()
+                            .bucket(location.getBucket())
+                            .key(location.getKey())
+                            .range(options.getRange())
+                            .ifMatch(options.getIfMatch())
+                            .ifNoneMatch(options.getIfNoneMatch())
+                            .ifModifiedSince(options.getIfModifiedSince())
+                            .build()));
+            GetObjectResponse object = response.response();
+            if (object.contentRange() == null) {
+                metadataCache.putMetadata(key, FileMetadata.builder()
+                        .contentLength(object.contentLength())
+                        .eTag(object.eTag())
+                        .contentType(object.contentType())
+                        .contentEncoding(object.contentEncoding())
+                        .lastModified(object.lastModified())
+                        .contentSha256(object.metadata().get(DedupStore.CONTENT_SHA256))
+                        .build());
+            }
+            return FileDownload.builder()
+                    .content(response)
+                    .contentLength(object.contentLength())
+                    .eTag(object.eTag())
+                    .contentType(object.contentType())
+                    .contentEncoding(object.contentEncoding())
+                    .lastModified(object.lastModified())
+                    .contentRange(object.contentRange())
+                    .build();
+        } catch (S3Exception e) {
+            throw S3Errors.translate(key, e);
+        }
+    }
+
+    /**
+     * The download with its body decompressed as it is read. Its length is unknown until then, and it is a
+     * different representation of the object, so its ETag is weak.
+     */
+    private static FileDownload decompressed(FileDownload download, ContentCodec codec) {
+        try {
+            String eTag = download.getETag();
+            return FileDownload.builder()
+                    .content(codec.decoder(download.getContent()))
+                    .eTag(eTag == null || eTag.startsWith("W/") ? eTag : "W/" + eTag)
+                    .contentType(download.getContentType())
+                    .lastModified(download.getLastModified())
+                    .build();
+        } catch (IOException e) {
+            closeQuietly(download);
+            throw new RuntimeException(e);
+        }
+    }
 
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            // Nothing more will be read from it.
+        }
+    }
 
+    /**
+     * Deletes the file, and its old copy while files are being migrated. S3 answers a DELETE of a missing key
+     * with success, so whether the file exists is settled first: by the metadata cache when it has seen the
+     * file, otherwise with a HEAD. A cached miss is not trusted, as another instance may have written the file.
+     */
     @Override
     public boolean deleteFile(String userName, String filename) {
         String key = userName + "/" + filename;
-        if (!doesFileExist(key)) {
-            return false;
+        boolean gone = false;
+        try {
+            Optional<FileMetadata> cached = metadataCache.cachedMetadata(key);
+            Optional<FileMetadata> current = cached != null && cached.isPresent() ? cached : headObject(key);
+            if (!current.isPresent()) {
+                gone = true;
+                return false;
+            }
+            String previous = dedupStore.isEnabled() ? current.get().getContentSha256() : null;
+            boolean deleted = delete(layout.locate(userName, filename));
+            KeyLayout.Location legacy = layout.legacy(userName, filename);
+            if (legacy != null) {
+                deleted = delete(legacy) || deleted;
+            }
+            gone = true;
+            if (deleted && previous != null) {
+                dedupStore.release(key, previous);
+            }
+            return deleted;
+        } finally {
+            // A failed delete may or may not have removed the file, so the next lookup asks S3.
+            if (gone) {
+                metadataCache.removed(userName, key);
+            } else {
+                metadataCache.invalidateMetadata(key);
+            }
+            diskCache.invalidate(key);
         }
-        DeleteObjectRequest request = DeleteObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .build();
+    }
+
+    private boolean delete(KeyLayout.Location location) {
         try {
-            s3.deleteObject(request);
+            s3.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(location.getBucket())
+                    .key(location.getKey())
+                    .build());
             return true;
         } catch (NoSuchKeyException e) {
             return false;
-        } catch (SdkException e) {
-            throw e;
         }
     }
 
-   
+    /**
+     * Deletes the named files in batches, one run of batches per bucket they are in; the result lists what was
+     * deleted and why anything was not.
+     */
+    @Override
+    public BatchDeleteResult deleteFiles(String userName, List<String> filenames) {
+        String prefix = userName + "/";
+        List<String> names = filenames.stream()
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, String> references = new HashMap<>();
+        if (dedupStore.isEnabled()) {
+            names.forEach(filename -> findFileMetadata(prefix + filename).map(FileMetadata::getContentSha256)
+                    .ifPresent(sha256 -> references.put(filename, sha256)));
+        }
+        try {
+            Map<String, String> failed = new LinkedHashMap<>();
+            layout.keysByBucket(userName, names).forEach((bucket, files) -> batchDeleter
+                    .delete(bucket, files.keySet().iterator(), null, true)
+                    .getFailed()
+                    .forEach((key, reason) -> failed.put(files.get(key), reason)));
+            List<String> deleted = names.stream()
+                    .filter(filename -> !failed.containsKey(filename))
+                    .collect(Collectors.toList());
+            releaseDeleted(userName, references, failed);
+            return BatchDeleteResult.builder()
+                    .deletedCount(deleted.size())
+                    .deleted(deleted)
+                    .failed(failed)
+                    .build();
+        } finally {
+            metadataCache.invalidateUser(userName);
+            names.forEach(filename -> diskCache.invalidate(prefix + filename));
+        }
+    }
+
+    /**
+     * Deletes every file the user has, one prefix of the layout after another, sending batches while each
+     * listing is still being walked rather than listing everything first. Only the count of deleted files is
+     * reported.
+     */
+    @Override
+    public BatchDeleteResult deleteAllFiles(String userName) {
+        long deletedCount = 0;
+        Map<String, String> failed = new HashMap<>();
+        try {
+            for (KeyLayout.Location prefix : layout.prefixes(userName)) {
+                Map<String, String> references = new ConcurrentHashMap<>();
+                Stream<String> keys = dedupStore.isEnabled()
+                        ? listFindingReferences(prefix, references)
+                        : listKeys(prefix);
+                BatchDeleteResult result = batchDeleter.delete(prefix.getBucket(), keys.iterator(), prefix.getKey(),
+                        false);
+                releaseDeleted(userName, references, result.getFailed());
+                deletedCount += result.getDeletedCount();
+                failed.putAll(result.getFailed());
+            }
+            return BatchDeleteResult.builder()
+                    .deletedCount(deletedCount)
+                    .failed(failed)
+                    .build();
+        } finally {
+            metadataCache.invalidateUser(userName);
+            diskCache.invalidatePrefix(userName + "/");
+        }
+    }
+
+    /** Releases the content referred to by each file, by name, that was not among those that failed to delete. */
+    private void releaseDeleted(String userName, Map<String, String> references, Map<String, String> failed) {
+        references.forEach((filename, sha256) -> {
+            if (!failed.containsKey(filename)) {
+                dedupStore.release(userName + "/" + filename, sha256);
+            }
+        });
+    }
 
+    /** The hash of the content {@code key} refers to, or {@code null} if it is not a reference. */
+    private String contentSha256(String key) {
+        return findFileMetadata(key).map(FileMetadata::getContentSha256).orElse(null);
+    }
 
-    
     public boolean doesFileExist(String key) {
+        return findFileMetadata(key).isPresent();
+    }
+
+    /**
+     * HEAD result for {@code key}, {@code userName/filename}, empty if it doesn't exist. Served from the metadata
+     * cache when possible.
+     */
+    public Optional<FileMetadata> findFileMetadata(String key) {
+        return metadataCache.metadata(key, this::headObject);
+    }
+
+    /**
+     * Where the file is now: where the layout puts it or, while files are being migrated, where it was kept
+     * before if it has not been moved yet.
+     */
+    public KeyLayout.Location locateFile(String userName, String filename) {
+        KeyLayout.Location location = layout.locate(userName, filename);
+        KeyLayout.Location legacy = layout.legacy(userName, filename);
+        return legacy == null || headObject(location).isPresent() || !headObject(legacy).isPresent()
+                ? location : legacy;
+    }
+
+    private Optional<FileMetadata> headObject(String key) {
+        Optional<FileMetadata> metadata = headObject(locate(key));
+        KeyLayout.Location legacy = legacy(key);
+        return metadata.isPresent() || legacy == null ? metadata : headObject(legacy);
+    }
+
+    private Optional<FileMetadata> headObject(KeyLayout.Location location) {
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(location.getBucket())
+                .key(location.getKey())
+                .build();
         try {
-            HeadObjectRequest request = HeadObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
-            s3.headObject(request);
-            return true;
+            HeadObjectResponse response = s3.headObject(request);
+            return Optional.of(FileMetadata.builder()
+                    .contentLength(response.contentLength())
+                    .eTag(response.eTag())
+                    .contentType(response.contentType())
+                    .contentEncoding(response.contentEncoding())
+                    .lastModified(response.lastModified())
+                    .contentSha256(response.metadata().get(DedupStore.CONTENT_SHA256))
+                    .build());
         } catch (NoSuchKeyException e) {
-            return false;
-        } catch (SdkException e) {
-            throw e;
+            return Optional.empty();
+        }
+    }
+
+    /** Where the object {@code key} names is kept: a user's file, {@code userName/filename}, or dedup content. */
+    private KeyLayout.Location locate(String key) {
+        return dedupStore.isContentKey(key) ? new KeyLayout.Location(dedupStore.getBucket(), key) : layout.locate(key);
+    }
+
+    /** Where the file {@code key} names was kept before the layout changed, or {@code null}. */
+    private KeyLayout.Location legacy(String key) {
+        return dedupStore.isContentKey(key) ? null : layout.legacy(key);
+    }
+
+    /**
+     * Calls S3 for the object {@code key} names where it is kept and, should it not be there while files are
+     * being migrated, where it was kept before.
+     */
+    private <T> T withFallback(String key, Function<KeyLayout.Location, T> call) {
+        try {
+            return call.apply(locate(key));
+        } catch (NoSuchKeyException e) {
+            KeyLayout.Location legacy = legacy(key);
+            if (legacy == null) {
+                throw e;
+            }
+            return call.apply(legacy);
+        }
+    }
+
+    /**
+     * Deletes the file's old copy once it has been written where the layout puts it, so the migrator cannot
+     * later copy the old one over it.
+     */
+    private void removeLegacy(String userName, String filename) {
+        KeyLayout.Location legacy = layout.legacy(userName, filename);
+        if (legacy != null) {
+            delete(legacy);
         }
     }
-    
-    
+
     @Override
     public List<String> listAllFiles(String userName) {
-        String prefix = userName + "/";
+        return metadataCache.listing(userName, user -> listFromS3(user).collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns at most {@code pageSize} keys, capped at the 1000 S3 returns per call, starting after
+     * {@code continuationToken} when one is given. Keys are named {@code userName/filename} whatever the layout.
+     */
+    @Override
+    public FilePage listFiles(String userName, int pageSize, String continuationToken) {
+        int maxKeys = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            ShardedListing.Page page = ShardedListing.join(ShardedListing.page(prefixes, this::listAsync,
+                    ListOptions.builder().pageSize(maxKeys).continuationToken(continuationToken).build()));
+            return FilePage.builder()
+                    .files(page.getFiles().stream()
+                            .map(file -> userName + "/" + file.getName())
+                            .collect(Collectors.toList()))
+                    .nextContinuationToken(page.getNextContinuationToken())
+                    .build();
+        }
+        KeyLayout.Location prefix = prefixes.get(0);
         ListObjectsV2Request request = ListObjectsV2Request.builder()
-                .bucket(bucketName)
-                .prefix(prefix)
+                .bucket(prefix.getBucket())
+                .prefix(prefix.getKey())
+                .maxKeys(maxKeys)
+                .continuationToken(continuationToken)
                 .build();
         ListObjectsV2Response response = s3.listObjectsV2(request);
-        return response.contents().stream()
-                .map(S3Object::key)
-                .collect(Collectors.toList());
+        return FilePage.builder()
+                .files(response.contents().stream()
+                        .map(object -> userName + "/" + S3Listings.name(prefix, object.key()))
+                        .collect(Collectors.toList()))
+                .nextContinuationToken(response.nextContinuationToken())
+                .build();
+    }
+
+    /**
+     * Builds the page from the listing responses alone. Files {@code modifiedSince} filters out don't count
+     * towards the page, so it is topped up from further S3 pages until it is full or the listing ends. A layout
+     * of several prefixes is listed with {@link ShardedListing}.
+     */
+    @Override
+    public FileListing listEntries(String userName, ListOptions options) {
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            ShardedListing.Page page = ShardedListing.join(ShardedListing.page(prefixes, this::listAsync, options));
+            return FileListing.builder()
+                    .files(page.getFiles().stream()
+                            .map(file -> S3Listings.entry(userName, file.getName(), file.getObject(),
+                                    size(file.getPrefix(), file.getObject())))
+                            .collect(Collectors.toList()))
+                    .folders(page.getFolders())
+                    .nextContinuationToken(page.getNextContinuationToken())
+                    .build();
+        }
+        KeyLayout.Location prefix = prefixes.get(0);
+        int pageSize = S3Listings.pageSize(options);
+        List<FileEntity> files = new ArrayList<>();
+        List<String> folders = new ArrayList<>();
+        String continuationToken = options.getContinuationToken();
+        do {
+            ListObjectsV2Response response = s3.listObjectsV2(S3Listings.request(prefix, options,
+                    pageSize - files.size() - folders.size(), continuationToken));
+            for (S3Object object : response.contents()) {
+                if (S3Listings.matches(object, options)) {
+                    files.add(S3Listings.entry(userName, S3Listings.name(prefix, object.key()), object,
+                            size(prefix, object)));
+                }
+            }
+            response.commonPrefixes().forEach(folder -> folders.add(S3Listings.name(prefix, folder.prefix())));
+            continuationToken = response.nextContinuationToken();
+        } while (continuationToken != null && files.size() + folders.size() < pageSize);
+        return FileListing.builder()
+                .files(files)
+                .folders(folders)
+                .nextContinuationToken(continuationToken)
+                .build();
+    }
+
+    /**
+     * The size of the file an object holds. A reference to deduplicated content is an empty object, so only
+     * those need a HEAD, for the size they recorded.
+     */
+    private long size(KeyLayout.Location prefix, S3Object object) {
+        if (object.size() != 0 || !dedupStore.isEnabled()) {
+            return object.size();
+        }
+        try {
+            HeadObjectResponse response = s3.headObject(HeadObjectRequest.builder()
+                    .bucket(prefix.getBucket())
+                    .key(object.key())
+                    .build());
+            return response.metadata().entrySet().stream()
+                    .filter(entry -> entry.getKey().equalsIgnoreCase("Content-Length"))
+                    .map(entry -> Long.parseLong(entry.getValue()))
+                    .findFirst()
+                    .orElse(0L);
+        } catch (NoSuchKeyException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Serves a cached listing when there is one; otherwise lazily walks every page of the user's keys, only
+     * requesting the next page once the stream has consumed the previous one, so memory stays at one page
+     * however many keys there are.
+     */
+    @Override
+    public Stream<String> streamAllFiles(String userName) {
+        List<String> cached = metadataCache.cachedListing(userName);
+        return cached != null ? cached.stream() : listFromS3(userName);
+    }
+
+    /** Names every file the user has, {@code userName/filename}, in order, whatever the layout. */
+    private Stream<String> listFromS3(String userName) {
+        List<KeyLayout.Location> prefixes = layout.prefixes(userName);
+        if (prefixes.size() > 1) {
+            return ShardedListing.stream(prefixes, this::listAsync)
+                    .map(file -> userName + "/" + file.getName());
+        }
+        KeyLayout.Location prefix = prefixes.get(0);
+        return listKeys(prefix).map(key -> userName + "/" + S3Listings.name(prefix, key));
+    }
+
+    private Stream<String> listKeys(KeyLayout.Location prefix) {
+        return s3.listObjectsV2Paginator(listRequest(prefix)).contents().stream()
+                .map(S3Object::key);
+    }
+
+    /**
+     * Lists the keys under {@code prefix} like {@link #listKeys}, adding each reference met on the way to
+     * {@code references} under the name of its file. References are empty objects, so only those need a HEAD.
+     */
+    private Stream<String> listFindingReferences(KeyLayout.Location prefix, Map<String, String> references) {
+        return s3.listObjectsV2Paginator(listRequest(prefix)).contents().stream()
+                .peek(object -> {
+                    if (object.size() == 0) {
+                        headObject(new KeyLayout.Location(prefix.getBucket(), object.key()))
+                                .map(FileMetadata::getContentSha256)
+                                .ifPresent(sha256 -> references.put(S3Listings.name(prefix, object.key()), sha256));
+                    }
+                })
+                .map(S3Object::key);
     }
-    
 
+    private ListObjectsV2Request listRequest(KeyLayout.Location prefix) {
+        return ListObjectsV2Request.builder()
+                .bucket(prefix.getBucket())
+                .prefix(prefix.getKey())
+                .build();
+    }
+
+    /** Sends a listing request on the transfer executor, so the requests for every prefix go out together. */
+    private CompletableFuture<ListObjectsV2Response> listAsync(ListObjectsV2Request request) {
+        return CompletableFuture.supplyAsync(() -> s3.listObjectsV2(request), executor);
+    }
 }
@@ -0,0 +1,60 @@
+package com.example.awsstorage.service;
+
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.ListOptions;
+
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Builds detailed listings from {@code ListObjectsV2} responses, which already carry each object's size,
+ * ETag, modification time and storage class, so no file needs a HEAD of its own.
+ */
+final class S3Listings {
+
+    /** S3 returns at most this many keys and common prefixes per call. */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private S3Listings() {
+    }
+
+    /** The number of files and folders a page holds. */
+    static int pageSize(ListOptions options) {
+        return Math.max(1, Math.min(options.getPageSize() <= 0 ? MAX_PAGE_SIZE : options.getPageSize(),
+                MAX_PAGE_SIZE));
+    }
+
+    /** Requests up to {@code maxKeys} entries under {@code prefix}, one of the user's, and the options' prefix. */
+    static ListObjectsV2Request request(KeyLayout.Location prefix, ListOptions options, int maxKeys,
+            String continuationToken) {
+        return ListObjectsV2Request.builder()
+                .bucket(prefix.getBucket())
+                .prefix(prefix.getKey() + (options.getPrefix() != null ? options.getPrefix() : ""))
+                .delimiter(options.getDelimiter() != null && !options.getDelimiter().isEmpty()
+                        ? options.getDelimiter() : null)
+                .maxKeys(maxKeys)
+                .continuationToken(continuationToken)
+                .build();
+    }
+
+    /** Whether the object passes the filters S3 cannot apply itself. */
+    static boolean matches(S3Object object, ListOptions options) {
+        return options.getModifiedSince() == null || !object.lastModified().isBefore(options.getModifiedSince());
+    }
+
+    static FileEntity entry(String userName, String name, S3Object object, long size) {
+        return FileEntity.builder()
+                .fileName(name)
+                .filePath(userName + "/" + name)
+                .size(size)
+                .eTag(object.eTag())
+                .lastModified(object.lastModified())
+                .storageClass(object.storageClassAsString())
+                .build();
+    }
+
+    /** A key or common prefix listed under {@code prefix}, named within the user's files. */
+    static String name(KeyLayout.Location prefix, String key) {
+        return key.substring(prefix.getKey().length());
+    }
+}
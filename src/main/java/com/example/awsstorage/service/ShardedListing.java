@@ -0,0 +1,259 @@
+package com.example.awsstorage.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.example.awsstorage.entity.ListOptions;
+
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.core.pagination.async.AsyncPageFetcher;
+import software.amazon.awssdk.core.pagination.async.PaginatedItemsPublisher;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Lists a user's files kept under several prefixes, the shards of a {@link KeyLayout}, as one listing in name
+ * order.
+ * <p>
+ * Every prefix is listed at once, each asked for twice its share of the page, and the responses are merged. A
+ * page only takes names up to the last one that every prefix with more to list has reached, so no later
+ * response can hold a name that belongs before them; a page left short by that or by the filters is topped up
+ * by another round. A name listed under more than one prefix is taken from the first. Pages resume after the
+ * last name they took, which each prefix continues from with {@code StartAfter}, since S3's continuation tokens
+ * belong to one prefix each.
+ */
+final class ShardedListing {
+
+    /** A file, named within the user's files, and the prefix it was listed under. */
+    static final class Listed {
+        private final KeyLayout.Location prefix;
+        private final S3Object object;
+        private final String name;
+
+        Listed(KeyLayout.Location prefix, S3Object object, String name) {
+            this.prefix = prefix;
+            this.object = object;
+            this.name = name;
+        }
+
+        KeyLayout.Location getPrefix() {
+            return prefix;
+        }
+
+        S3Object getObject() {
+            return object;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    /** One page of the merged listing; {@code nextContinuationToken} is {@code null} on the last. */
+    static final class Page {
+        private final List<Listed> files;
+        private final List<String> folders;
+        private final String nextContinuationToken;
+
+        Page(List<Listed> files, List<String> folders, String nextContinuationToken) {
+            this.files = files;
+            this.folders = folders;
+            this.nextContinuationToken = nextContinuationToken;
+        }
+
+        List<Listed> getFiles() {
+            return files;
+        }
+
+        List<String> getFolders() {
+            return folders;
+        }
+
+        String getNextContinuationToken() {
+            return nextContinuationToken;
+        }
+    }
+
+    /** Sorts after anything a key can go on with, so resuming after a folder skips all that is in it. */
+    private static final String AFTER_FOLDER = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    /** Orders names as S3 orders keys, by their UTF-8 bytes, which is the order of their code points. */
+    private static final Comparator<String> KEY_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    };
+
+    private ShardedListing() {
+    }
+
+    /**
+     * One page of the files and folders under {@code prefixes} that the options select.
+     *
+     * @param list sends one listing request; the requests for a page are all sent before any is waited for
+     */
+    static CompletableFuture<Page> page(List<KeyLayout.Location> prefixes,
+            Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> list, ListOptions options) {
+        String after = options.getContinuationToken() != null
+                ? new String(Base64.getUrlDecoder().decode(options.getContinuationToken()), StandardCharsets.UTF_8)
+                : null;
+        return page(prefixes, list, options, S3Listings.pageSize(options), new ArrayList<>(), new ArrayList<>(),
+                after);
+    }
+
+    private static CompletableFuture<Page> page(List<KeyLayout.Location> prefixes,
+            Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> list, ListOptions options,
+            int pageSize, List<Listed> files, List<String> folders, String after) {
+        int wanted = pageSize - files.size() - folders.size();
+        int share = Math.min(wanted, wanted / prefixes.size() * 2 + 1);
+        List<CompletableFuture<ListObjectsV2Response>> responses = prefixes.stream()
+                .map(prefix -> list.apply(S3Listings.request(prefix, options, share, null).toBuilder()
+                        .startAfter(after != null ? prefix.getKey() + after : null)
+                        .build()))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).thenCompose(done -> {
+            // Each name maps to the file listed under it, or to itself for a folder.
+            Map<String, Object> entries = new TreeMap<>(KEY_ORDER);
+            String limit = null;
+            for (int i = 0; i < prefixes.size(); i++) {
+                KeyLayout.Location prefix = prefixes.get(i);
+                ListObjectsV2Response response = responses.get(i).join();
+                String last = null;
+                for (S3Object object : response.contents()) {
+                    String name = S3Listings.name(prefix, object.key());
+                    entries.putIfAbsent(name, new Listed(prefix, object, name));
+                    last = later(last, name);
+                }
+                for (CommonPrefix folder : response.commonPrefixes()) {
+                    String name = S3Listings.name(prefix, folder.prefix());
+                    entries.putIfAbsent(name, name);
+                    last = later(last, name + AFTER_FOLDER);
+                }
+                if (Boolean.TRUE.equals(response.isTruncated()) && last != null) {
+                    limit = limit == null || KEY_ORDER.compare(last, limit) < 0 ? last : limit;
+                }
+            }
+            String cursor = after;
+            boolean more = false;
+            for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                boolean folder = entry.getValue() instanceof String;
+                String position = folder ? entry.getKey() + AFTER_FOLDER : entry.getKey();
+                if (limit != null && KEY_ORDER.compare(position, limit) > 0) {
+                    break;
+                }
+                if (files.size() + folders.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+                if (folder) {
+                    folders.add(entry.getKey());
+                } else if (S3Listings.matches(((Listed) entry.getValue()).getObject(), options)) {
+                    files.add((Listed) entry.getValue());
+                }
+                cursor = position;
+            }
+            if (files.size() + folders.size() < pageSize && limit != null) {
+                return page(prefixes, list, options, pageSize, files, folders, limit);
+            }
+            String next = more || limit != null
+                    ? Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8))
+                    : null;
+            return CompletableFuture.completedFuture(new Page(files, folders, next));
+        });
+    }
+
+    /** Every file under {@code prefixes}, a page at a time as the stream is consumed. */
+    static Stream<Listed> stream(List<KeyLayout.Location> prefixes,
+            Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> list) {
+        Iterator<Listed> files = new Iterator<Listed>() {
+            private Iterator<Listed> page = Collections.emptyIterator();
+            private String token;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !last) {
+                    Page next = join(page(prefixes, list, ListOptions.builder().continuationToken(token).build()));
+                    page = next.getFiles().iterator();
+                    token = next.getNextContinuationToken();
+                    last = token == null;
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Listed next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(files, Spliterator.ORDERED), false);
+    }
+
+    /** Every file under {@code prefixes}, each page requested once the subscriber has taken the last. */
+    @SuppressWarnings("unchecked")
+    static SdkPublisher<Listed> publisher(List<KeyLayout.Location> prefixes,
+            Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> list) {
+        AsyncPageFetcher<Page> pages = new AsyncPageFetcher<Page>() {
+            @Override
+            public boolean hasNextPage(Page previous) {
+                return previous.getNextContinuationToken() != null;
+            }
+
+            @Override
+            public CompletableFuture<Page> nextPage(Page previous) {
+                return page(prefixes, list, ListOptions.builder()
+                        .continuationToken(previous != null ? previous.getNextContinuationToken() : null)
+                        .build());
+            }
+        };
+        return PaginatedItemsPublisher.builder()
+                .nextPageFetcher(pages)
+                .iteratorFunction(page -> ((Page) page).getFiles().iterator())
+                .isLastPage(false)
+                .build();
+    }
+
+    private static String later(String a, String b) {
+        return a == null || KEY_ORDER.compare(b, a) > 0 ? b : a;
+    }
+
+    /** Waits for a page, throwing what fetching it failed with. */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = S3Errors.unwrap(e);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+}
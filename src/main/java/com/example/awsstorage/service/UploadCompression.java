@@ -0,0 +1,72 @@
+package com.example.awsstorage.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which uploads are stored compressed, enabled with {@code compression.enabled}.
+ * <p>
+ * An upload of at least {@code compression.minBytes} is compressed with {@code compression.codec} (gzip or
+ * zstd) when its content type is one of {@code compression.types} or its file name ends in one of
+ * {@code compression.extensions}: the text, JSON and log files that shrink several times over. Compressed
+ * objects are stored with the codec as their {@code Content-Encoding}, which is how downloads recognise them.
+ */
+@Component
+public class UploadCompression {
+
+    private final boolean enabled;
+    private final ContentCodec codec;
+    private final long minBytes;
+    private final List<MediaType> types;
+    private final Set<String> extensions;
+
+    public UploadCompression(@Value("${compression.enabled:false}") boolean enabled,
+            @Value("${compression.codec:gzip}") String codec,
+            @Value("${compression.minBytes:1024}") long minBytes,
+            @Value("${compression.types:text/*,application/json,application/x-ndjson,application/xml,application/javascript}") List<String> types,
+            @Value("${compression.extensions:txt,log,csv,json,ndjson,xml}") Set<String> extensions) {
+        this.enabled = enabled;
+        this.codec = ContentCodec.of(codec);
+        if (this.codec == null) {
+            throw new IllegalArgumentException("Unknown compression.codec: " + codec);
+        }
+        this.minBytes = minBytes;
+        this.types = types.stream().map(MediaType::parseMediaType).collect(Collectors.toList());
+        this.extensions = extensions.stream()
+                .map(extension -> extension.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    public ContentCodec codec() {
+        return codec;
+    }
+
+    /** Whether an upload with this name, content type and size is stored compressed. */
+    public boolean accepts(String filename, String contentType, long size) {
+        if (!enabled || size < minBytes) {
+            return false;
+        }
+        if (filename != null) {
+            int dot = filename.lastIndexOf('.');
+            if (dot >= 0 && extensions.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType type = MediaType.parseMediaType(contentType);
+            return types.stream().anyMatch(accepted -> accepted.includes(type));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.entity.UploadSession;
+import com.example.awsstorage.exception.UploadNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Keeps resumable upload sessions in {@code upload.sessions.directory}, one JSON file each, so an upload can
+ * be resumed after this service restarts.
+ * <p>
+ * Every change is written to a temporary file and renamed over the session's file, so a crash leaves either
+ * the old state or the new one. Sessions are read once at startup and served from memory afterwards; changes to
+ * one session are applied one at a time.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+public class UploadSessionStore {
+
+    private static final String SUFFIX = ".json";
+    private static final String PART_SUFFIX = ".part";
+
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ConcurrentMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessionStore(
+            @Value("${upload.sessions.directory:${java.io.tmpdir}/awsstorage-uploads}") String directory)
+            throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath();
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(PART_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    UploadSession session = mapper.readValue(file.toFile(), UploadSession.class);
+                    sessions.put(session.getId(), session);
+                }
+            }
+        }
+    }
+
+    public Optional<UploadSession> find(String id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    public List<UploadSession> all() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /** Saves a new session. */
+    public void create(UploadSession session) {
+        sessions.compute(session.getId(), (id, existing) -> {
+            if (existing != null) {
+                throw new IllegalStateException("Upload already exists: " + id);
+            }
+            write(session);
+            return session;
+        });
+    }
+
+    /**
+     * Applies {@code change} to the session and saves the result, unless another change to the same session is
+     * being applied, in which case it waits for that one.
+     *
+     * @throws UploadNotFoundException if there is no such session
+     */
+    public UploadSession update(String id, UnaryOperator<UploadSession> change) {
+        UploadSession updated = sessions.computeIfPresent(id, (key, session) -> {
+            UploadSession next = change.apply(session);
+            write(next);
+            return next;
+        });
+        if (updated == null) {
+            throw new UploadNotFoundException(id);
+        }
+        return updated;
+    }
+
+    /** Forgets the session; returns whether it existed. */
+    public boolean delete(String id) {
+        boolean[] existed = new boolean[1];
+        sessions.computeIfPresent(id, (key, session) -> {
+            try {
+                Files.deleteIfExists(file(id));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            existed[0] = true;
+            return null;
+        });
+        return existed[0];
+    }
+
+    private void write(UploadSession session) {
+        Path target = file(session.getId());
+        Path part = directory.resolve(UUID.randomUUID() + PART_SUFFIX);
+        try {
+            try {
+                mapper.writeValue(part.toFile(), session);
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(part);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path file(String id) {
+        if (!id.matches("[0-9a-f-]{36}")) {
+            throw new UploadNotFoundException(id);
+        }
+        return directory.resolve(id + SUFFIX);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.awsstorage.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+
+/**
+ * Writes many of a user's files into one zip archive as it is sent, for downloading a folder in one request.
+ * <p>
+ * While one file is being written, the next {@code bundle.prefetch} are opened on the transfer executor and
+ * their first {@code bundle.prefetchBytes} read ahead, so the archive does not stall on each object's
+ * time to first byte; a file that fits is read whole and its connection released at once. Memory stays at
+ * roughly {@code (prefetch + 1) * prefetchBytes} however many files there are and however large they are. A
+ * file that disappears before its turn is left out.
+ */
+@Component
+public class ZipBundler {
+
+    private final IFileService fileService;
+    private final Executor executor;
+    private final int prefetch;
+    private final int prefetchBytes;
+    private final int bufferSize;
+
+    public ZipBundler(IFileService fileService, @Qualifier("transferExecutor") Executor executor,
+            @Value("${bundle.prefetch:4}") int prefetch,
+            @Value("${bundle.prefetchBytes:1048576}") int prefetchBytes,
+            @Value("${download.bufferSize:65536}") int bufferSize) {
+        this.fileService = fileService;
+        this.executor = executor;
+        this.prefetch = Math.max(prefetch, 0);
+        this.prefetchBytes = Math.max(prefetchBytes, 0);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Names every file of the user's under {@code prefix}, in listing order, fetching one page of the listing
+     * at a time as the names are consumed.
+     */
+    public Iterator<String> filesUnder(String userName, String prefix) {
+        return new Iterator<String>() {
+            private Iterator<FileEntity> page = Collections.emptyIterator();
+            private String token;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !last) {
+                    FileListing listing = fileService.listEntries(userName, ListOptions.builder()
+                            .prefix(prefix)
+                            .continuationToken(token)
+                            .build());
+                    page = listing.getFiles().iterator();
+                    token = listing.getNextContinuationToken();
+                    last = token == null;
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next().getFileName();
+            }
+        };
+    }
+
+    /**
+     * Writes the named files to {@code out} as a zip archive, each under its name.
+     *
+     * @param deflate whether to compress the entries; otherwise they are stored as they are
+     */
+    public void write(String userName, Iterator<String> filenames, boolean deflate, OutputStream out)
+            throws IOException {
+        BundleOutputStream zip = new BundleOutputStream(out);
+        // Entries of unknown CRC can only be written deflated; level 0 wraps them in uncompressed blocks.
+        zip.setLevel(deflate ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+        Deque<CompletableFuture<Prefetched>> window = new ArrayDeque<>();
+        byte[] buffer = new byte[bufferSize];
+        try {
+            fill(window, userName, filenames);
+            while (!window.isEmpty()) {
+                Prefetched file = join(window.poll());
+                fill(window, userName, filenames);
+                if (file == null) {
+                    continue;
+                }
+                try (FileDownload download = file.download) {
+                    ZipEntry entry = new ZipEntry(file.filename);
+                    if (download.getLastModified() != null) {
+                        entry.setLastModifiedTime(FileTime.from(download.getLastModified()));
+                    }
+                    zip.putNextEntry(entry);
+                    zip.write(file.head, 0, file.headLength);
+                    if (!file.complete) {
+                        int read;
+                        while ((read = download.getContent().read(buffer)) != -1) {
+                            zip.write(buffer, 0, read);
+                        }
+                    }
+                    zip.closeEntry();
+                }
+            }
+            zip.finish();
+        } finally {
+            zip.release();
+            for (CompletableFuture<Prefetched> pending : window) {
+                pending.thenAccept(file -> {
+                    if (file != null) {
+                        closeQuietly(file.download);
+                    }
+                });
+            }
+        }
+    }
+
+    private void fill(Deque<CompletableFuture<Prefetched>> window, String userName, Iterator<String> filenames) {
+        // The file being written counts towards the window when nothing is prefetched.
+        while (window.size() < Math.max(prefetch, 1) && filenames.hasNext()) {
+            String filename = filenames.next();
+            window.add(CompletableFuture.supplyAsync(() -> open(userName, filename),
+                    prefetch == 0 ? Runnable::run : executor));
+        }
+    }
+
+    /** Opens the file and reads the start of it; {@code null} if it is gone. */
+    private Prefetched open(String userName, String filename) {
+        FileDownload download;
+        try {
+            download = fileService.streamFile(userName, filename);
+        } catch (StoredFileNotFoundException e) {
+            return null;
+        }
+        try {
+            Long length = download.getContentLength();
+            byte[] head = new byte[(int) Math.min(prefetchBytes, length != null ? length : prefetchBytes)];
+            int read = download.getContent().readNBytes(head, 0, head.length);
+            boolean complete = read < head.length || (length != null && read == length);
+            if (complete) {
+                // Read whole: give its connection back rather than holding it until its turn.
+                closeQuietly(download);
+            }
+            return new Prefetched(filename, download, head, read, complete);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(download);
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Prefetched join(CompletableFuture<Prefetched> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            // Nothing left to read from it.
+        }
+    }
+
+    private static final class Prefetched {
+        private final String filename;
+        private final FileDownload download;
+        private final byte[] head;
+        private final int headLength;
+        /** Whether {@code head} is the whole file and the download already closed. */
+        private final boolean complete;
+
+        Prefetched(String filename, FileDownload download, byte[] head, int headLength, boolean complete) {
+            this.filename = filename;
+            this.download = download;
+            this.head = head;
+            this.headLength = headLength;
+            this.complete = complete;
+        }
+    }
+
+    /** Leaves the response stream open when done, but frees the deflater's native memory. */
+    private static final class BundleOutputStream extends ZipOutputStream {
+
+        BundleOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void release() {
+            def.end();
+        }
+    }
+}
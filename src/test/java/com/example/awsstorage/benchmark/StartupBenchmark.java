@@ -0,0 +1,192 @@
+package com.example.awsstorage.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Startup benchmark measuring, for each way of starting the service, the time from launching a fresh JVM to
+ * the first response of any kind and to the first successful download. S3 is a stub on the loopback interface
+ * that answers every request at once, so the numbers are the service's own startup and first-request costs.
+ * <p>
+ * The service runs from the fast-start layout, so every mode loads the same classes from the same jars. Run with
+ * {@code ./gradlew benchmark}, which lays it out first; the class data sharing run needs Java 13 or later.
+ */
+@Tag("benchmark")
+class StartupBenchmark {
+
+    private static final int RUNS = 5;
+    private static final long TIMEOUT_SECONDS = 120;
+    private static final byte[] BODY = new byte[4 * 1024];
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void compareStartupModes() throws Exception {
+        String jar = System.getProperty("fastStart.jar");
+        assumeTrue(jar != null && Files.exists(Path.of(jar)), "needs the fast-start layout: ./gradlew benchmark");
+        HttpServer s3 = stubS3();
+        try {
+            String endpoint = "http://127.0.0.1:" + s3.getAddress().getPort();
+            Path archive = workDir.resolve("app.jsa");
+            List<String> report = new ArrayList<>();
+            report.add(measure("eager", jar, endpoint, Collections.emptyList()));
+            report.add(measure("lazy", jar, endpoint, Collections.emptyList(), "--s3.lazyInit=true"));
+            report.add(measure("lazy + prewarm", jar, endpoint, Collections.emptyList(), "--s3.lazyInit=true",
+                    "--s3.prewarmConnections=4"));
+            if (Runtime.version().feature() >= 13) {
+                train(jar, endpoint, archive);
+                report.add(measure("lazy + prewarm + CDS", jar, endpoint,
+                        Collections.singletonList("-XX:SharedArchiveFile=" + archive), "--s3.lazyInit=true",
+                        "--s3.prewarmConnections=4"));
+            } else {
+                report.add("lazy + prewarm + CDS: skipped, needs Java 13 (running "
+                        + System.getProperty("java.version") + ")");
+            }
+            System.out.printf("%nTime to first response and first successful download, median of %d starts%n",
+                    RUNS);
+            report.forEach(System.out::println);
+        } finally {
+            s3.stop(0);
+        }
+    }
+
+    /**
+     * Records the class data sharing archive with a training run, as the fast-start image does: with eager
+     * clients, so the SDK classes the measured lazy runs load on their first request are archived.
+     */
+    private void train(String jar, String endpoint, Path archive) throws Exception {
+        List<String> command = command(jar, endpoint,
+                Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive), "--startup.exitWhenReady=true",
+                "--server.port=0");
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve("training.log").toFile())
+                .start();
+        assertEquals(true, process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS), "training run timed out");
+        assertEquals(0, process.exitValue(), "training run failed, see " + workDir.resolve("training.log"));
+    }
+
+    private String measure(String mode, String jar, String endpoint, List<String> jvmArgs, String... args)
+            throws Exception {
+        List<Long> firstResponse = new ArrayList<>();
+        List<Long> firstDownload = new ArrayList<>();
+        for (int run = 0; run < RUNS; run++) {
+            long[] times = start(jar, endpoint, jvmArgs, args);
+            firstResponse.add(times[0]);
+            firstDownload.add(times[1]);
+        }
+        Collections.sort(firstResponse);
+        Collections.sort(firstDownload);
+        return String.format("%-22s first response %6d ms   first download %6d ms", mode + ":",
+                firstResponse.get(RUNS / 2), firstDownload.get(RUNS / 2));
+    }
+
+    /** Starts the service and polls a download until it succeeds, returning both times in milliseconds. */
+    private long[] start(String jar, String endpoint, List<String> jvmArgs, String... args) throws Exception {
+        int port = freePort();
+        List<String> command = command(jar, endpoint, jvmArgs, args);
+        command.add("--server.port=" + port);
+        URI uri = URI.create("http://localhost:" + port + "/download/bench-user/object.bin");
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            long firstResponse = -1;
+            while (true) {
+                try {
+                    HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri).build(),
+                            HttpResponse.BodyHandlers.ofByteArray());
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                    if (firstResponse < 0) {
+                        firstResponse = elapsed;
+                    }
+                    if (response.statusCode() == 200 && Arrays.equals(BODY, response.body())) {
+                        return new long[] {firstResponse, elapsed};
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet.
+                }
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Service exited with " + process.exitValue());
+                }
+                if (System.nanoTime() - started > TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS)) {
+                    throw new IllegalStateException("No successful download within " + TIMEOUT_SECONDS + " s");
+                }
+                Thread.sleep(5);
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private List<String> command(String jar, String endpoint, List<String> jvmArgs, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar);
+        command.add("--s3.endpoint=" + endpoint);
+        command.add("--s3.pathStyleAccess=true");
+        command.add("--upload.sessions.directory=" + workDir.resolve("uploads"));
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /** Answers every request at once: GETs with {@link #BODY}, anything else with its headers alone. */
+    private static HttpServer stubS3() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("ETag", "\"stub\"");
+            if ("GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, BODY.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(BODY);
+                }
+            } else {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(BODY.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+}
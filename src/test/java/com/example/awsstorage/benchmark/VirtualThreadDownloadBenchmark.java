@@ -0,0 +1,141 @@
+package com.example.awsstorage.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import com.example.awsstorage.AwsstorageApplication;
+import com.example.awsstorage.config.VirtualThreads;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Load benchmark comparing platform-thread and virtual-thread request handling on concurrent small-object
+ * downloads. S3 is replaced by a stub that answers every GET after a fixed latency, so the numbers show how
+ * many requests each mode can keep waiting on S3 at once rather than network noise.
+ * <p>
+ * Run with {@code ./gradlew benchmark}; the virtual-thread run is skipped on JVMs older than Java 21.
+ */
+@Tag("benchmark")
+class VirtualThreadDownloadBenchmark {
+
+    private static final int REQUESTS = 5000;
+    private static final int CONCURRENCY = 1000;
+    private static final long S3_LATENCY_MILLIS = 50;
+    private static final byte[] BODY = new byte[4 * 1024];
+
+    @Test
+    void compareThreadModes() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(run(false));
+        if (VirtualThreads.isSupported()) {
+            report.add(run(true));
+        } else {
+            report.add("virtual: skipped, needs Java 21 (running " + System.getProperty("java.version") + ")");
+        }
+        System.out.printf("%n%d downloads of %d bytes, %d concurrent clients, %d ms simulated S3 latency%n",
+                REQUESTS, BODY.length, CONCURRENCY, S3_LATENCY_MILLIS);
+        report.forEach(System.out::println);
+    }
+
+    private String run(boolean virtualThreads) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(AwsstorageApplication.class, StubS3.class)
+                .properties("server.port=0", "threads.virtual.enabled=" + virtualThreads)
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI uri = URI.create("http://localhost:" + port + "/download/bench-user/object.bin");
+            HttpClient client = HttpClient.newHttpClient();
+            load(client, uri, CONCURRENCY);
+            long start = System.nanoTime();
+            List<Long> latencies = load(client, uri, REQUESTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Collections.sort(latencies);
+            return String.format("%-8s %8.0f req/s   p50 %5d ms   p99 %5d ms   max %5d ms",
+                    virtualThreads ? "virtual:" : "platform:", REQUESTS / seconds,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), latencies.get(latencies.size() - 1));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static List<Long> load(HttpClient client, URI uri, int requests) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            futures.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, e) -> {
+                        inFlight.release();
+                        if (e != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        latencies.add((System.nanoTime() - sent) / 1_000_000);
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        assertEquals(0, failures.get(), "failed downloads");
+        return latencies;
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+    }
+
+    /** Replaces the real client with one whose GETs take {@link #S3_LATENCY_MILLIS} and return {@link #BODY}. */
+    static class StubS3 {
+
+        @Bean
+        @Primary
+        S3Client stubS3() {
+            return new S3Client() {
+                @Override
+                public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+                    try {
+                        Thread.sleep(S3_LATENCY_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    GetObjectResponse response = GetObjectResponse.builder()
+                            .contentLength((long) BODY.length)
+                            .build();
+                    return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(BODY)));
+                }
+
+                @Override
+                public String serviceName() {
+                    return SERVICE_NAME;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.awsstorage.controllertest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.example.awsstorage.controller.AdmissionFilter;
+import com.example.awsstorage.service.AdmissionControl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionFilterTest {
+
+    private SimpleMeterRegistry registry;
+    private AdmissionFilter admissionFilter;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        AdmissionControl admission = new AdmissionControl(true, 1, 1, 0, 0, 2, 0, 1024, 100, true, registry);
+        admissionFilter = new AdmissionFilter(admission, Arrays.asList("/upload/**", "/bundle/**"));
+    }
+
+    @Test
+    void preHandle_Answers429WithRetryAfter_WhenTheUserIsAtTheLimit() throws Exception {
+        // Arrange
+        assertTrue(admissionFilter.preHandle(request("alice"), new MockHttpServletResponse(), null));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        boolean proceed = admissionFilter.preHandle(request("alice"), response, null);
+
+        // Assert
+        assertFalse(proceed);
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void preHandle_ReadsTheUserFromTheQueryString() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload");
+        request.setQueryString("userName=b%C3%B6b");
+
+        // Act
+        admissionFilter.preHandle(request, new MockHttpServletResponse(), null);
+
+        // Assert
+        assertEquals(1.0, registry.get("admission.active").tag("user", "böb").gauge().value());
+    }
+
+    @Test
+    void preHandle_ReadsTheUserFromTheFormField_WhenTheHandlerTakesIt() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload");
+        request.setContentType("multipart/form-data; boundary=x");
+        request.addParameter("userName", "carol");
+        HandlerMethod handler = new HandlerMethod(new Uploads(), Uploads.class.getMethod("upload", String.class));
+
+        // Act
+        admissionFilter.preHandle(request, new MockHttpServletResponse(), handler);
+
+        // Assert
+        assertEquals(1.0, registry.get("admission.active").tag("user", "carol").gauge().value());
+    }
+
+    @Test
+    void doFilter_ReleasesTheSlotWhenTheRequestCompletes() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = request("alice");
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res) throws IOException {
+                admissionFilter.preHandle(req, res, null);
+            }
+        });
+
+        // Act
+        admissionFilter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        // Assert
+        assertEquals(0.0, registry.get("admission.active").tag("user", "alice").gauge().value());
+        assertTrue(admissionFilter.preHandle(request("alice"), new MockHttpServletResponse(), null));
+    }
+
+    static class Uploads {
+        public String upload(@RequestParam("userName") String userName) {
+            return userName;
+        }
+    }
+
+    private static MockHttpServletRequest request(String userName) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/list/" + userName);
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE,
+                Collections.singletonMap("userName", userName));
+        return request;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.awsstorage.controllertest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.example.awsstorage.controller.AsyncFileController;
+import com.example.awsstorage.entity.AsyncFileDownload;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.IAsyncFileService;
+
+class AsyncFileControllerTest {
+
+    @Mock
+    private IAsyncFileService fileService;
+
+    private AsyncFileController fileController;
+    private MockHttpServletRequest request;
+    private NonBlockingResponse response;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        fileController = new AsyncFileController(fileService);
+        request = new MockHttpServletRequest("GET", "/download/test-user/test.txt");
+        request.setAsyncSupported(true);
+        response = new NonBlockingResponse();
+    }
+
+    @Test
+    void download_WritesPublishedBuffersAndCompletes() throws IOException {
+        // Arrange
+        AsyncFileDownload download = AsyncFileDownload.builder()
+                .body(publisherOf("test ", "content"))
+                .contentLength(12L)
+                .eTag("\"abc123\"")
+                .build();
+        when(fileService.streamFile(eq("test-user"), eq("test.txt"), any(DownloadOptions.class)))
+                .thenReturn(CompletableFuture.completedFuture(download));
+
+        // Act
+        fileController.download("test-user", "test.txt", new HttpHeaders(), request, response);
+
+        // Assert
+        assertEquals(200, response.getStatus());
+        assertEquals("\"abc123\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals("attachment; filename=test.txt", response.getHeader("Content-Disposition"));
+        assertEquals("test content", response.body.toString());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void download_ReturnsNotFound_WhenFileDoesNotExist() throws IOException {
+        // Arrange
+        CompletableFuture<AsyncFileDownload> missing = new CompletableFuture<>();
+        missing.completeExceptionally(new StoredFileNotFoundException("test-user/test.txt", null));
+        when(fileService.streamFile(eq("test-user"), eq("test.txt"), any(DownloadOptions.class))).thenReturn(missing);
+
+        // Act
+        fileController.download("test-user", "test.txt", new HttpHeaders(), request, response);
+
+        // Assert
+        assertEquals(404, response.getStatus());
+        assertEquals("File not found", response.body.toString());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void download_CompletesWithServerError_WhenStartingTheBodyFails() throws IOException {
+        // Arrange
+        AsyncFileDownload download = AsyncFileDownload.builder()
+                .body(subscriber -> {
+                    throw new IllegalStateException("Publisher already subscribed");
+                })
+                .contentLength(12L)
+                .build();
+        when(fileService.streamFile(eq("test-user"), eq("test.txt"), any(DownloadOptions.class)))
+                .thenReturn(CompletableFuture.completedFuture(download));
+
+        // Act
+        fileController.download("test-user", "test.txt", new HttpHeaders(), request, response);
+
+        // Assert
+        assertEquals(500, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void download_CompletesWithServerError_WhenStorageFails() throws IOException {
+        // Arrange
+        CompletableFuture<AsyncFileDownload> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("Access Denied"));
+        when(fileService.streamFile(eq("test-user"), eq("test.txt"), any(DownloadOptions.class))).thenReturn(failed);
+
+        // Act
+        fileController.download("test-user", "test.txt", new HttpHeaders(), request, response);
+
+        // Assert
+        assertEquals(500, response.getStatus());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void deleteFile_ReturnsNotFound_WhenFileDoesNotExist() {
+        // Arrange
+        when(fileService.deleteFile("test-user", "test.txt")).thenReturn(CompletableFuture.completedFuture(false));
+
+        // Act
+        ResponseEntity<String> result = fileController.deleteFile("test-user", "test.txt").join();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+        assertEquals("File or user not found", result.getBody());
+    }
+
+    @Test
+    void getAllFiles_ReturnsListOfFiles() {
+        // Arrange
+        List<String> files = Arrays.asList("file1.txt", "file2.txt");
+        when(fileService.listAllFiles("test-user")).thenReturn(CompletableFuture.completedFuture(files));
+
+        // Act
+        ResponseEntity<List<String>> result = fileController.getAllFiles("test-user").join();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(files, result.getBody());
+        verify(fileService).listAllFiles("test-user");
+    }
+
+    @Test
+    void getAllFiles_ReturnsNotFound_WhenNoFilesFound() {
+        // Arrange
+        when(fileService.listAllFiles("test-user"))
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+        // Act
+        ResponseEntity<List<String>> result = fileController.getAllFiles("test-user").join();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+    }
+
+    private static Publisher<ByteBuffer> publisherOf(String... chunks) {
+        return subscriber -> {
+            Iterator<String> remaining = Arrays.asList(chunks).iterator();
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n; i++) {
+                        if (!remaining.hasNext()) {
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(ByteBuffer.wrap(remaining.next().getBytes()));
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        };
+    }
+
+    /** Response whose output stream always reports itself ready, as a fast client would. */
+    private static class NonBlockingResponse extends MockHttpServletResponse {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return out;
+        }
+    }
+}
@@ -1,28 +1,65 @@
 package com.example.awsstorage.controllertest;
 
 import com.example.awsstorage.controller.FileController;
-import com.example.awsstorage.service.S3FileService;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.IFileService;
+import com.example.awsstorage.service.ZipBundler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 class FileControllerTest {
 
     @Mock
-    private S3FileService s3Service;
+    private IFileService fileService;
 
     private FileController fileController;
 
@@ -30,7 +67,7 @@ class FileControllerTest {
     void setup() {
         MockitoAnnotations.openMocks(this);
         fileController = new FileController();
-        fileController.setS3Service(s3Service); 
+        fileController.setFileService(fileService); 
     }
 
     @Test
@@ -38,33 +75,210 @@ class FileControllerTest {
         // Arrange
         MultipartFile file = new MockMultipartFile("file", "test.txt", MediaType.TEXT_PLAIN_VALUE, "test content".getBytes());
         String userName = "test-user";
-        when(s3Service.saveFile(file, userName)).thenReturn("File uploaded");
+        when(fileService.saveFile(file, userName)).thenReturn("File uploaded");
 
         // Act
         String result = fileController.upload(file, userName);
 
         // Assert
         assertEquals("File uploaded", result);
-        verify(s3Service).saveFile(file, userName);
+        verify(fileService).saveFile(file, userName);
     }
 
     @Test
-    void download_ReturnsFileBytes_WhenFileExists() {
+    void uploadStream_HandsTheFilePartToTheServiceAsItArrives() {
+        // Arrange
+        String body = "--b\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nskipped\r\n"
+                + "--b\r\nContent-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\ntest content\r\n--b--\r\n";
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        when(fileService.saveFile(eq("test-user"), eq("test.txt"), eq("text/plain"), any())).thenAnswer(invocation -> {
+            invocation.getArgument(3, InputStream.class).transferTo(received);
+            return "File uploaded";
+        });
+
+        // Act
+        ResponseEntity<String> response = fileController.uploadStream("test-user", "multipart/form-data; boundary=b",
+                new ByteArrayInputStream(body.getBytes()));
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("test content", received.toString());
+    }
+
+    @Test
+    void uploadStream_ReturnsBadRequest_WhenThereIsNoFilePart() {
+        // Arrange
+        String body = "--b\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nhello\r\n--b--\r\n";
+
+        // Act
+        ResponseEntity<String> response = fileController.uploadStream("test-user", "multipart/form-data; boundary=b",
+                new ByteArrayInputStream(body.getBytes()));
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(fileService);
+    }
+
+    @Test
+    void downloadBundle_StreamsAZipOfTheNamedFiles() throws IOException {
+        // Arrange
+        ZipBundler zipBundler = mock(ZipBundler.class);
+        fileController.setZipBundler(zipBundler);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadBundle("test-user", null,
+                Arrays.asList("a.txt", "b.txt"), "store");
+        response.getBody().writeTo(new ByteArrayOutputStream());
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("application/zip", response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        verify(zipBundler).write(eq("test-user"), any(), eq(false), any());
+        verify(zipBundler, never()).filesUnder(any(), any());
+    }
+
+    @Test
+    void downloadBundle_BundlesARepeatedNameOnce() throws IOException {
+        // Arrange
+        ZipBundler zipBundler = mock(ZipBundler.class);
+        fileController.setZipBundler(zipBundler);
+        List<String> bundled = new ArrayList<>();
+        doAnswer(invocation -> {
+            Iterator<String> names = invocation.getArgument(1);
+            names.forEachRemaining(bundled::add);
+            return null;
+        }).when(zipBundler).write(eq("test-user"), any(), eq(true), any());
+
+        // Act
+        fileController.downloadBundle("test-user", Arrays.asList("a.txt", "b.txt", "a.txt"), "deflate")
+                .getBody().writeTo(new ByteArrayOutputStream());
+
+        // Assert
+        assertEquals(Arrays.asList("a.txt", "b.txt"), bundled);
+    }
+
+    @Test
+    void downloadBundle_RejectsAnUnknownCompression() {
+        // Act
+        ResponseEntity<StreamingResponseBody> response = fileController.downloadBundle("test-user",
+                Arrays.asList("a.txt"), "brotli");
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void download_StreamsFileBytes_WhenFileExists() throws IOException {
         // Arrange
         String userName = "test-user";
         String filename = "test.txt";
         byte[] fileBytes = "test content".getBytes();
-        when(s3Service.downloadFile(userName, filename)).thenReturn(fileBytes);
+        FileDownload download = FileDownload.builder()
+                .content(new ByteArrayInputStream(fileBytes))
+                .contentLength((long) fileBytes.length)
+                .eTag("\"abc123\"")
+                .build();
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenReturn(download);
 
         // Act
-        ResponseEntity<?> response = fileController.download(userName, filename);
+        ResponseEntity<?> response = fileController.download(userName, filename, new HttpHeaders());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(MediaType.ALL_VALUE, response.getHeaders().getContentType().toString());
+        assertEquals(MediaType.TEXT_PLAIN_VALUE, response.getHeaders().getContentType().toString());
         assertEquals("attachment; filename=test.txt", response.getHeaders().get("Content-Disposition").get(0));
-        assertEquals(fileBytes, response.getBody());
-        verify(s3Service).downloadFile(userName, filename);
+        assertEquals(fileBytes.length, response.getHeaders().getContentLength());
+        assertEquals("\"abc123\"", response.getHeaders().getETag());
+        assertArrayEquals(fileBytes, out.toByteArray());
+        verify(fileService).streamFile(eq(userName), eq(filename), any(DownloadOptions.class));
+    }
+
+    @Test
+    void download_WritesFileBytesToResponse_ThroughSpringMvc() throws Exception {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        byte[] fileBytes = "test content".getBytes();
+        FileDownload download = FileDownload.builder()
+                .content(new ByteArrayInputStream(fileBytes))
+                .contentLength((long) fileBytes.length)
+                .build();
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenReturn(download);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+
+        // Act
+        MvcResult started = mockMvc.perform(get("/download/{userName}/{filename}", userName, filename))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started)).andReturn();
+
+        // Assert
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals(fileBytes.length, result.getResponse().getContentLength());
+        assertArrayEquals(fileBytes, result.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    void download_ReturnsFileNotFound_ThroughSpringMvc() throws Exception {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenThrow(new StoredFileNotFoundException(userName + "/" + filename, null));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/download/{userName}/{filename}", userName, filename)).andReturn();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
+        assertEquals("File not found", result.getResponse().getContentAsString());
+    }
+
+    @Test
+    void download_UsesStoredContentType_WhenPresent() {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        FileDownload download = FileDownload.builder()
+                .content(new ByteArrayInputStream(new byte[0]))
+                .contentType(MediaType.TEXT_PLAIN_VALUE)
+                .build();
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenReturn(download);
+
+        // Act
+        ResponseEntity<?> response = fileController.download(userName, filename, new HttpHeaders());
+
+        // Assert
+        assertEquals(MediaType.TEXT_PLAIN, response.getHeaders().getContentType());
+    }
+
+    @Test
+    void download_ForwardsAcceptEncodingAndLabelsACompressedBody() {
+        // Arrange
+        String userName = "test-user";
+        String filename = "server.log";
+        FileDownload download = FileDownload.builder()
+                .content(new ByteArrayInputStream(new byte[0]))
+                .contentEncoding("gzip")
+                .build();
+        ArgumentCaptor<DownloadOptions> options = ArgumentCaptor.forClass(DownloadOptions.class);
+        when(fileService.streamFile(eq(userName), eq(filename), options.capture())).thenReturn(download);
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.add(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        requestHeaders.setIfNoneMatch("W/\"abc123\"");
+
+        // Act
+        ResponseEntity<?> response = fileController.download(userName, filename, requestHeaders);
+
+        // Assert
+        assertEquals("gzip, deflate", options.getValue().getAcceptEncoding());
+        assertEquals("\"abc123\"", options.getValue().getIfNoneMatch());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+        assertEquals(MediaType.TEXT_PLAIN, response.getHeaders().getContentType());
     }
 
     @Test
@@ -72,15 +286,124 @@ class FileControllerTest {
         // Arrange
         String userName = "test-user";
         String filename = "test.txt";
-        when(s3Service.downloadFile(userName, filename)).thenThrow(new RuntimeException());
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenThrow(new StoredFileNotFoundException(userName + "/" + filename, null));
 
         // Act
-        ResponseEntity<?> response = fileController.download(userName, filename);
+        StoredFileNotFoundException e = assertThrows(StoredFileNotFoundException.class,
+                () -> fileController.download(userName, filename, new HttpHeaders()));
+        ResponseEntity<?> response = fileController.fileNotFound(e);
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals("File not found", response.getBody());
-        verify(s3Service).downloadFile(userName, filename);
+        verify(fileService).streamFile(eq(userName), eq(filename), any(DownloadOptions.class));
+    }
+
+    @Test
+    void download_PropagatesStorageFailures_OtherThanMissingFile() {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        RuntimeException failure = new RuntimeException("Access Denied");
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenThrow(failure);
+
+        // Act
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> fileController.download(userName, filename, new HttpHeaders()));
+
+        // Assert
+        assertEquals(failure, e);
+    }
+
+    @Test
+    void download_ReturnsPartialContent_ForSingleRange() throws IOException {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        FileDownload download = FileDownload.builder()
+                .content(new ByteArrayInputStream("test".getBytes()))
+                .contentLength(4L)
+                .contentRange("bytes 0-3/12")
+                .build();
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenReturn(download);
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-3");
+
+        // Act
+        ResponseEntity<?> response = fileController.download(userName, filename, requestHeaders);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+
+        // Assert
+        ArgumentCaptor<DownloadOptions> options = ArgumentCaptor.forClass(DownloadOptions.class);
+        verify(fileService).streamFile(eq(userName), eq(filename), options.capture());
+        assertEquals("bytes=0-3", options.getValue().getRange());
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 0-3/12", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getHeaders().getContentLength());
+        assertEquals("test", out.toString());
+    }
+
+    @Test
+    void download_ReturnsMultipartByteranges_ForMultipleRanges() throws IOException {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class)))
+                .thenReturn(FileDownload.builder()
+                        .content(new ByteArrayInputStream("test".getBytes()))
+                        .eTag("\"abc123\"")
+                        .contentType(MediaType.TEXT_PLAIN_VALUE)
+                        .contentRange("bytes 0-3/12")
+                        .build())
+                .thenReturn(FileDownload.builder()
+                        .content(new ByteArrayInputStream("tent".getBytes()))
+                        .eTag("\"abc123\"")
+                        .contentRange("bytes 8-11/12")
+                        .build());
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-3,8-11");
+
+        // Act
+        ResponseEntity<?> response = fileController.download(userName, filename, requestHeaders);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+
+        // Assert
+        ArgumentCaptor<DownloadOptions> options = ArgumentCaptor.forClass(DownloadOptions.class);
+        verify(fileService, times(2)).streamFile(eq(userName), eq(filename), options.capture());
+        assertEquals("bytes=8-11", options.getAllValues().get(1).getRange());
+        assertEquals("\"abc123\"", options.getAllValues().get(1).getIfMatch());
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        MediaType contentType = response.getHeaders().getContentType();
+        assertEquals("multipart/byteranges", contentType.getType() + "/" + contentType.getSubtype());
+        String boundary = contentType.getParameter("boundary");
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-3/12\r\n\r\ntest"
+                + "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 8-11/12\r\n\r\ntent"
+                + "\r\n--" + boundary + "--\r\n", out.toString());
+    }
+
+    @Test
+    void download_ReturnsNotModified_WhenETagMatches() {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class)))
+                .thenThrow(new NotModifiedException("\"abc123\""));
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"abc123\"");
+
+        // Act
+        NotModifiedException e = assertThrows(NotModifiedException.class,
+                () -> fileController.download(userName, filename, requestHeaders));
+        ResponseEntity<?> response = fileController.notModified(e);
+
+        // Assert
+        ArgumentCaptor<DownloadOptions> options = ArgumentCaptor.forClass(DownloadOptions.class);
+        verify(fileService).streamFile(eq(userName), eq(filename), options.capture());
+        assertEquals("\"abc123\"", options.getValue().getIfNoneMatch());
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"abc123\"", response.getHeaders().getETag());
     }
 
     @Test
@@ -88,7 +411,7 @@ class FileControllerTest {
         // Arrange
         String userName = "test-user";
         String filename = "test.txt";
-        when(s3Service.deleteFile(userName, filename)).thenReturn(true);
+        when(fileService.deleteFile(userName, filename)).thenReturn(true);
 
         // Act
         ResponseEntity<String> response = fileController.deleteFile(userName, filename);
@@ -96,7 +419,7 @@ class FileControllerTest {
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("File deleted", response.getBody());
-        verify(s3Service).deleteFile(userName, filename);
+        verify(fileService).deleteFile(userName, filename);
     }
 
     @Test
@@ -104,7 +427,7 @@ class FileControllerTest {
         // Arrange
         String userName = "test-user";
         String filename = "test.txt";
-        when(s3Service.deleteFile(userName, filename)).thenReturn(false);
+        when(fileService.deleteFile(userName, filename)).thenReturn(false);
 
         // Act
         ResponseEntity<String> response = fileController.deleteFile(userName, filename);
@@ -112,7 +435,7 @@ class FileControllerTest {
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals("File or user not found", response.getBody());
-        verify(s3Service).deleteFile(userName, filename);
+        verify(fileService).deleteFile(userName, filename);
     }
 
     @Test
@@ -120,7 +443,7 @@ class FileControllerTest {
         // Arrange
         String userName = "test-user";
         List<String> files = Arrays.asList("file1.txt", "file2.txt");
-        when(s3Service.listAllFiles(userName)).thenReturn(files);
+        when(fileService.listAllFiles(userName)).thenReturn(files);
 
         // Act
         ResponseEntity<List<String>> response = fileController.getAllFiles(userName);
@@ -128,14 +451,14 @@ class FileControllerTest {
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(files, response.getBody());
-        verify(s3Service).listAllFiles(userName);
+        verify(fileService).listAllFiles(userName);
     }
 
     @Test
     void getAllFiles_ReturnsNotFound_WhenNoFilesFound() {
         // Arrange
         String userName = "test-user";
-        when(s3Service.listAllFiles(userName)).thenReturn(Collections.emptyList());
+        when(fileService.listAllFiles(userName)).thenReturn(Collections.emptyList());
 
         // Act
         ResponseEntity<List<String>> response = fileController.getAllFiles(userName);
@@ -143,6 +466,138 @@ class FileControllerTest {
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals(Collections.singletonList("No files found for the user."), response.getBody());
-        verify(s3Service).listAllFiles(userName);
+        verify(fileService).listAllFiles(userName);
+    }
+
+    @Test
+    void getFilePage_ReturnsPageFromService() {
+        // Arrange
+        String userName = "test-user";
+        FilePage page = FilePage.builder()
+                .files(Arrays.asList("file1.txt", "file2.txt"))
+                .nextContinuationToken("next")
+                .build();
+        when(fileService.listFiles(userName, 2, null)).thenReturn(page);
+
+        // Act
+        ResponseEntity<FilePage> response = fileController.getFilePage(userName, 2, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+    }
+
+    @Test
+    void streamAllFiles_WritesOneJsonStringPerLine() throws IOException {
+        // Arrange
+        String userName = "test-user";
+        when(fileService.streamAllFiles(userName)).thenReturn(Stream.of("test-user/a.txt", "test-user/\"quoted\".txt"));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = fileController.streamAllFiles(userName);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals("\"test-user/a.txt\"\n\"test-user/\\\"quoted\\\".txt\"\n", out.toString());
+    }
+
+    @Test
+    void download_SendsALocalFileFromItsOpenChannel(@TempDir Path dir) throws IOException {
+        // Arrange
+        String userName = "test-user";
+        String filename = "test.txt";
+        Path file = Files.write(dir.resolve("0123"), "test content".getBytes());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        FileDownload download = FileDownload.builder()
+                .content(Channels.newInputStream(channel))
+                .contentLength(7L)
+                .contentRange("bytes 5-11/12")
+                .channel(channel)
+                .channelOffset(5)
+                .build();
+        when(fileService.streamFile(eq(userName), eq(filename), any(DownloadOptions.class))).thenReturn(download);
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(HttpRange.parseRanges("bytes=5-"));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = fileController.download(userName, filename, requestHeaders);
+        Files.delete(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals(7L, response.getHeaders().getContentLength());
+        assertEquals("content", out.toString());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void deleteFiles_ReturnsPerFileResults() {
+        // Arrange
+        String userName = "test-user";
+        List<String> filenames = Arrays.asList("a.txt", "b.txt");
+        BatchDeleteResult result = BatchDeleteResult.builder()
+                .deletedCount(1)
+                .deleted(Collections.singletonList("a.txt"))
+                .failed(Collections.singletonMap("b.txt", "AccessDenied: Access Denied"))
+                .build();
+        when(fileService.deleteFiles(userName, filenames)).thenReturn(result);
+
+        // Act
+        ResponseEntity<BatchDeleteResult> response = fileController.deleteFiles(userName, filenames);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+        verify(fileService).deleteFiles(userName, filenames);
+    }
+
+    @Test
+    void uploadFiles_ReturnsPerFileResults() {
+        // Arrange
+        String userName = "test-user";
+        List<MultipartFile> files = Arrays.asList(
+                new MockMultipartFile("files", "a.txt", "text/plain", "a".getBytes()),
+                new MockMultipartFile("files", "b.txt", "text/plain", "b".getBytes()));
+        BatchUploadResult result = BatchUploadResult.builder()
+                .uploadedCount(2)
+                .uploaded(Arrays.asList("a.txt", "b.txt"))
+                .failed(Collections.emptyMap())
+                .build();
+        when(fileService.saveFiles(files, userName)).thenReturn(result);
+
+        // Act
+        ResponseEntity<BatchUploadResult> response = fileController.uploadFiles(files, userName);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    void listEntries_PassesTheFiltersToTheService() {
+        // Arrange
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        FileListing listing = FileListing.builder()
+                .files(Collections.emptyList())
+                .folders(Collections.singletonList("docs/2023/"))
+                .build();
+        ArgumentCaptor<ListOptions> options = ArgumentCaptor.forClass(ListOptions.class);
+        when(fileService.listEntries(eq("test-user"), options.capture())).thenReturn(listing);
+
+        // Act
+        ResponseEntity<FileListing> response = fileController.listEntries("test-user", "docs/", "/", since, 50, "token");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(listing, response.getBody());
+        assertEquals("docs/", options.getValue().getPrefix());
+        assertEquals("/", options.getValue().getDelimiter());
+        assertEquals(since, options.getValue().getModifiedSince());
+        assertEquals(50, options.getValue().getPageSize());
+        assertEquals("token", options.getValue().getContinuationToken());
     }
 }
@@ -0,0 +1,94 @@
+package com.example.awsstorage.controllertest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.example.awsstorage.controller.PresignedUrlController;
+import com.example.awsstorage.entity.PresignedMultipartUpload;
+import com.example.awsstorage.entity.PresignedUrl;
+import com.example.awsstorage.entity.UploadedPart;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.PresignedUrlService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class PresignedUrlControllerTest {
+
+    @Mock
+    private PresignedUrlService presignedUrlService;
+
+    private PresignedUrlController presignedUrlController;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        presignedUrlController = new PresignedUrlController();
+        presignedUrlController.setPresignedUrlService(presignedUrlService);
+    }
+
+    @Test
+    void presignDownload_ReturnsTheSignedUrl() {
+        // Arrange
+        PresignedUrl url = PresignedUrl.builder().method("GET").url("https://bucket/user/a.txt?X-Amz-Signature=s").build();
+        when(presignedUrlService.presignDownload("user", "a.txt")).thenReturn(url);
+
+        // Act
+        ResponseEntity<PresignedUrl> response = presignedUrlController.presignDownload("user", "a.txt");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(url, response.getBody());
+    }
+
+    @Test
+    void startMultipartUpload_PassesTheSizeAndContentType() {
+        // Arrange
+        PresignedMultipartUpload upload = PresignedMultipartUpload.builder().uploadId("upload-1").build();
+        when(presignedUrlService.startMultipartUpload("user", "big.bin", "video/mp4", 100L)).thenReturn(upload);
+
+        // Act
+        ResponseEntity<PresignedMultipartUpload> response = presignedUrlController.startMultipartUpload("user",
+                "big.bin", 100L, "video/mp4");
+
+        // Assert
+        assertEquals(upload, response.getBody());
+    }
+
+    @Test
+    void completeMultipartUpload_AcceptsThePartsAsJson() throws Exception {
+        // Arrange
+        List<UploadedPart> parts = new ObjectMapper().readValue("[{\"partNumber\":1,\"eTag\":\"\\\"a\\\"\"}]",
+                new ObjectMapper().getTypeFactory().constructCollectionType(List.class, UploadedPart.class));
+
+        // Act
+        ResponseEntity<String> response = presignedUrlController.completeMultipartUpload("user", "big.bin",
+                "upload-1", parts);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, parts.get(0).getPartNumber());
+        assertEquals("\"a\"", parts.get(0).getETag());
+        verify(presignedUrlService).completeMultipartUpload("user", "big.bin", "upload-1", parts);
+    }
+
+    @Test
+    void notFound_MapsAMissingFileTo404() {
+        // Act
+        ResponseEntity<String> response = presignedUrlController.notFound(
+                new StoredFileNotFoundException("user/a.txt", null));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(Collections.singletonList("File not found"), Collections.singletonList(response.getBody()));
+    }
+}
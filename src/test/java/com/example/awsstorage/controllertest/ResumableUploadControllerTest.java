@@ -0,0 +1,83 @@
+package com.example.awsstorage.controllertest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.example.awsstorage.controller.ResumableUploadController;
+import com.example.awsstorage.entity.UploadStatus;
+import com.example.awsstorage.exception.UploadNotFoundException;
+import com.example.awsstorage.service.ResumableUploadService;
+
+class ResumableUploadControllerTest {
+
+    @Mock
+    private ResumableUploadService resumableUploadService;
+
+    private ResumableUploadController resumableUploadController;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        resumableUploadController = new ResumableUploadController();
+        resumableUploadController.setResumableUploadService(resumableUploadService);
+    }
+
+    @Test
+    void create_ReturnsCreatedWithTheUploadsLocation() {
+        // Arrange
+        UploadStatus status = UploadStatus.builder().id("3f2b").build();
+        when(resumableUploadService.create("user", "big.bin", null, 100L)).thenReturn(status);
+
+        // Act
+        ResponseEntity<UploadStatus> response = resumableUploadController.create("user", "big.bin", 100L, null);
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(URI.create("/uploads/3f2b"), response.getHeaders().getLocation());
+        assertEquals(status, response.getBody());
+    }
+
+    @Test
+    void uploadPart_PassesAMissingContentLengthAsUnknown() {
+        // Arrange
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+
+        // Act
+        resumableUploadController.uploadPart("3f2b", 2, body, null, null);
+
+        // Assert
+        verify(resumableUploadService).uploadPart(eq("3f2b"), eq(2), any(InputStream.class), eq(-1L), eq(null));
+    }
+
+    @Test
+    void notFound_Returns404() {
+        // Act
+        ResponseEntity<String> response = resumableUploadController.notFound(new UploadNotFoundException("3f2b"));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void conflict_Returns409() {
+        // Act
+        ResponseEntity<String> response = resumableUploadController.conflict(new IllegalStateException("missing"));
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+}
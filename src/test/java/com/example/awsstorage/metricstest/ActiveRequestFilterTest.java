@@ -0,0 +1,78 @@
+package com.example.awsstorage.metricstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.example.awsstorage.metrics.ActiveRequestFilter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ActiveRequestFilterTest {
+
+    private SimpleMeterRegistry registry;
+    private ActiveRequestFilter filter;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        filter = new ActiveRequestFilter(registry);
+    }
+
+    @Test
+    void countsARequestUntilItCompletes() throws Exception {
+        // Arrange
+        AtomicReference<Double> during = new AtomicReference<>();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                during.set(active());
+            }
+        });
+
+        // Act
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+
+        // Assert
+        assertEquals(1, during.get());
+        assertEquals(0, active());
+    }
+
+    @Test
+    void keepsCountingAnAsyncRequestUntilItsContextCompletes() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        AtomicReference<AsyncContext> asyncContext = new AtomicReference<>();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                asyncContext.set(req.startAsync());
+            }
+        });
+
+        // Act
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        double afterDispatch = active();
+        asyncContext.get().complete();
+
+        // Assert
+        assertEquals(1, afterDispatch);
+        assertEquals(0, active());
+    }
+
+    private double active() {
+        return registry.get("http.server.requests.active").gauge().value();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.awsstorage.metricstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.metrics.S3ApiMetrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollector;
+
+class S3ApiMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private S3ApiMetrics apiMetrics;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        apiMetrics = new S3ApiMetrics(registry, "sync");
+    }
+
+    @Test
+    void publish_SeparatesRetriesAndBackoffFromTheCall() {
+        // Arrange
+        MetricCollector call = MetricCollector.create("ApiCall");
+        call.reportMetric(CoreMetric.OPERATION_NAME, "GetObject");
+        call.reportMetric(CoreMetric.API_CALL_SUCCESSFUL, true);
+        call.reportMetric(CoreMetric.API_CALL_DURATION, Duration.ofMillis(250));
+        call.reportMetric(CoreMetric.RETRY_COUNT, 1);
+        attempt(call, 503, Duration.ofMillis(80), Duration.ZERO);
+        attempt(call, 200, Duration.ofMillis(60), Duration.ofMillis(100));
+
+        // Act
+        apiMetrics.publish(call.collect());
+
+        // Assert
+        Timer calls = registry.get("s3.api.call").tag("operation", "GetObject").tag("outcome", "success").timer();
+        assertEquals(250, calls.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("s3.api.retries").counter().count());
+        assertEquals(1, registry.get("s3.api.attempt").tag("status", "503").timer().count());
+        assertEquals(1, registry.get("s3.api.attempt").tag("status", "200").timer().count());
+        Timer backoff = registry.get("s3.api.backoff").timer();
+        assertEquals(1, backoff.count());
+        assertEquals(100, backoff.totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+
+    private static void attempt(MetricCollector call, int status, Duration serviceCall, Duration backoff) {
+        MetricCollector attempt = call.createChild("ApiCallAttempt");
+        attempt.reportMetric(HttpMetric.HTTP_STATUS_CODE, status);
+        attempt.reportMetric(CoreMetric.SERVICE_CALL_DURATION, serviceCall);
+        attempt.reportMetric(CoreMetric.BACKOFF_DELAY_DURATION, backoff);
+    }
+}
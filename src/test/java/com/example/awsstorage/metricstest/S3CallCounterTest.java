@@ -0,0 +1,58 @@
+package com.example.awsstorage.metricstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.example.awsstorage.metrics.S3CallCounter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class S3CallCounterTest {
+
+    private SimpleMeterRegistry registry;
+    private S3CallCounter counter;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        counter = new S3CallCounter(registry);
+    }
+
+    @Test
+    void recordsCallsPerRequestByEndpoint() {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/test-user/test.txt");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/download/{userName}/{filename}");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        counter.preHandle(request, response, null);
+        counter.beforeExecution(null, null);
+        counter.beforeExecution(null, null);
+        counter.afterCompletion(request, response, null, null);
+
+        // Assert
+        DistributionSummary summary = registry.get("s3.calls.per.request")
+                .tag("uri", "/download/{userName}/{filename}")
+                .tag("method", "GET")
+                .summary();
+        assertEquals(1, summary.count());
+        assertEquals(2, summary.totalAmount());
+    }
+
+    @Test
+    void ignoresCallsOutsideARequest() {
+        // Act
+        counter.beforeExecution(null, null);
+
+        // Assert
+        assertNull(registry.find("s3.calls.per.request").summary());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.awsstorage.metricstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.metrics.S3CallMetrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+class S3CallMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private S3CallMetrics metrics;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        metrics = new S3CallMetrics(registry);
+    }
+
+    @Test
+    void recordsActiveCallsAndBytesPerOperation() {
+        // Arrange
+        ExecutionAttributes put = attributes("PutObject");
+        ExecutionAttributes get = attributes("GetObject");
+        Context.AfterExecution putDone = mock(Context.AfterExecution.class);
+        when(putDone.requestBody()).thenReturn(Optional.of(RequestBody.fromString("hello")));
+        when(putDone.asyncRequestBody()).thenReturn(Optional.empty());
+        when(putDone.httpResponse()).thenReturn(SdkHttpResponse.builder().statusCode(200).build());
+
+        // Act
+        metrics.beforeExecution(null, put);
+        metrics.beforeExecution(null, get);
+        double activeWhileRunning = registry.get("s3.calls.active").tag("operation", "PutObject").gauge().value();
+        metrics.afterExecution(putDone, put);
+
+        // Assert
+        assertEquals(1, activeWhileRunning);
+        assertEquals(0, registry.get("s3.calls.active").tag("operation", "PutObject").gauge().value());
+        assertEquals(1, registry.get("s3.calls.active").tag("operation", "GetObject").gauge().value());
+        DistributionSummary sent = registry.get("s3.bytes").tag("operation", "PutObject").tag("direction", "sent").summary();
+        assertEquals(5, sent.totalAmount());
+    }
+
+    @Test
+    void countsFailuresByExceptionTypeOnce() {
+        // Arrange
+        ExecutionAttributes head = attributes("HeadObject");
+        Context.FailedExecution failed = mock(Context.FailedExecution.class);
+        when(failed.exception()).thenReturn(NoSuchKeyException.builder().build());
+
+        // Act
+        metrics.beforeExecution(null, head);
+        metrics.onExecutionFailure(failed, head);
+        metrics.onExecutionFailure(failed, head);
+
+        // Assert
+        assertEquals(2, registry.get("s3.errors").tag("exception", "NoSuchKeyException").counter().count());
+        assertEquals(0, registry.get("s3.calls.active").tag("operation", "HeadObject").gauge().value());
+    }
+
+    private static ExecutionAttributes attributes(String operation) {
+        ExecutionAttributes attributes = new ExecutionAttributes();
+        attributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation);
+        return attributes;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.awsstorage.metricstest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.metrics.S3PoolMetrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollector;
+
+class S3PoolMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private S3PoolMetrics poolMetrics;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        poolMetrics = new S3PoolMetrics(registry, "sync");
+    }
+
+    @Test
+    void publish_ExportsThePoolStateSeenByTheLatestAttempt() {
+        // Arrange
+        MetricCollector call = MetricCollector.create("ApiCall");
+        reportAttempt(call, 50, 10, 40, 0, Duration.ofMillis(1));
+        reportAttempt(call, 50, 50, 0, 7, Duration.ofMillis(30));
+
+        // Act
+        poolMetrics.publish(call.collect());
+
+        // Assert
+        assertEquals(50, gauge("s3.http.pool.max"));
+        assertEquals(50, gauge("s3.http.pool.leased"));
+        assertEquals(0, gauge("s3.http.pool.available"));
+        assertEquals(7, gauge("s3.http.pool.pending"));
+        Timer acquire = registry.get("s3.http.pool.acquire").tag("client", "sync").timer();
+        assertEquals(2, acquire.count());
+        assertEquals(31, acquire.totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+
+    @Test
+    void publish_KeepsTheLastValuesWhenACallReportsNoPoolState() {
+        // Arrange
+        MetricCollector first = MetricCollector.create("ApiCall");
+        reportAttempt(first, 50, 3, 47, 0, Duration.ZERO);
+        poolMetrics.publish(first.collect());
+
+        // Act
+        poolMetrics.publish(MetricCollector.create("ApiCall").collect());
+
+        // Assert
+        assertEquals(3, gauge("s3.http.pool.leased"));
+    }
+
+    private static void reportAttempt(MetricCollector call, int max, int leased, int available, int pending,
+            Duration acquire) {
+        MetricCollector http = call.createChild("ApiCallAttempt").createChild("HttpClient");
+        http.reportMetric(HttpMetric.MAX_CONCURRENCY, max);
+        http.reportMetric(HttpMetric.LEASED_CONCURRENCY, leased);
+        http.reportMetric(HttpMetric.AVAILABLE_CONCURRENCY, available);
+        http.reportMetric(HttpMetric.PENDING_CONCURRENCY_ACQUIRES, pending);
+        http.reportMetric(HttpMetric.CONCURRENCY_ACQUIRE_DURATION, acquire);
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("client", "sync").gauge().value();
+    }
+}
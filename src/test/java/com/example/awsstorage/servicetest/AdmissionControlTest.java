@@ -0,0 +1,153 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.exception.AdmissionRejectedException;
+import com.example.awsstorage.service.AdmissionControl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControlTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void admit_RejectsOnceTheQueueIsFull() {
+        // Arrange
+        AdmissionControl admission = admission(1, 1, 0, 0, 0);
+        admission.admit("alice", false);
+
+        // Act & Assert
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admission.admit("alice", false));
+        assertEquals(1, e.getRetryAfterSeconds());
+        assertEquals(1.0, registry.get("admission.rejected").tag("user", "alice").counter().count());
+    }
+
+    @Test
+    void admit_KeepsUsersApart() {
+        // Arrange
+        AdmissionControl admission = admission(1, 1, 0, 0, 0);
+        admission.admit("alice", true);
+
+        // Act
+        AdmissionControl.Permit permit = admission.admit("bob", true);
+
+        // Assert
+        permit.release();
+        assertEquals(1.0, registry.get("admission.active").tag("user", "alice").gauge().value());
+        assertEquals(0.0, registry.get("admission.active").tag("user", "bob").gauge().value());
+    }
+
+    @Test
+    void admit_LeavesRoomForInteractiveRequestsBeyondTheBulkLimit() {
+        // Arrange
+        AdmissionControl admission = admission(2, 1, 0, 0, 0);
+        admission.admit("alice", true);
+
+        // Act & Assert
+        assertThrows(AdmissionRejectedException.class, () -> admission.admit("alice", true));
+        admission.admit("alice", false);
+    }
+
+    @Test
+    void release_HandsTheSlotToWaitingInteractiveRequestsBeforeBulkOnes() throws Exception {
+        // Arrange
+        AdmissionControl admission = admission(1, 1, 4, 5000, 0);
+        AdmissionControl.Permit running = admission.admit("alice", false);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> bulk = CompletableFuture.runAsync(() -> {
+            admission.admit("alice", true).release();
+            order.add("bulk");
+        });
+        awaitQueued(1);
+        CompletableFuture<Void> interactive = CompletableFuture.runAsync(() -> {
+            AdmissionControl.Permit permit = admission.admit("alice", false);
+            order.add("interactive");
+            permit.release();
+        });
+        awaitQueued(2);
+
+        // Act
+        running.release();
+        CompletableFuture.allOf(bulk, interactive).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("interactive", order.get(0));
+    }
+
+    @Test
+    void throttle_PacesTransfersToTheByteRate() throws InterruptedIOException {
+        // Arrange
+        AdmissionControl admission = admission(1, 1, 0, 0, 100_000);
+        AdmissionControl.Permit permit = admission.admit("alice", true);
+
+        // Act
+        long start = System.nanoTime();
+        permit.throttle(20_000); // Within the burst.
+        permit.throttle(20_000);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert
+        assertTrue(elapsedMillis >= 150, "took " + elapsedMillis + " ms");
+        assertTrue(registry.get("admission.throttled").tag("user", "alice").counter().count() > 0);
+    }
+
+    @Test
+    void admit_KeepsTheStateOfBusyUsersBeyondMaxUsers() {
+        // Arrange
+        AdmissionControl admission = new AdmissionControl(true, 1, 1, 0, 0, 1, 0, 20_000, 1, true, registry);
+        admission.admit("alice", false);
+
+        // Act
+        admission.admit("bob", false).release();
+        admission.admit("carol", false).release();
+
+        // Assert
+        assertEquals(1.0, registry.get("admission.active").tag("user", "alice").gauge().value());
+        assertThrows(AdmissionRejectedException.class, () -> admission.admit("alice", false));
+        assertNull(registry.find("admission.active").tag("user", "bob").gauge());
+    }
+
+    @Test
+    void admit_TotalsMetersOverUsers_UnlessPerUserMetricsAreOn() {
+        // Arrange
+        AdmissionControl admission = new AdmissionControl(true, 1, 1, 0, 0, 1, 0, 20_000, 100, false, registry);
+        admission.admit("alice", false);
+        admission.admit("bob", false);
+
+        // Act
+        assertThrows(AdmissionRejectedException.class, () -> admission.admit("alice", false));
+
+        // Assert
+        assertEquals(2.0, registry.get("admission.active").gauge().value());
+        assertEquals(1.0, registry.get("admission.rejected").counter().count());
+        assertNull(registry.find("admission.active").tagKeys("user").gauge());
+    }
+
+    private void awaitQueued(int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("admission.queued").tag("user", "alice").gauge().value() < queued
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private AdmissionControl admission(int maxConcurrent, int maxConcurrentBulk, int maxQueued, long maxWaitMillis,
+            long bytesPerSecond) {
+        return new AdmissionControl(true, maxConcurrent, maxConcurrentBulk, maxQueued, maxWaitMillis, 1,
+                bytesPerSecond, 20_000, 100, true, registry);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.service.BatchDeleter;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+
+class BatchDeleterTest {
+
+    @Mock
+    private S3Client s3Client;
+
+    private BatchDeleter batchDeleter;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        batchDeleter = new BatchDeleter(s3Client, Runnable::run, 4);
+    }
+
+    @Test
+    void delete_SendsAtMostAThousandKeysPerRequest() {
+        // Arrange
+        List<String> keys = IntStream.range(0, 2500)
+                .mapToObj(i -> "user/file" + i)
+                .collect(Collectors.toList());
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+
+        // Act
+        BatchDeleteResult result = batchDeleter.delete("bucket", keys.iterator(), "user/", true);
+
+        // Assert
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(3)).deleteObjects(requests.capture());
+        assertEquals(Arrays.asList(1000, 1000, 500), requests.getAllValues().stream()
+                .map(request -> request.delete().objects().size())
+                .collect(Collectors.toList()));
+        assertEquals(2500, result.getDeletedCount());
+        assertEquals("file0", result.getDeleted().get(0));
+        assertEquals(Collections.emptyMap(), result.getFailed());
+    }
+
+    @Test
+    void delete_ReportsEveryKeyOfAFailedRequest() {
+        // Arrange
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenThrow(SdkClientException.create("connection reset"));
+
+        // Act
+        BatchDeleteResult result = batchDeleter.delete("bucket", Arrays.asList("user/a", "user/b").iterator(),
+                "user/", true);
+
+        // Assert
+        assertEquals(0, result.getDeletedCount());
+        assertEquals(Collections.emptyList(), result.getDeleted());
+        assertEquals("connection reset", result.getFailed().get("a"));
+        assertEquals("connection reset", result.getFailed().get("b"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.service.BatchUploader;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.MultipartUploader;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class BatchUploaderTest {
+
+    @Mock
+    private S3Client s3Client;
+
+    private ExecutorService executor;
+    private BatchUploader batchUploader;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        executor = Executors.newFixedThreadPool(4);
+        MultipartUploader uploader = new MultipartUploader(s3Client, executor, 5 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        batchUploader = new BatchUploader(uploader, executor, 4, 8);
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void upload_PutsEveryEntryAndReportsFailuresPerFile() {
+        // Arrange
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        when(s3Client.putObject(argThat((PutObjectRequest request) -> request != null && request.key().equals("user/bad.txt")),
+                any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).message("Access Denied").build());
+
+        // Act
+        BatchUploadResult result = batchUploader.upload(BatchUploaderTest::locate,
+                sourceOf("a.txt", "small", "bad.txt", "small", "large.bin", "more than eight bytes"));
+
+        // Assert
+        assertEquals(2, result.getUploadedCount());
+        assertEquals(Arrays.asList("a.txt", "large.bin"), result.getUploaded().stream().sorted().collect(Collectors.toList()));
+        assertEquals("Access Denied", result.getFailed().get("bad.txt"));
+        verify(s3Client, times(3)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void upload_RejectsNamesOutsideThePrefix() {
+        // Act
+        BatchUploadResult result = batchUploader.upload(BatchUploaderTest::locate, sourceOf("../other/a.txt", "x", "/abs", "x"));
+
+        // Assert
+        assertEquals(0, result.getUploadedCount());
+        assertEquals("Invalid file name", result.getFailed().get("../other/a.txt"));
+        assertEquals("Invalid file name", result.getFailed().get("/abs"));
+    }
+
+    private static KeyLayout.Location locate(String filename) {
+        return new KeyLayout.Location("bucket", "user/" + filename);
+    }
+
+    private static BatchUploader.EntrySource sourceOf(String... namesAndContents) {
+        List<String> values = Arrays.asList(namesAndContents);
+        Iterator<String> remaining = values.iterator();
+        return () -> remaining.hasNext()
+                ? new BatchUploader.Entry(remaining.next(), "text/plain", new ByteArrayInputStream(remaining.next().getBytes()))
+                : null;
+    }
+}
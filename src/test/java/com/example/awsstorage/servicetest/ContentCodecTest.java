@@ -0,0 +1,82 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.service.ContentCodec;
+import com.example.awsstorage.service.UploadCompression;
+
+class ContentCodecTest {
+
+    @Test
+    void compressing_RoundTripsThroughTheDecoderForEveryCodec() throws IOException {
+        // Arrange
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            log.append("2024-01-01T00:00:00Z INFO request ").append(i).append(" served in 3ms\n");
+        }
+        byte[] original = log.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (ContentCodec codec : ContentCodec.values()) {
+            // Act
+            byte[] compressed;
+            try (InputStream in = codec.compressing(new ByteArrayInputStream(original))) {
+                compressed = in.readAllBytes();
+            }
+            byte[] restored;
+            try (InputStream in = codec.decoder(new ByteArrayInputStream(compressed))) {
+                restored = in.readAllBytes();
+            }
+
+            // Assert
+            assertTrue(compressed.length * 5 < original.length, codec + " compressed to " + compressed.length);
+            assertArrayEquals(original, restored);
+        }
+    }
+
+    @Test
+    void isAcceptedBy_HonoursListedCodingsWildcardsAndZeroQuality() {
+        assertTrue(ContentCodec.GZIP.isAcceptedBy("gzip, deflate, br"));
+        assertTrue(ContentCodec.ZSTD.isAcceptedBy("br;q=1.0, zstd;q=0.5"));
+        assertTrue(ContentCodec.ZSTD.isAcceptedBy("gzip, *;q=0.1"));
+        assertFalse(ContentCodec.GZIP.isAcceptedBy("gzip;q=0, *"));
+        assertFalse(ContentCodec.ZSTD.isAcceptedBy("gzip, deflate"));
+        assertFalse(ContentCodec.GZIP.isAcceptedBy(null));
+    }
+
+    @Test
+    void of_MapsStoredEncodings() {
+        assertEquals(ContentCodec.GZIP, ContentCodec.of("gzip"));
+        assertEquals(ContentCodec.ZSTD, ContentCodec.of("ZSTD"));
+        assertNull(ContentCodec.of("br"));
+        assertNull(ContentCodec.of(null));
+    }
+
+    @Test
+    void uploadCompression_AcceptsCompressibleTypesAndExtensionsAboveTheMinimum() {
+        // Arrange
+        UploadCompression compression = new UploadCompression(true, "zstd", 100,
+                Arrays.asList("text/*", "application/json"), Collections.singleton("log"));
+
+        // Act & Assert
+        assertEquals(ContentCodec.ZSTD, compression.codec());
+        assertTrue(compression.accepts("a.txt", "text/plain; charset=utf-8", 100));
+        assertTrue(compression.accepts("data", "application/json", 1000));
+        assertTrue(compression.accepts("server.log", "application/octet-stream", 1000));
+        assertFalse(compression.accepts("a.txt", "text/plain", 99));
+        assertFalse(compression.accepts("photo.jpg", "image/jpeg", 1000));
+        assertFalse(compression.accepts("blob", null, 1000));
+    }
+}
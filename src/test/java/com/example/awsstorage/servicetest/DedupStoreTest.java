@@ -0,0 +1,140 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.example.awsstorage.service.DedupStore;
+import com.example.awsstorage.service.MultipartUploader;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+class DedupStoreTest {
+
+    // SHA-256 of "test content"
+    private static final String SHA256 = "6ae8a75555209fd6c44157c0aed8016e763ff435a19cf186f76863140143ff72";
+    private static final String CONTENT_KEY = ".dedup/content/" + SHA256;
+
+    @Mock
+    private S3Client s3Client;
+
+    private DedupStore dedupStore;
+    private final MockMultipartFile file = new MockMultipartFile("file", "a.txt", "text/plain", "test content".getBytes());
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        dedupStore = new DedupStore(s3Client, uploader, "bucket", true, 10, ".dedup/");
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+    }
+
+    @Test
+    void accepts_OnlyUploadsOfAtLeastMinBytes() {
+        assertEquals(false, dedupStore.accepts(9));
+        assertEquals(true, dedupStore.accepts(10));
+    }
+
+    @Test
+    void save_UploadsNewContentOnceAndWritesAReference() throws IOException {
+        // Arrange
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        // Act
+        String sha256 = dedupStore.save(request("user/a.txt"), "user/a.txt", file, file.getSize(), null);
+
+        // Assert
+        assertEquals(SHA256, sha256);
+        verify(s3Client).putObject(argThat((PutObjectRequest put) -> put != null
+                && put.key().equals(".dedup/refs/" + SHA256 + "/user/a.txt")), any(RequestBody.class));
+        verify(s3Client).putObject(argThat((PutObjectRequest put) -> put != null
+                && put.key().equals(CONTENT_KEY) && put.contentType().equals("text/plain")), any(RequestBody.class));
+        verify(s3Client).putObject(argThat((PutObjectRequest put) -> put != null
+                && put.key().equals("user/a.txt") && SHA256.equals(put.metadata().get(DedupStore.CONTENT_SHA256))),
+                any(RequestBody.class));
+    }
+
+    @Test
+    void save_SkipsTheUploadWhenTheContentIsStored() throws IOException {
+        // Arrange
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+
+        // Act
+        dedupStore.save(request("user/b.txt"), "user/b.txt", file, file.getSize(), null);
+
+        // Assert
+        verify(s3Client, never()).putObject(argThat((PutObjectRequest put) -> put != null
+                && put.key().equals(CONTENT_KEY)), any(RequestBody.class));
+        verify(s3Client).putObject(argThat((PutObjectRequest put) -> put != null
+                && put.key().equals("user/b.txt")), any(RequestBody.class));
+    }
+
+    @Test
+    void save_ReleasesTheNewReference_WhenTheReferenceCannotBeWritten() {
+        // Arrange
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+        when(s3Client.putObject(argThat((PutObjectRequest put) -> put != null && put.key().equals("user/a.txt")),
+                any(RequestBody.class))).thenThrow(S3Exception.builder().statusCode(403).message("Access Denied").build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(Collections.emptyList()).build());
+
+        // Act & Assert
+        assertThrows(S3Exception.class, () -> dedupStore.save(request("user/a.txt"), "user/a.txt", file, file.getSize(), null));
+        verify(s3Client).deleteObject(argThat((DeleteObjectRequest delete) -> delete != null
+                && delete.key().equals(".dedup/refs/" + SHA256 + "/user/a.txt")));
+    }
+
+    @Test
+    void release_DeletesTheContentOnlyWithItsLastReference() {
+        // Arrange
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(".dedup/refs/" + SHA256 + "/other/a.txt").build())
+                        .build())
+                .thenReturn(ListObjectsV2Response.builder().contents(Collections.emptyList()).build());
+
+        // Act
+        dedupStore.release("user/a.txt", SHA256);
+        verify(s3Client, never()).deleteObject(argThat((DeleteObjectRequest delete) -> delete != null
+                && delete.key().equals(CONTENT_KEY)));
+        dedupStore.release("other/a.txt", SHA256);
+
+        // Assert
+        verify(s3Client).deleteObject(argThat((DeleteObjectRequest delete) -> delete != null
+                && delete.key().equals(CONTENT_KEY)));
+    }
+
+    private static PutObjectRequest request(String key) {
+        return PutObjectRequest.builder()
+                .bucket("bucket")
+                .key(key)
+                .contentType("text/plain")
+                .build();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.service.DiskObjectCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.http.Abortable;
+
+class DiskObjectCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private DiskObjectCache cache;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() throws IOException {
+        cache = new DiskObjectCache(true, cacheDir.toString(), 1024, 100, new SimpleMeterRegistry());
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void open_SharesOneFetchBetweenConcurrentMisses() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<FileDownload> slowFetch = () -> {
+            fetches.incrementAndGet();
+            return download(new FilterInputStream(new ByteArrayInputStream("test content".getBytes())) {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.read(buffer, offset, Math.min(length, 4));
+                }
+            }, 12, "\"v1\"");
+        };
+        List<Future<byte[]>> downloads = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            downloads.add(executor.submit(() -> {
+                try (FileDownload download = cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), slowFetch)) {
+                    return download.getContent().readAllBytes();
+                }
+            }));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        // Assert
+        for (Future<byte[]> download : downloads) {
+            assertArrayEquals("test content".getBytes(), download.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void open_FinishesTheCopyForOtherReaders_WhenTheFirstReaderStopsEarly() throws IOException {
+        // Arrange
+        FileDownload first = cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("test content"));
+        assertEquals(4, first.getContent().read(new byte[4]));
+        FileDownload second = cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("unused"));
+
+        // Act
+        first.close();
+
+        // Assert
+        assertArrayEquals("test content".getBytes(), read(second));
+        assertArrayEquals("test content".getBytes(), read(cache.open("user/a", DownloadOptions.NONE,
+                current("\"v1\""), fetch("unused"))));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void open_AbortsTheFetchAndDropsTheCopy_WhenItsOnlyReaderStopsEarly() throws IOException {
+        // Arrange
+        AtomicBoolean aborted = new AtomicBoolean();
+        class AbortableContent extends ByteArrayInputStream implements Abortable {
+            AbortableContent(byte[] content) {
+                super(content);
+            }
+
+            @Override
+            public void abort() {
+                aborted.set(true);
+            }
+        }
+        FileDownload first = cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), () -> {
+            fetches.incrementAndGet();
+            return download(new AbortableContent("test content".getBytes()), 12, "\"v1\"");
+        });
+        assertEquals(4, first.getContent().read(new byte[4]));
+
+        // Act
+        first.close();
+
+        // Assert
+        assertTrue(aborted.get());
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+        assertArrayEquals("test content".getBytes(), read(cache.open("user/a", DownloadOptions.NONE,
+                current("\"v1\""), fetch("test content"))));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void open_RefetchesWhenETagChanges() throws IOException {
+        // Act
+        read(cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("old content!", "\"v1\"")));
+        FileDownload download = cache.open("user/a", DownloadOptions.NONE, current("\"v2\""),
+                fetch("new content!", "\"v2\""));
+
+        // Assert
+        try (FileDownload content = download) {
+            assertEquals("\"v2\"", content.getETag());
+            assertArrayEquals("new content!".getBytes(), content.getContent().readAllBytes());
+        }
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void open_EvaluatesRangeAndPreconditionsLocally() throws IOException {
+        // Arrange
+        read(cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("test content")));
+
+        // Act
+        FileDownload range = cache.open("user/a", DownloadOptions.builder().range("bytes=0-3").build(),
+                current("\"v1\""), fetch("unused"));
+
+        // Assert
+        try (FileDownload content = range) {
+            assertEquals("bytes 0-3/12", content.getContentRange());
+            assertEquals(4L, content.getContentLength());
+            assertArrayEquals("test".getBytes(), content.getContent().readAllBytes());
+        }
+        assertThrows(NotModifiedException.class, () -> cache.open("user/a",
+                DownloadOptions.builder().ifNoneMatch("\"v1\"").build(), current("\"v1\""), fetch("unused")));
+        assertThrows(RangeNotSatisfiableException.class, () -> cache.open("user/a",
+                DownloadOptions.builder().range("bytes=50-").build(), current("\"v1\""), fetch("unused")));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void open_KeepsServingACopyEvictedMidDownload() throws IOException {
+        // Arrange
+        read(cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("test content")));
+        FileDownload download = cache.open("user/a", DownloadOptions.NONE, current("\"v1\""), fetch("unused"));
+
+        // Act
+        cache.invalidate("user/a");
+
+        // Assert
+        assertArrayEquals("test content".getBytes(), read(download));
+    }
+
+    @Test
+    void open_LeavesConditionalMissesLargeObjectsAndFailedFetchesToS3() throws IOException {
+        // Act & Assert
+        assertNull(cache.open("user/a", DownloadOptions.builder().range("bytes=0-3").build(),
+                current("\"v1\""), fetch("unused")));
+        assertEquals(0, fetches.get());
+
+        String large = new String(new char[101]).replace('\0', 'x');
+        assertArrayEquals(large.getBytes(), read(cache.open("user/large", DownloadOptions.NONE,
+                current("\"v1\""), fetch(large))));
+        assertArrayEquals(large.getBytes(), read(cache.open("user/large", DownloadOptions.NONE,
+                current("\"v1\""), fetch(large))));
+        assertEquals(2, fetches.get());
+
+        assertThrows(IllegalStateException.class, () -> cache.open("user/b", DownloadOptions.NONE,
+                current("\"v1\""), () -> {
+                    throw new IllegalStateException("S3 unavailable");
+                }));
+        assertArrayEquals("test content".getBytes(), read(cache.open("user/b", DownloadOptions.NONE,
+                current("\"v1\""), fetch("test content"))));
+    }
+
+    private static Supplier<Optional<FileMetadata>> current(String eTag) {
+        return () -> Optional.of(FileMetadata.builder().contentLength(12L).eTag(eTag).build());
+    }
+
+    private Supplier<FileDownload> fetch(String content) {
+        return fetch(content, "\"v1\"");
+    }
+
+    private Supplier<FileDownload> fetch(String content, String eTag) {
+        return () -> {
+            fetches.incrementAndGet();
+            return download(new ByteArrayInputStream(content.getBytes()), content.length(), eTag);
+        };
+    }
+
+    private static FileDownload download(InputStream content, long length, String eTag) {
+        return FileDownload.builder()
+                .content(content)
+                .contentLength(length)
+                .eTag(eTag)
+                .contentType("text/plain")
+                .build();
+    }
+
+    private static byte[] read(FileDownload download) throws IOException {
+        try (FileDownload content = download) {
+            return content.getContent().readAllBytes();
+        }
+    }
+}
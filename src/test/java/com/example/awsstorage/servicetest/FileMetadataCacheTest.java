@@ -0,0 +1,73 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.service.FileMetadataCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FileMetadataCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private FileMetadataCache cache;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        cache = new FileMetadataCache(1000, 1000, 60, registry);
+    }
+
+    @Test
+    void listing_CountsHitsAndMisses() {
+        // Act
+        cache.listing("user", user -> Collections.singletonList("user/a"));
+        List<String> listing = cache.listing("user", user -> Collections.emptyList());
+
+        // Assert
+        assertEquals(Collections.singletonList("user/a"), listing);
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "file.listings", "result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "file.listings", "result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void added_InsertsKeyInOrderOnlyIntoCachedListings() {
+        // Arrange
+        cache.listing("user", user -> Arrays.asList("user/a", "user/c"));
+
+        // Act
+        cache.added("user", "user/b");
+        cache.added("other", "other/a");
+
+        // Assert
+        assertEquals(Arrays.asList("user/a", "user/b", "user/c"), cache.cachedListing("user"));
+        assertNull(cache.cachedListing("other"));
+    }
+
+    @Test
+    void removed_DropsKeyAndRemembersItIsGone() {
+        // Arrange
+        cache.listing("user", user -> Arrays.asList("user/a", "user/b"));
+        cache.putMetadata("user/b", FileMetadata.builder().contentLength(1L).build());
+
+        // Act
+        cache.removed("user", "user/b");
+
+        // Assert
+        assertEquals(Collections.singletonList("user/a"), cache.cachedListing("user"));
+        assertEquals(Optional.empty(), cache.metadata("user/b", key -> {
+            throw new AssertionError("should not reload");
+        }));
+    }
+}
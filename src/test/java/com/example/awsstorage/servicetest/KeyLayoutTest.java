@@ -0,0 +1,128 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.awsstorage.exception.InvalidUserNameException;
+import com.example.awsstorage.service.KeyLayout;
+
+class KeyLayoutTest {
+
+    @Test
+    void locate_KeepsTheFlatLayoutByDefault() {
+        // Arrange
+        KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 0, true, ".dedup/");
+
+        // Act
+        KeyLayout.Location location = layout.locate("user", "a.txt");
+
+        // Assert
+        assertTrue(layout.isFlat());
+        assertEquals(new KeyLayout.Location("bucket", "user/a.txt"), location);
+        assertNull(layout.legacy("user", "a.txt"));
+        assertEquals(Collections.singletonList(new KeyLayout.Location("bucket", "user/")), layout.prefixes("user"));
+    }
+
+    @Test
+    void locate_SpreadsAUsersFilesOverTheShards() {
+        // Arrange
+        KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 256, false, ".dedup/");
+
+        // Act
+        Set<String> shards = IntStream.range(0, 1000)
+                .mapToObj(i -> layout.locate("user", "file" + i).getKey())
+                .map(key -> key.substring(0, key.indexOf('/', KeyLayout.SHARD_ROOT.length())))
+                .collect(Collectors.toSet());
+
+        // Assert
+        assertTrue(layout.locate("user", "a.txt").getKey().matches("\\.shards/[0-9a-f]{2}/user/a\\.txt"));
+        assertEquals(layout.locate("user", "a.txt"), layout.locate("user/a.txt"));
+        assertTrue(shards.size() > 200);
+        assertEquals(256, layout.prefixes("user").size());
+        assertEquals(".shards/00/user/", layout.prefixes("user").get(0).getKey());
+        assertEquals(".shards/ff/user/", layout.prefixes("user").get(255).getKey());
+    }
+
+    @Test
+    void locate_RejectsUsersWhoseFilesWouldFallUnderTheDedupPrefix() {
+        // Arrange
+        KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 0, false, ".dedup/");
+
+        // Act & Assert
+        assertThrows(InvalidUserNameException.class, () -> layout.locate(".dedup", "content/abc"));
+        assertThrows(InvalidUserNameException.class, () -> layout.prefixes(".dedup"));
+        assertEquals(".dedupe/a.txt", layout.locate(".dedupe", "a.txt").getKey());
+        assertThrows(InvalidUserNameException.class, () -> layout.prefixes(".shards"));
+    }
+
+    @Test
+    void prefixes_KeepAHexNamedUsersOldPrefixClearOfOtherUsersShards() {
+        // Arrange
+        KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 256, true, ".dedup/");
+        List<String> othersKeys = IntStream.range(0, 100)
+                .mapToObj(i -> layout.locate("user" + i, "a.txt").getKey())
+                .collect(Collectors.toList());
+
+        // Act
+        List<KeyLayout.Location> prefixes = layout.prefixes("3f");
+
+        // Assert
+        assertEquals(new KeyLayout.Location("bucket", "3f/"), prefixes.get(256));
+        assertTrue(othersKeys.stream().noneMatch(key -> prefixes.stream()
+                .anyMatch(prefix -> key.startsWith(prefix.getKey()))));
+        assertFalse(layout.isPlaced(new KeyLayout.Location("bucket", "3f/user1/a.txt")));
+    }
+
+    @Test
+    void bucket_PutsEachUserInOneOfTheBuckets() {
+        // Arrange
+        List<String> buckets = Arrays.asList("bucket-a", " bucket-b ", "bucket-c");
+        KeyLayout layout = new KeyLayout("bucket", buckets, 0, false, ".dedup/");
+
+        // Act
+        Set<String> used = IntStream.range(0, 100)
+                .mapToObj(i -> layout.bucket("user" + i))
+                .collect(Collectors.toSet());
+
+        // Assert
+        assertEquals(new HashSet<>(Arrays.asList("bucket-a", "bucket-b", "bucket-c")), used);
+        assertEquals(layout.bucket("user1"), layout.locate("user1", "a.txt").getBucket());
+        assertEquals("user1/a.txt", layout.locate("user1", "a.txt").getKey());
+    }
+
+    @Test
+    void legacy_LooksWhereFilesWereKeptBefore_WhileFallbackIsOn() {
+        // Arrange
+        KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 16, true, ".dedup/");
+        KeyLayout.Location legacy = new KeyLayout.Location("bucket", "user/a.txt");
+
+        // Act
+        List<KeyLayout.Location> prefixes = layout.prefixes("user");
+        Map<String, Map<String, String>> keys = layout.keysByBucket("user", Collections.singletonList("a.txt"));
+
+        // Assert
+        assertEquals(legacy, layout.legacy("user", "a.txt"));
+        assertEquals(17, prefixes.size());
+        assertEquals(new KeyLayout.Location("bucket", "user/"), prefixes.get(16));
+        assertEquals(2, keys.get("bucket").size());
+        assertEquals("a.txt", keys.get("bucket").get("user/a.txt"));
+        assertEquals("a.txt", keys.get("bucket").get(layout.locate("user", "a.txt").getKey()));
+        assertTrue(layout.isPlaced(layout.locate("user", "a.txt")));
+        assertFalse(layout.isPlaced(legacy));
+        assertNull(new KeyLayout("bucket", Collections.emptyList(), 16, false, ".dedup/").legacy("user", "a.txt"));
+    }
+}
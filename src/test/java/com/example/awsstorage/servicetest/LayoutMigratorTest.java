@@ -0,0 +1,159 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.service.DedupStore;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.LayoutMigrator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+class LayoutMigratorTest {
+
+    private static final long GIB = 1024 * 1024 * 1024;
+
+    @Mock
+    private S3Client s3Client;
+
+    private final KeyLayout layout = new KeyLayout("bucket", Collections.emptyList(), 16, true, ".dedup/");
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private LayoutMigrator migrator;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        migrator = new LayoutMigrator(s3Client, layout,
+                new DedupStore(s3Client, null, "bucket", true, 0, ".dedup/"), Runnable::run, 4, GIB, registry);
+        when(s3Client.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(invocation -> new ListObjectsV2Iterable(s3Client, invocation.getArgument(0)));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+    }
+
+    @Test
+    void migrate_MovesOnlyFilesThatAreNotInPlace() {
+        // Arrange
+        String placed = layout.locate("user", "c.txt").getKey();
+        String written = layout.locate("user", "b.txt").getKey();
+        listing(object("user/a.txt", 10), object("user/b.txt", 10), object(placed, 10),
+                object(".dedup/content/abc", 10), object("top.txt", 10));
+        doReturn(HeadObjectResponse.builder().build())
+                .when(s3Client).headObject(HeadObjectRequest.builder().bucket("bucket").key(written).build());
+
+        // Act
+        int moved = migrator.migrate();
+
+        // Assert
+        assertEquals(2, moved);
+        verify(s3Client).copyObject(CopyObjectRequest.builder()
+                .sourceBucket("bucket")
+                .sourceKey("user/a.txt")
+                .copySourceIfMatch("\"user/a.txt\"")
+                .destinationBucket("bucket")
+                .destinationKey(layout.locate("user", "a.txt").getKey())
+                .build());
+        verify(s3Client, times(1)).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client).deleteObject(DeleteObjectRequest.builder().bucket("bucket").key("user/a.txt").build());
+        verify(s3Client).deleteObject(DeleteObjectRequest.builder().bucket("bucket").key("user/b.txt").build());
+        verify(s3Client, times(2)).deleteObject(any(DeleteObjectRequest.class));
+        assertEquals(2.0, registry.get("storage.layout.migrated").counter().count());
+    }
+
+    @Test
+    void migrate_CopiesObjectsLargerThanFiveGibInParts() {
+        // Arrange
+        listing(object("user/big.bin", 6 * GIB));
+        doReturn(HeadObjectResponse.builder().contentType("application/octet-stream").build())
+                .when(s3Client).headObject(HeadObjectRequest.builder()
+                        .bucket("bucket")
+                        .key("user/big.bin")
+                        .ifMatch("\"user/big.bin\"")
+                        .build());
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPartCopy(any(UploadPartCopyRequest.class))).thenAnswer(invocation -> UploadPartCopyResponse
+                .builder()
+                .copyPartResult(CopyPartResult.builder()
+                        .eTag("etag-" + ((UploadPartCopyRequest) invocation.getArgument(0)).partNumber())
+                        .build())
+                .build());
+
+        // Act
+        int moved = migrator.migrate();
+
+        // Assert
+        assertEquals(1, moved);
+        ArgumentCaptor<UploadPartCopyRequest> parts = ArgumentCaptor.forClass(UploadPartCopyRequest.class);
+        verify(s3Client, times(6)).uploadPartCopy(parts.capture());
+        assertEquals("bytes=0-1073741823", parts.getAllValues().get(0).copySourceRange());
+        assertEquals("bytes=5368709120-6442450943", parts.getAllValues().get(5).copySourceRange());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals(Arrays.asList("etag-1", "etag-2", "etag-3", "etag-4", "etag-5", "etag-6"),
+                complete.getValue().multipartUpload().parts().stream()
+                        .map(CompletedPart::eTag)
+                        .collect(Collectors.toList()));
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client).deleteObject(DeleteObjectRequest.builder().bucket("bucket").key("user/big.bin").build());
+    }
+
+    @Test
+    void migrate_LeavesAFileThatFailedToCopyInPlace() {
+        // Arrange
+        listing(object("user/a.txt", 10));
+        when(s3Client.copyObject(any(CopyObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(412).build());
+
+        // Act
+        int moved = migrator.migrate();
+
+        // Assert
+        assertEquals(0, moved);
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    private void listing(S3Object... objects) {
+        List<S3Object> contents = Arrays.asList(objects);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(contents).build());
+    }
+
+    private static S3Object object(String key, long size) {
+        return S3Object.builder().key(key).size(size).eTag("\"" + key + "\"").build();
+    }
+}
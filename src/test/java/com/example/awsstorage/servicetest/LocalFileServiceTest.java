@@ -0,0 +1,296 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.LocalFileService;
+
+class LocalFileServiceTest {
+
+    @TempDir
+    Path root;
+
+    private LocalFileService service;
+
+    @BeforeEach
+    void setup() throws IOException {
+        service = new LocalFileService(root.toString());
+    }
+
+    @Test
+    void saveFile_ReplacesTheFileAtomicallyAndLeavesNoTemporaryFiles() throws IOException {
+        // Arrange
+        service.saveFile(upload("test.txt", "old content"), "test-user");
+
+        // Act
+        String result = service.saveFile(upload("test.txt", "new content"), "test-user");
+
+        // Assert
+        assertEquals("File uploaded", result);
+        assertArrayEquals("new content".getBytes(), service.downloadFile("test-user", "test.txt"));
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void saveFile_KeepsEveryNameInsideTheUsersDirectory() throws IOException {
+        // Act
+        service.saveFile(upload("../escape.txt", "x"), "test-user");
+        service.saveFile(upload("docs/report 1.pdf", "y"), "test-user");
+
+        // Assert
+        assertEquals(Arrays.asList("test-user/../escape.txt", "test-user/docs/report 1.pdf"),
+                service.listAllFiles("test-user"));
+        try (Stream<Path> files = Files.walk(root)) {
+            assertTrue(files.filter(Files::isRegularFile)
+                    .allMatch(file -> file.startsWith(root.resolve("test-user"))));
+        }
+        assertArrayEquals("y".getBytes(), service.downloadFile("test-user", "docs/report 1.pdf"));
+    }
+
+    @Test
+    void streamFile_ServesRangesFromTheFile() throws IOException {
+        // Arrange
+        service.saveFile(upload("test.txt", "0123456789"), "test-user");
+
+        // Act
+        FileDownload download = service.streamFile("test-user", "test.txt",
+                DownloadOptions.builder().range("bytes=2-5").build());
+
+        // Assert
+        assertEquals(4L, download.getContentLength());
+        assertEquals("bytes 2-5/10", download.getContentRange());
+        assertEquals(2L, download.getChannelOffset());
+        assertEquals("text/plain", download.getContentType());
+        assertNotNull(download.getChannel());
+        assertArrayEquals("2345".getBytes(), download.getContent().readAllBytes());
+        download.close();
+    }
+
+    @Test
+    void streamFile_KeepsSendingTheVersionItOpened_WhenTheFileIsReplaced() throws IOException {
+        // Arrange
+        service.saveFile(upload("test.txt", "old content"), "test-user");
+        FileDownload download = service.streamFile("test-user", "test.txt");
+
+        // Act
+        service.saveFile(upload("test.txt", "new, longer content"), "test-user");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileDownload content = download) {
+            content.transferTo(out, 4);
+        }
+
+        // Assert
+        assertEquals(11L, download.getContentLength());
+        assertEquals("old content", out.toString());
+        try (FileDownload current = service.streamFile("test-user", "test.txt")) {
+            assertNotEquals(download.getETag(), current.getETag());
+        }
+    }
+
+    @Test
+    void streamFile_EvaluatesPreconditionsAgainstTheFile() throws IOException {
+        // Arrange
+        service.saveFile(upload("test.txt", "test content"), "test-user");
+        String eTag;
+        try (FileDownload download = service.streamFile("test-user", "test.txt")) {
+            eTag = download.getETag();
+        }
+
+        // Act & Assert
+        NotModifiedException notModified = assertThrows(NotModifiedException.class, () -> service.streamFile(
+                "test-user", "test.txt", DownloadOptions.builder().ifNoneMatch(eTag).build()));
+        assertEquals(eTag, notModified.getETag());
+        assertThrows(RangeNotSatisfiableException.class, () -> service.streamFile(
+                "test-user", "test.txt", DownloadOptions.builder().range("bytes=100-").build()));
+        assertThrows(StoredFileNotFoundException.class, () -> service.streamFile("test-user", "missing.txt"));
+    }
+
+    @Test
+    void listFiles_PagesThroughEveryFileOnce() {
+        // Arrange
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            service.saveFile(upload("file-" + i + ".txt", "x"), "test-user");
+            expected.add("test-user/file-" + i + ".txt");
+        }
+        service.saveFile(upload("file.txt", "x"), "other-user");
+
+        // Act
+        List<String> listed = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            FilePage page = service.listFiles("test-user", 10, token);
+            listed.addAll(page.getFiles());
+            token = page.getNextContinuationToken();
+            pages++;
+        } while (token != null);
+
+        // Assert
+        assertEquals(3, pages);
+        Collections.sort(expected);
+        assertEquals(expected, listed.stream().sorted().collect(Collectors.toList()));
+        assertEquals(expected, service.listAllFiles("test-user"));
+        assertEquals(25, service.streamAllFiles("test-user").count());
+    }
+
+    @Test
+    void saveArchive_StoresEachEntryAndRejectsInvalidNames() throws IOException {
+        // Arrange
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.putNextEntry(new ZipEntry("dir/a.txt"));
+            out.write("a".getBytes());
+            out.putNextEntry(new ZipEntry("dir/../../b.txt"));
+            out.write("b".getBytes());
+        }
+
+        // Act
+        BatchUploadResult result = service.saveArchive(new ByteArrayInputStream(zip.toByteArray()), "test-user");
+
+        // Assert
+        assertEquals(Collections.singletonList("dir/a.txt"), result.getUploaded());
+        assertEquals("Invalid file name", result.getFailed().get("dir/../../b.txt"));
+        assertArrayEquals("a".getBytes(), service.downloadFile("test-user", "dir/a.txt"));
+    }
+
+    @Test
+    void deleteFiles_And_deleteAllFiles_RemoveTheUsersFiles() {
+        // Arrange
+        for (String name : Arrays.asList("a.txt", "b.txt", "c.txt")) {
+            service.saveFile(upload(name, "x"), "test-user");
+        }
+
+        // Act
+        BatchDeleteResult some = service.deleteFiles("test-user", Arrays.asList("a.txt", "a.txt", "missing.txt"));
+        BatchDeleteResult all = service.deleteAllFiles("test-user");
+
+        // Assert
+        assertEquals(Arrays.asList("a.txt", "missing.txt"), some.getDeleted());
+        assertEquals(2, all.getDeletedCount());
+        assertNull(all.getDeleted());
+        assertTrue(service.listAllFiles("test-user").isEmpty());
+        assertFalse(Files.exists(root.resolve("test-user")));
+        assertFalse(service.deleteFile("test-user", "b.txt"));
+    }
+
+    @Test
+    void listEntries_RollsNamesUpIntoFoldersAndPagesInNameOrder() {
+        // Arrange
+        for (String name : Arrays.asList("docs/b.txt", "docs/a.txt", "docs/2023/x.txt", "docs/2023/y.txt",
+                "docs/2024/z.txt", "photo.jpg")) {
+            service.saveFile(upload(name, "content"), "test-user");
+        }
+        ListOptions.ListOptionsBuilder options = ListOptions.builder().prefix("docs/").delimiter("/").pageSize(2);
+
+        // Act
+        FileListing first = service.listEntries("test-user", options.build());
+        FileListing second = service.listEntries("test-user",
+                options.continuationToken(first.getNextContinuationToken()).build());
+
+        // Assert
+        assertEquals(Arrays.asList("docs/2023/", "docs/2024/"), first.getFolders());
+        assertTrue(first.getFiles().isEmpty());
+        assertEquals(Arrays.asList("docs/a.txt", "docs/b.txt"), second.getFiles().stream()
+                .map(FileEntity::getFileName)
+                .collect(Collectors.toList()));
+        assertNull(second.getNextContinuationToken());
+        FileEntity file = second.getFiles().get(0);
+        assertEquals("test-user/docs/a.txt", file.getFilePath());
+        assertEquals(7L, file.getSize());
+        assertEquals(service.streamFile("test-user", "docs/a.txt").getETag(), file.getETag());
+    }
+
+    @Test
+    void listEntries_PagesWithoutADelimiterInShardOrder() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            service.saveFile(upload("docs/" + i + ".txt", "content"), "test-user");
+        }
+        service.saveFile(upload("photo.jpg", "content"), "test-user");
+        ListOptions.ListOptionsBuilder options = ListOptions.builder().prefix("docs/").pageSize(2);
+        List<String> names = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+
+        // Act
+        do {
+            FileListing page = service.listEntries("test-user", options.continuationToken(token).build());
+            page.getFiles().forEach(file -> names.add(file.getFileName()));
+            token = page.getNextContinuationToken();
+            pages++;
+        } while (token != null);
+
+        // Assert
+        assertEquals(3, pages);
+        Collections.sort(names);
+        assertEquals(Arrays.asList("docs/0.txt", "docs/1.txt", "docs/2.txt", "docs/3.txt", "docs/4.txt"), names);
+    }
+
+    @Test
+    void listEntries_FiltersFilesByModificationTime() throws IOException {
+        // Arrange
+        service.saveFile(upload("old.txt", "x"), "test-user");
+        service.saveFile(upload("new.txt", "x"), "test-user");
+        Instant since = Instant.now().minusSeconds(60);
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().equals("old.txt"))
+                    .collect(Collectors.toList())) {
+                Files.setLastModifiedTime(file, FileTime.from(since.minusSeconds(60)));
+            }
+        }
+
+        // Act
+        FileListing listing = service.listEntries("test-user", ListOptions.builder().modifiedSince(since).build());
+
+        // Assert
+        assertEquals(Collections.singletonList("new.txt"), listing.getFiles().stream()
+                .map(FileEntity::getFileName)
+                .collect(Collectors.toList()));
+    }
+
+    private static MockMultipartFile upload(String name, String content) {
+        return new MockMultipartFile("file", name, "text/plain", content.getBytes());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+import com.example.awsstorage.service.MultipartReader;
+
+class MultipartReaderTest {
+
+    private static final String BOUNDARY = "----boundary7MA4YWxkTrZu0gW";
+
+    @Test
+    void next_ReadsFieldsAndFilesInOrder() throws IOException {
+        // Arrange
+        byte[] body = body(
+                part("form-data; name=\"userName\"", null, "alice".getBytes(StandardCharsets.UTF_8)),
+                part("form-data; name=\"file\"; filename=\"notes.txt\"", "text/plain",
+                        "line one\r\nline two\r\n".getBytes(StandardCharsets.UTF_8)));
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 1024);
+
+        // Act
+        MultipartReader.Part field = reader.next();
+        String fieldValue = StreamUtils.copyToString(field.getContent(), StandardCharsets.UTF_8);
+        MultipartReader.Part file = reader.next();
+        String fileContent = StreamUtils.copyToString(file.getContent(), StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals("userName", field.getName());
+        assertNull(field.getFilename());
+        assertEquals("alice", fieldValue);
+        assertEquals("file", file.getName());
+        assertEquals("notes.txt", file.getFilename());
+        assertEquals("text/plain", file.getContentType());
+        assertEquals("line one\r\nline two\r\n", fileContent);
+        assertNull(reader.next());
+    }
+
+    @Test
+    void next_StreamsContentLargerThanTheBuffer() throws IOException {
+        // Arrange
+        byte[] content = new byte[1024 * 1024];
+        new Random(7).nextBytes(content);
+        byte[] body = body(part("form-data; name=\"file\"; filename=\"random.bin\"", null, content));
+        MultipartReader reader = new MultipartReader(new TrickleInputStream(body), "\"" + BOUNDARY + "\"", 0);
+
+        // Act
+        MultipartReader.Part file = reader.next();
+        byte[] read = StreamUtils.copyToByteArray(file.getContent());
+
+        // Assert
+        assertArrayEquals(content, read);
+        assertNull(reader.next());
+    }
+
+    @Test
+    void next_SkipsWhatIsLeftOfThePreviousPart() throws IOException {
+        // Arrange
+        byte[] body = body(
+                part("form-data; name=\"first\"; filename=\"a.bin\"", null, new byte[100_000]),
+                part("form-data; name=\"second\"", null, "b".getBytes(StandardCharsets.UTF_8)));
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 4096);
+        InputStream first = reader.next().getContent();
+        first.read(new byte[10]);
+
+        // Act
+        MultipartReader.Part second = reader.next();
+
+        // Assert
+        assertEquals("second", second.getName());
+        assertEquals("b", StreamUtils.copyToString(second.getContent(), StandardCharsets.UTF_8));
+        assertEquals(-1, first.read());
+    }
+
+    @Test
+    void read_FailsWhenTheBodyIsCutOff() throws IOException {
+        // Arrange
+        byte[] body = body(part("form-data; name=\"file\"; filename=\"a.txt\"", null, new byte[10_000]));
+        byte[] truncated = new byte[body.length / 2];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(truncated), BOUNDARY, 1024);
+        InputStream content = reader.next().getContent();
+
+        // Act & Assert
+        assertThrows(EOFException.class, () -> StreamUtils.copyToByteArray(content));
+    }
+
+    private static byte[] part(String disposition, String contentType, byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("--" + BOUNDARY + "\r\nContent-Disposition: " + disposition + "\r\n").getBytes(StandardCharsets.UTF_8));
+        if (contentType != null) {
+            out.write(("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        out.write(content);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private static byte[] body(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /** Hands out a few bytes per read, as a slow connection would, so delimiters straddle reads. */
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+
+import com.example.awsstorage.service.MultipartUploader;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+class MultipartUploaderTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @Mock
+    private S3Client s3Client;
+
+    private ExecutorService executor;
+    private MultipartUploader uploader;
+    private PutObjectRequest request = PutObjectRequest.builder()
+            .bucket("test-bucket")
+            .key("test-user/test-file")
+            .build();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        executor = Executors.newFixedThreadPool(2);
+        uploader = new MultipartUploader(s3Client, executor, PART_SIZE, PART_SIZE, 2);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void upload_UsesSinglePut_WhenBodyFitsInOnePart() throws IOException {
+        // Arrange
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        // Act
+        uploader.upload(request, new ByteArrayResource(new byte[1024]), 1024);
+
+        // Assert
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void upload_SplitsLargeBodyIntoOrderedParts() throws IOException {
+        // Arrange
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> UploadPartResponse.builder()
+                        .eTag("etag-" + invocation.<UploadPartRequest>getArgument(0).partNumber())
+                        .build());
+
+        // Act
+        uploader.upload(request, new ByteArrayInputStream(new byte[2 * PART_SIZE + 1]));
+
+        // Assert
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(3)).uploadPart(parts.capture(), any(RequestBody.class));
+        assertEquals(1L, parts.getAllValues().stream()
+                .filter(part -> part.partNumber() == 3).findFirst().get().contentLength());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals("upload-1", complete.getValue().uploadId());
+        assertEquals(3, complete.getValue().multipartUpload().parts().size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, complete.getValue().multipartUpload().parts().get(i).partNumber());
+            assertEquals("etag-" + (i + 1), complete.getValue().multipartUpload().parts().get(i).eTag());
+        }
+    }
+
+    @Test
+    void upload_GivesTheClientABodyItCanReplay() throws IOException {
+        // Arrange
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        // Act
+        uploader.upload(request, new ByteArrayResource("test content".getBytes()), 12);
+
+        // Assert
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client).putObject(any(PutObjectRequest.class), body.capture());
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try (InputStream content = body.getValue().contentStreamProvider().newStream()) {
+                assertArrayEquals("test content".getBytes(), content.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void upload_LeavesRetriesToTheClient() {
+        // Arrange
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(503).build())
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+        // Act & Assert
+        assertThrows(S3Exception.class, () -> uploader.upload(request, new ByteArrayInputStream(new byte[PART_SIZE])));
+        verify(s3Client, times(1)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void upload_AbortsMultipartUpload_OnFatalPartError() {
+        // Arrange
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).build());
+
+        // Act & Assert
+        assertThrows(S3Exception.class,
+                () -> uploader.upload(request, new ByteArrayInputStream(new byte[2 * PART_SIZE])));
+        verify(s3Client).abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket("test-bucket")
+                .key("test-user/test-file")
+                .uploadId("upload-1")
+                .build());
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+}
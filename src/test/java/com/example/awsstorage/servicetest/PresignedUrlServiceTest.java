@@ -0,0 +1,181 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.entity.FileMetadata;
+import com.example.awsstorage.entity.PresignedMultipartUpload;
+import com.example.awsstorage.entity.PresignedUrl;
+import com.example.awsstorage.entity.UploadedPart;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.DedupStore;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.PresignedUrlService;
+import com.example.awsstorage.service.S3FileService;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+class PresignedUrlServiceTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private S3FileService fileService;
+
+    private S3Presigner presigner;
+    private PresignedUrlService presignedUrlService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+                .build();
+        presignedUrlService = service(new DedupStore(s3Client, null, "bucket", false, 0, ".dedup/"));
+    }
+
+    @AfterEach
+    void close() {
+        presigner.close();
+    }
+
+    @Test
+    void presignDownload_SignsAGetOfTheUsersKey() {
+        // Arrange
+        when(fileService.findFileMetadata("user/a.txt"))
+                .thenReturn(Optional.of(FileMetadata.builder().contentLength(12L).build()));
+
+        // Act
+        PresignedUrl url = presignedUrlService.presignDownload("user", "a.txt");
+
+        // Assert
+        assertEquals("GET", url.getMethod());
+        assertTrue(url.getUrl().startsWith("https://bucket.s3.amazonaws.com/user/a.txt?"), url.getUrl());
+        // The SDK signs the time left at signing, which can already have dropped below the configured expiry.
+        assertTrue(url.getUrl().matches(".*X-Amz-Expires=(899|900)(&.*)?"), url.getUrl());
+        assertTrue(url.getUrl().contains("response-content-disposition=attachment"), url.getUrl());
+        assertFalse(url.getHeaders().containsKey("host"));
+    }
+
+    @Test
+    void presignDownload_SignsTheContentOfADeduplicatedFile() {
+        // Arrange
+        PresignedUrlService dedupService = service(new DedupStore(s3Client, null, "bucket", true, 0, ".dedup/"));
+        when(fileService.findFileMetadata("user/a.txt"))
+                .thenReturn(Optional.of(FileMetadata.builder().contentLength(0L).contentSha256("abc").build()));
+
+        // Act
+        PresignedUrl url = dedupService.presignDownload("user", "a.txt");
+
+        // Assert
+        assertTrue(url.getUrl().startsWith("https://bucket.s3.amazonaws.com/.dedup/content/abc?"), url.getUrl());
+    }
+
+    @Test
+    void presignDownload_ThrowsWhenTheFileIsMissing() {
+        when(fileService.findFileMetadata("user/missing.txt")).thenReturn(Optional.empty());
+
+        assertThrows(StoredFileNotFoundException.class, () -> presignedUrlService.presignDownload("user", "missing.txt"));
+    }
+
+    @Test
+    void presignUpload_SignsTheContentTypeTheClientMustSend() {
+        // Act
+        PresignedUrl url = presignedUrlService.presignUpload("user", "a.txt", "text/plain");
+
+        // Assert
+        assertEquals("PUT", url.getMethod());
+        assertTrue(url.getUrl().startsWith("https://bucket.s3.amazonaws.com/user/a.txt?"), url.getUrl());
+        assertEquals(Collections.singletonList("text/plain"), url.getHeaders().get("content-type"));
+    }
+
+    @Test
+    void presignUpload_RefusesToReplaceADeduplicatedFile() {
+        // Arrange
+        PresignedUrlService dedupService = service(new DedupStore(s3Client, null, "bucket", true, 0, ".dedup/"));
+        when(fileService.findFileMetadata("user/a.txt"))
+                .thenReturn(Optional.of(FileMetadata.builder().contentLength(0L).contentSha256("abc").build()));
+        when(fileService.findFileMetadata("user/b.txt")).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> dedupService.presignUpload("user", "a.txt", "text/plain"));
+        assertEquals("PUT", dedupService.presignUpload("user", "b.txt", "text/plain").getMethod());
+    }
+
+    @Test
+    void startMultipartUpload_SignsAUrlPerPart() {
+        // Arrange
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+
+        // Act
+        PresignedMultipartUpload upload = presignedUrlService.startMultipartUpload("user", "big.bin", null, 40 * MIB + 1);
+
+        // Assert
+        assertEquals("upload-1", upload.getUploadId());
+        assertEquals(16 * MIB, upload.getPartSize());
+        assertEquals(3, upload.getParts().size());
+        assertTrue(upload.getParts().get(2).getUrl().contains("partNumber=3"));
+        assertTrue(upload.getParts().get(2).getUrl().contains("uploadId=upload-1"));
+        assertEquals("PUT", upload.getParts().get(0).getMethod());
+    }
+
+    @Test
+    void startMultipartUpload_GrowsPartsToStayWithinTheLimit() {
+        // Arrange
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+
+        // Act
+        PresignedMultipartUpload upload = presignedUrlService.startMultipartUpload("user", "huge.bin", null,
+                200_000 * MIB);
+
+        // Assert
+        assertEquals(20 * MIB, upload.getPartSize());
+        assertEquals(10_000, upload.getParts().size());
+    }
+
+    @Test
+    void completeMultipartUpload_HandsThePartsToTheFileService() {
+        // Act
+        presignedUrlService.completeMultipartUpload("user", "big.bin", "upload-1", Arrays.asList(
+                UploadedPart.builder().partNumber(2).eTag("\"b\"").build(),
+                UploadedPart.builder().partNumber(1).eTag("\"a\"").build()));
+
+        // Assert
+        verify(fileService).completeMultipartUpload("user", "big.bin", "upload-1", Arrays.asList(
+                CompletedPart.builder().partNumber(2).eTag("\"b\"").build(),
+                CompletedPart.builder().partNumber(1).eTag("\"a\"").build()));
+    }
+
+    private PresignedUrlService service(DedupStore dedupStore) {
+        return new PresignedUrlService(s3Client, presigner, fileService, dedupStore,
+                new KeyLayout("bucket", Collections.emptyList(), 0, false, ".dedup/"), 900, 16 * MIB);
+    }
+}
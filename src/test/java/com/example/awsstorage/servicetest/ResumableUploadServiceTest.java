@@ -0,0 +1,194 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.entity.UploadStatus;
+import com.example.awsstorage.exception.UploadNotFoundException;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.ResumableUploadService;
+import com.example.awsstorage.service.S3FileService;
+import com.example.awsstorage.service.UploadSessionStore;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+class ResumableUploadServiceTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private S3FileService fileService;
+
+    @TempDir
+    Path sessions;
+
+    private UploadSessionStore store;
+    private ResumableUploadService resumableUploadService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        store = new UploadSessionStore(sessions.toString());
+        resumableUploadService = service(store, 3600);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> UploadPartResponse.builder()
+                        .eTag("\"etag-" + invocation.getArgument(0, UploadPartRequest.class).partNumber() + "\"")
+                        .build());
+    }
+
+    @Test
+    void create_SplitsTheFileIntoParts() {
+        // Act
+        UploadStatus status = resumableUploadService.create("user", "big.bin", "video/mp4", 12 * MIB);
+
+        // Assert
+        assertEquals(5 * MIB, status.getPartSize());
+        assertEquals(3, status.getPartCount());
+        assertEquals(0, status.getOffset());
+        assertEquals(Arrays.asList(1, 2, 3), status.getMissingParts());
+        ArgumentCaptor<CreateMultipartUploadRequest> captor = ArgumentCaptor.forClass(CreateMultipartUploadRequest.class);
+        verify(s3Client).createMultipartUpload(captor.capture());
+        assertEquals("user/big.bin", captor.getValue().key());
+        assertEquals("video/mp4", captor.getValue().contentType());
+    }
+
+    @Test
+    void uploadPart_RecordsThePartAndReportsWhatIsMissing() {
+        // Arrange
+        String id = resumableUploadService.create("user", "big.bin", null, 12 * MIB).getId();
+
+        // Act
+        resumableUploadService.uploadPart(id, 1, new ByteArrayInputStream(new byte[0]), 5 * MIB, null);
+        UploadStatus status = resumableUploadService.uploadPart(id, 3, new ByteArrayInputStream(new byte[0]),
+                2 * MIB, "md5==");
+
+        // Assert
+        assertEquals(5 * MIB, status.getOffset());
+        assertEquals(Arrays.asList(2), status.getMissingParts());
+        ArgumentCaptor<UploadPartRequest> captor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(2)).uploadPart(captor.capture(), any(RequestBody.class));
+        assertEquals(2 * MIB, captor.getValue().contentLength());
+        assertEquals("md5==", captor.getValue().contentMD5());
+        assertEquals("upload-1", captor.getValue().uploadId());
+    }
+
+    @Test
+    void uploadPart_RejectsAPartOfTheWrongLengthOrNumber() {
+        // Arrange
+        String id = resumableUploadService.create("user", "big.bin", null, 12 * MIB).getId();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> resumableUploadService.uploadPart(id, 1,
+                new ByteArrayInputStream(new byte[0]), 2 * MIB, null));
+        assertThrows(IllegalArgumentException.class, () -> resumableUploadService.uploadPart(id, 4,
+                new ByteArrayInputStream(new byte[0]), -1, null));
+        verify(s3Client, never()).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void status_SurvivesARestart() throws IOException {
+        // Arrange
+        String id = resumableUploadService.create("user", "big.bin", null, 12 * MIB).getId();
+        resumableUploadService.uploadPart(id, 1, new ByteArrayInputStream(new byte[0]), 5 * MIB, null);
+
+        // Act
+        UploadStatus status = service(new UploadSessionStore(sessions.toString()), 3600).status(id);
+
+        // Assert
+        assertEquals(5 * MIB, status.getOffset());
+        assertEquals(Arrays.asList(2, 3), status.getMissingParts());
+    }
+
+    @Test
+    void complete_RefusesWhileAPartIsMissing() {
+        // Arrange
+        String id = resumableUploadService.create("user", "big.bin", null, 12 * MIB).getId();
+        resumableUploadService.uploadPart(id, 1, new ByteArrayInputStream(new byte[0]), 5 * MIB, null);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> resumableUploadService.complete(id));
+        verify(fileService, never()).completeMultipartUpload(any(), any(), any(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void complete_AssemblesThePartsAndForgetsTheUpload() {
+        // Arrange
+        String id = resumableUploadService.create("user", "big.bin", null, 6 * MIB).getId();
+        resumableUploadService.uploadPart(id, 2, new ByteArrayInputStream(new byte[0]), MIB, null);
+        resumableUploadService.uploadPart(id, 1, new ByteArrayInputStream(new byte[0]), 5 * MIB, null);
+
+        // Act
+        resumableUploadService.complete(id);
+
+        // Assert
+        ArgumentCaptor<List<CompletedPart>> captor = ArgumentCaptor.forClass(List.class);
+        verify(fileService).completeMultipartUpload(eq("user"), eq("big.bin"), eq("upload-1"), captor.capture());
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(captor.getValue().get(0).partNumber(),
+                captor.getValue().get(1).partNumber()));
+        assertEquals("\"etag-1\"", captor.getValue().get(0).eTag());
+        assertFalse(store.find(id).isPresent());
+        assertThrows(UploadNotFoundException.class, () -> resumableUploadService.status(id));
+    }
+
+    @Test
+    void expireSessions_AbortsUploadsIdleForLongerThanTheTtl() {
+        // Arrange
+        String stale = resumableUploadService.create("user", "old.bin", null, MIB).getId();
+        store.update(stale, session -> session.toBuilder().updatedAt(Instant.now().minusSeconds(7200)).build());
+        String fresh = resumableUploadService.create("user", "new.bin", null, MIB).getId();
+        doThrow(NoSuchUploadException.builder().build())
+                .when(fileService).abortMultipartUpload("user", "old.bin", "upload-1");
+
+        // Act
+        resumableUploadService.expireSessions();
+
+        // Assert
+        verify(fileService).abortMultipartUpload("user", "old.bin", "upload-1");
+        verify(fileService, never()).abortMultipartUpload(eq("user"), eq("new.bin"), any());
+        assertFalse(store.find(stale).isPresent());
+        assertTrue(store.find(fresh).isPresent());
+    }
+
+    private ResumableUploadService service(UploadSessionStore store, long ttlSeconds) {
+        return new ResumableUploadService(s3Client, fileService, store,
+                new KeyLayout("bucket", Collections.emptyList(), 0, false, ".dedup/"), 5 * MIB, ttlSeconds);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.example.awsstorage.entity.AsyncFileDownload;
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.S3AsyncFileService;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Publisher;
+
+class S3AsyncFileServiceTest {
+
+    @Mock
+    private S3AsyncClient s3AsyncClient;
+
+    private S3AsyncFileService fileService;
+    private String bucketName = "test-bucket";
+    private String userName = "test-user";
+    private String filename = "test-file";
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        fileService = new S3AsyncFileService(s3AsyncClient,
+                new KeyLayout(bucketName, Collections.emptyList(), 0, false, ".dedup/"), false);
+    }
+
+    @Test
+    void constructor_RefusesDedup_WhichReferencesItCannotFollow() {
+        assertThrows(IllegalStateException.class, () -> new S3AsyncFileService(s3AsyncClient,
+                new KeyLayout(bucketName, Collections.emptyList(), 0, false, ".dedup/"), true));
+    }
+
+    @Test
+    void saveFile_UploadsFileSuccessfully() {
+        // Arrange
+        MockMultipartFile file = new MockMultipartFile("file", filename, "text/plain", "test content".getBytes());
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        // Act
+        String result = fileService.saveFile(file, userName).join();
+
+        // Assert
+        assertEquals("File uploaded", result);
+        verify(s3AsyncClient).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void streamFile_CompletesWithHeadersBeforeBodyIsRead() {
+        // Arrange
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class)))
+                .thenAnswer(invocation -> {
+                    AsyncResponseTransformer<GetObjectResponse, AsyncFileDownload> transformer = invocation.getArgument(1);
+                    CompletableFuture<AsyncFileDownload> future = transformer.prepare();
+                    transformer.onResponse(GetObjectResponse.builder().contentLength(12L).eTag("\"abc123\"").build());
+                    transformer.onStream(subscriber -> { });
+                    return future;
+                });
+
+        // Act
+        AsyncFileDownload download = fileService.streamFile(userName, filename, DownloadOptions.NONE).join();
+
+        // Assert
+        assertEquals(12L, download.getContentLength());
+        assertEquals("\"abc123\"", download.getETag());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void streamFile_FailsWithStoredFileNotFound_WhenKeyMissing() {
+        // Arrange
+        CompletableFuture<AsyncFileDownload> missing = new CompletableFuture<>();
+        missing.completeExceptionally(NoSuchKeyException.builder().build());
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class)))
+                .thenReturn(missing);
+
+        // Act & Assert
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> fileService.streamFile(userName, filename, DownloadOptions.NONE).join());
+        assertTrue(e.getCause() instanceof StoredFileNotFoundException);
+    }
+
+    @Test
+    void deleteFile_ReturnsFalse_WhenFileNotFound() {
+        // Arrange
+        CompletableFuture<HeadObjectResponse> missing = new CompletableFuture<>();
+        missing.completeExceptionally(NoSuchKeyException.builder().build());
+        when(s3AsyncClient.headObject(any(HeadObjectRequest.class))).thenReturn(missing);
+
+        // Act & Assert
+        assertFalse(fileService.deleteFile(userName, filename).join());
+        verify(s3AsyncClient, never()).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    @Test
+    void deleteFile_DeletesTheFile_WhenItExists() {
+        // Arrange
+        when(s3AsyncClient.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(HeadObjectResponse.builder().build()));
+        when(s3AsyncClient.deleteObject(any(DeleteObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DeleteObjectResponse.builder().build()));
+
+        // Act & Assert
+        assertTrue(fileService.deleteFile(userName, filename).join());
+        verify(s3AsyncClient).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    @Test
+    void listAllFiles_ReturnsListOfFiles() {
+        // Arrange
+        ListObjectsV2Response response = ListObjectsV2Response.builder()
+                .contents(Arrays.asList(
+                        S3Object.builder().key(userName + "/file1").build(),
+                        S3Object.builder().key(userName + "/file2").build()))
+                .build();
+        when(s3AsyncClient.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        when(s3AsyncClient.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(invocation -> new ListObjectsV2Publisher(s3AsyncClient, invocation.getArgument(0)));
+
+        // Act
+        List<String> files = fileService.listAllFiles(userName).join();
+
+        // Assert
+        assertEquals(Arrays.asList(userName + "/file1", userName + "/file2"), files);
+    }
+
+    @Test
+    void listFiles_PassesPageSizeAndContinuationToken() {
+        // Arrange
+        ListObjectsV2Response response = ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/file3").build())
+                .nextContinuationToken("page-3")
+                .build();
+        when(s3AsyncClient.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        // Act
+        FilePage page = fileService.listFiles(userName, 2, "page-2").join();
+
+        // Assert
+        assertEquals(Arrays.asList(userName + "/file3"), page.getFiles());
+        assertEquals("page-3", page.getNextContinuationToken());
+        verify(s3AsyncClient).listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(userName + "/")
+                .maxKeys(2)
+                .continuationToken("page-2")
+                .build());
+    }
+
+    @Test
+    void listEntries_FetchesFurtherPagesUntilThePageIsFull() {
+        // Arrange
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        when(s3AsyncClient.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName).prefix(userName + "/").delimiter("/").maxKeys(2).build()))
+                .thenReturn(CompletableFuture.completedFuture(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/old").size(1L).lastModified(since.minusSeconds(1)).build())
+                        .commonPrefixes(CommonPrefix.builder().prefix(userName + "/docs/").build())
+                        .nextContinuationToken("page-2")
+                        .build()));
+        when(s3AsyncClient.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName).prefix(userName + "/").delimiter("/").maxKeys(1).continuationToken("page-2").build()))
+                .thenReturn(CompletableFuture.completedFuture(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/new").size(3L).lastModified(since).build())
+                        .build()));
+
+        // Act
+        FileListing listing = fileService.listEntries(userName, ListOptions.builder()
+                .delimiter("/")
+                .modifiedSince(since)
+                .pageSize(2)
+                .build()).join();
+
+        // Assert
+        assertEquals(Collections.singletonList("docs/"), listing.getFolders());
+        assertEquals("new", listing.getFiles().get(0).getFileName());
+        assertEquals(3L, listing.getFiles().get(0).getSize());
+        assertEquals(1, listing.getFiles().size());
+        assertEquals(null, listing.getNextContinuationToken());
+    }
+
+    @Test
+    void deleteFiles_ReportsDeletedAndFailedFiles() {
+        // Arrange
+        when(s3AsyncClient.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DeleteObjectsResponse.builder()
+                        .errors(S3Error.builder().key(userName + "/b.txt").code("AccessDenied").message("Access Denied").build())
+                        .build()));
+
+        // Act
+        BatchDeleteResult result = fileService.deleteFiles(userName, Arrays.asList("a.txt", "b.txt", "a.txt")).join();
+
+        // Assert
+        assertEquals(1, result.getDeletedCount());
+        assertEquals(Arrays.asList("a.txt"), result.getDeleted());
+        assertEquals("AccessDenied: Access Denied", result.getFailed().get("b.txt"));
+        verify(s3AsyncClient).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+}
@@ -1,41 +1,97 @@
 package com.example.awsstorage.servicetest;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.mock.web.MockMultipartFile;
 
+import com.example.awsstorage.entity.BatchDeleteResult;
+import com.example.awsstorage.entity.BatchUploadResult;
+import com.example.awsstorage.entity.DownloadOptions;
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.entity.FilePage;
+import com.example.awsstorage.entity.ListOptions;
+import com.example.awsstorage.exception.InvalidUserNameException;
+import com.example.awsstorage.exception.NotModifiedException;
+import com.example.awsstorage.exception.RangeNotSatisfiableException;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.BatchDeleter;
+import com.example.awsstorage.service.BatchUploader;
+import com.example.awsstorage.service.DedupStore;
+import com.example.awsstorage.service.DiskObjectCache;
+import com.example.awsstorage.service.FileMetadataCache;
+import com.example.awsstorage.service.KeyLayout;
+import com.example.awsstorage.service.MultipartUploader;
 import com.example.awsstorage.service.S3FileService;
+import com.example.awsstorage.service.UploadCompression;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 class S3FileServiceTest {
 
@@ -48,10 +104,19 @@ class S3FileServiceTest {
     private String filename = "test-file";
 
     @BeforeEach
-    void setup() {
+    void setup() throws IOException {
         MockitoAnnotations.openMocks(this);
-        s3FileService = new S3FileService(s3Client);
-        s3FileService.setBucketName(bucketName);
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        s3FileService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                new BatchDeleter(s3Client, Runnable::run, 4),
+                new BatchUploader(uploader, Runnable::run, 4, 1024),
+                new DedupStore(s3Client, uploader, bucketName, false, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+        when(s3Client.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(invocation -> new ListObjectsV2Iterable(s3Client, invocation.getArgument(0)));
     }
 
     @Test
@@ -71,6 +136,24 @@ class S3FileServiceTest {
         assertEquals("File uploaded", result);
     }
 
+    @Test
+    void saveFile_StreamsABodyOfUnknownLength() {
+        // Arrange
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        // Act
+        String result = s3FileService.saveFile(userName, "notes.txt", "text/plain",
+                new ByteArrayInputStream("test content".getBytes()));
+
+        // Assert
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals(userName + "/notes.txt", captor.getValue().key());
+        assertEquals("text/plain", captor.getValue().contentType());
+        assertEquals("File uploaded", result);
+    }
+
     @Test
     void downloadFile_ShouldThrowRuntimeException_WhenFileNotFound() {
         // Arrange
@@ -82,10 +165,95 @@ class S3FileServiceTest {
         verify(s3Client).getObject(any(GetObjectRequest.class));
     }
 
+    @Test
+    void streamFile_ReturnsOpenStreamWithObjectMetadata() throws IOException {
+        // Arrange
+        byte[] content = "test content".getBytes();
+        GetObjectResponse getObjectResponse = GetObjectResponse.builder()
+                .contentLength((long) content.length)
+                .eTag("\"abc123\"")
+                .contentType("text/plain")
+                .build();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                getObjectResponse, AbortableInputStream.create(new ByteArrayInputStream(content))));
+
+        // Act
+        try (FileDownload download = s3FileService.streamFile(userName, filename)) {
+            // Assert
+            assertEquals(content.length, download.getContentLength());
+            assertEquals("\"abc123\"", download.getETag());
+            assertEquals("text/plain", download.getContentType());
+            assertArrayEquals(content, download.getContent().readAllBytes());
+        }
+        verify(s3Client).getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(userName + "/" + filename)
+                .build());
+    }
+
+    @Test
+    void streamFile_ShouldThrowRuntimeException_WhenFileNotFound() {
+        // Arrange
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> s3FileService.streamFile(userName, filename));
+    }
+
+    @Test
+    void streamFile_ForwardsRangeAndPreconditions() {
+        // Arrange
+        GetObjectResponse getObjectResponse = GetObjectResponse.builder().contentRange("bytes 0-3/12").build();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                getObjectResponse, AbortableInputStream.create(new ByteArrayInputStream(new byte[4]))));
+        DownloadOptions options = DownloadOptions.builder().range("bytes=0-3").ifMatch("\"abc123\"").build();
+
+        // Act
+        FileDownload download = s3FileService.streamFile(userName, filename, options);
+
+        // Assert
+        assertTrue(download.isPartial());
+        verify(s3Client).getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(userName + "/" + filename)
+                .range("bytes=0-3")
+                .ifMatch("\"abc123\"")
+                .build());
+    }
+
+    @Test
+    void streamFile_ThrowsNotModified_WhenS3Returns304() {
+        // Arrange
+        S3Exception notModified = (S3Exception) S3Exception.builder()
+                .statusCode(304)
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .sdkHttpResponse(SdkHttpResponse.builder().statusCode(304).putHeader("ETag", "\"abc123\"").build())
+                        .build())
+                .build();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(notModified);
+
+        // Act & Assert
+        NotModifiedException e = assertThrows(NotModifiedException.class, () -> s3FileService.streamFile(
+                userName, filename, DownloadOptions.builder().ifNoneMatch("\"abc123\"").build()));
+        assertEquals("\"abc123\"", e.getETag());
+    }
+
+    @Test
+    void streamFile_ThrowsRangeNotSatisfiable_WhenS3Returns416() {
+        // Arrange
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(416).build());
+
+        // Act & Assert
+        assertThrows(RangeNotSatisfiableException.class, () -> s3FileService.streamFile(
+                userName, filename, DownloadOptions.builder().range("bytes=100-").build()));
+    }
+
     @Test
     void deleteFile_ShouldDeleteFileFromS3() {
         // Arrange
         String filename = "test.txt";
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
         DeleteObjectResponse deleteObjectResponse = DeleteObjectResponse.builder().build();
         when(s3Client.deleteObject(any(DeleteObjectRequest.class))).thenReturn(deleteObjectResponse);
 
@@ -101,14 +269,14 @@ class S3FileServiceTest {
     void deleteFile_ShouldReturnFalse_WhenFileNotFound() {
         // Arrange
         String filename = "test.txt";
-        when(s3Client.deleteObject(any(DeleteObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
 
         // Act
         boolean result = s3FileService.deleteFile(userName, filename);
 
         // Assert
         assertFalse(result);
-        verify(s3Client).deleteObject(any(DeleteObjectRequest.class));
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
     }
 
     @Test
@@ -133,10 +301,76 @@ class S3FileServiceTest {
         verify(s3Client).listObjectsV2(any(ListObjectsV2Request.class));
     }
 
+    @Test
+    void listEntries_ReturnsDetailsAndFoldersStraightFromTheListing() {
+        // Arrange
+        Instant modified = Instant.parse("2024-01-01T00:00:00Z");
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/docs/a.txt").size(12L).eTag("\"abc\"")
+                        .lastModified(modified).storageClass("STANDARD_IA").build())
+                .commonPrefixes(CommonPrefix.builder().prefix(userName + "/docs/2023/").build())
+                .build());
+
+        // Act
+        FileListing listing = s3FileService.listEntries(userName, ListOptions.builder()
+                .prefix("docs/")
+                .delimiter("/")
+                .build());
+
+        // Assert
+        FileEntity file = listing.getFiles().get(0);
+        assertEquals("docs/a.txt", file.getFileName());
+        assertEquals(userName + "/docs/a.txt", file.getFilePath());
+        assertEquals(12L, file.getSize());
+        assertEquals("\"abc\"", file.getETag());
+        assertEquals(modified, file.getLastModified());
+        assertEquals("STANDARD_IA", file.getStorageClass());
+        assertEquals(Collections.singletonList("docs/2023/"), listing.getFolders());
+        assertNull(listing.getNextContinuationToken());
+        verify(s3Client).listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(userName + "/docs/")
+                .delimiter("/")
+                .maxKeys(1000)
+                .build());
+        verify(s3Client, never()).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void listEntries_TopsUpThePageWhenModifiedSinceFiltersFilesOut() {
+        // Arrange
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        when(s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName).prefix(userName + "/").maxKeys(2).continuationToken("page-1").build()))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/old").size(1L).lastModified(since.minusSeconds(1)).build(),
+                                S3Object.builder().key(userName + "/new").size(1L).lastModified(since).build())
+                        .nextContinuationToken("page-2")
+                        .build());
+        when(s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName).prefix(userName + "/").maxKeys(1).continuationToken("page-2").build()))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/newer").size(1L).lastModified(since.plusSeconds(1)).build())
+                        .nextContinuationToken("page-3")
+                        .build());
+
+        // Act
+        FileListing listing = s3FileService.listEntries(userName, ListOptions.builder()
+                .modifiedSince(since)
+                .pageSize(2)
+                .continuationToken("page-1")
+                .build());
+
+        // Assert
+        assertEquals(Arrays.asList("new", "newer"), listing.getFiles().stream()
+                .map(FileEntity::getFileName)
+                .collect(Collectors.toList()));
+        assertEquals("page-3", listing.getNextContinuationToken());
+    }
+
     @Test
     void deleteFile_FileExists_ReturnsTrue() {
-        when(s3Client.headObject(any(HeadObjectRequest.class)))
-                .thenReturn(HeadObjectResponse.builder().build());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
         when(s3Client.deleteObject(any(DeleteObjectRequest.class)))
                 .thenReturn(DeleteObjectResponse.builder().build());
 
@@ -151,10 +385,12 @@ class S3FileServiceTest {
                 .bucket(bucketName)
                 .key(userName + "/" + filename)
                 .build());
+        verifyNoMoreInteractions(s3Client);
     }
 
     @Test
     void deleteFile_FileDoesNotExist_ReturnsFalse() {
+        // S3 answers a DELETE of a missing key with 204, so only the HEAD can tell.
         when(s3Client.headObject(any(HeadObjectRequest.class)))
                 .thenThrow(NoSuchKeyException.class);
 
@@ -168,6 +404,61 @@ class S3FileServiceTest {
         verifyNoMoreInteractions(s3Client);
     }
 
+    @Test
+    void deleteFile_DoesNotRecordTheFileAsMissing_WhenTheDeleteFails() {
+        // Arrange
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+        when(s3Client.deleteObject(any(DeleteObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).message("Access Denied").build());
+
+        // Act
+        assertThrows(S3Exception.class, () -> s3FileService.deleteFile(userName, filename));
+        boolean exists = s3FileService.doesFileExist(userName + "/" + filename);
+
+        // Assert
+        assertTrue(exists);
+        verify(s3Client, times(2)).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void deleteFile_SkipsTheHead_WhenTheFileIsCached() {
+        // Arrange
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+        when(s3Client.deleteObject(any(DeleteObjectRequest.class)))
+                .thenReturn(DeleteObjectResponse.builder().build());
+        s3FileService.doesFileExist(userName + "/" + filename);
+
+        // Act
+        boolean result = s3FileService.deleteFile(userName, filename);
+
+        // Assert
+        assertTrue(result);
+        verify(s3Client, times(1)).headObject(any(HeadObjectRequest.class));
+        verify(s3Client).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    @Test
+    void downloadFile_MakesSingleGetRequest() {
+        byte[] content = "test content".getBytes();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(content))));
+
+        byte[] result = s3FileService.downloadFile(userName, filename);
+
+        assertArrayEquals(content, result);
+        verify(s3Client).getObject(any(GetObjectRequest.class));
+        verifyNoMoreInteractions(s3Client);
+    }
+
+    @Test
+    void downloadFile_ThrowsStoredFileNotFound_WhenKeyMissing() {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        assertThrows(StoredFileNotFoundException.class, () -> s3FileService.downloadFile(userName, filename));
+        verify(s3Client).getObject(any(GetObjectRequest.class));
+        verifyNoMoreInteractions(s3Client);
+    }
+
     @Test
     void listAllFiles_ReturnsListOfFiles() {
         ListObjectsV2Response response = ListObjectsV2Response.builder()
@@ -190,4 +481,531 @@ class S3FileServiceTest {
                 .build());
     }
 
+    @Test
+    void listAllFiles_FollowsContinuationTokens() {
+        ListObjectsV2Request firstPage = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(userName + "/")
+                .build();
+        when(s3Client.listObjectsV2(firstPage)).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/file1").build())
+                .isTruncated(true)
+                .nextContinuationToken("page-2")
+                .build());
+        when(s3Client.listObjectsV2(firstPage.toBuilder().continuationToken("page-2").build()))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/file2").build())
+                        .build());
+
+        List<String> files = s3FileService.listAllFiles(userName);
+
+        assertEquals(Arrays.asList(userName + "/file1", userName + "/file2"), files);
+    }
+
+    @Test
+    void listFiles_ReturnsOnePageAndTheNextToken() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/file3").build())
+                .isTruncated(true)
+                .nextContinuationToken("page-3")
+                .build());
+
+        FilePage page = s3FileService.listFiles(userName, 5000, "page-2");
+
+        assertEquals(Collections.singletonList(userName + "/file3"), page.getFiles());
+        assertEquals("page-3", page.getNextContinuationToken());
+        verify(s3Client).listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(userName + "/")
+                .maxKeys(1000)
+                .continuationToken("page-2")
+                .build());
+    }
+
+    @Test
+    void listAllFiles_IsServedFromCacheOnRepeatedCalls() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/file1").build())
+                .build());
+
+        s3FileService.listAllFiles(userName);
+        List<String> files = s3FileService.listAllFiles(userName);
+
+        assertEquals(Collections.singletonList(userName + "/file1"), files);
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    void saveAndDelete_UpdateTheCachedListing() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/b.txt").build())
+                .build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+        s3FileService.listAllFiles(userName);
+
+        s3FileService.saveFile(new MockMultipartFile("file", "a.txt", "text/plain", "a".getBytes()), userName);
+        assertEquals(Arrays.asList(userName + "/a.txt", userName + "/b.txt"), s3FileService.listAllFiles(userName));
+
+        s3FileService.deleteFile(userName, "b.txt");
+        assertEquals(Collections.singletonList(userName + "/a.txt"), s3FileService.listAllFiles(userName));
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    void doesFileExist_CachesHeadResultsIncludingMisses() {
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(12L).eTag("\"abc123\"").build())
+                .thenThrow(NoSuchKeyException.builder().build());
+
+        assertTrue(s3FileService.doesFileExist(userName + "/present"));
+        assertTrue(s3FileService.doesFileExist(userName + "/present"));
+        assertFalse(s3FileService.doesFileExist(userName + "/missing"));
+        assertFalse(s3FileService.doesFileExist(userName + "/missing"));
+
+        assertEquals("\"abc123\"", s3FileService.findFileMetadata(userName + "/present").get().getETag());
+        verify(s3Client, times(2)).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void streamFile_FillsTheDiskCacheFromTheFirstGetAndServesRepeatsFromIt(@TempDir Path cacheDir) throws IOException {
+        S3FileService cachingService = diskCachingService(cacheDir, 1024 * 1024);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(12L).eTag("\"abc123\"").contentType("text/plain").build(),
+                AbortableInputStream.create(new ByteArrayInputStream("test content".getBytes()))));
+
+        byte[] first = cachingService.downloadFile(userName, filename);
+        try (FileDownload second = cachingService.streamFile(userName, filename,
+                DownloadOptions.builder().range("bytes=5-").build())) {
+            assertArrayEquals("test content".getBytes(), first);
+            assertEquals("bytes 5-11/12", second.getContentRange());
+            assertEquals("text/plain", second.getContentType());
+            assertArrayEquals("content".getBytes(), second.getContent().readAllBytes());
+        }
+        verify(s3Client, times(1)).getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(userName + "/" + filename)
+                .build());
+        verify(s3Client, never()).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void streamFile_StreamsObjectsOverTheDiskCacheLimitWithoutCachingThem(@TempDir Path cacheDir) throws IOException {
+        S3FileService cachingService = diskCachingService(cacheDir, 4);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(12L).eTag("\"abc123\"").build(),
+                AbortableInputStream.create(new ByteArrayInputStream("test content".getBytes()))));
+
+        assertArrayEquals("test content".getBytes(), cachingService.downloadFile(userName, filename));
+        assertArrayEquals("test content".getBytes(), cachingService.downloadFile(userName, filename));
+
+        verify(s3Client, times(2)).getObject(any(GetObjectRequest.class));
+        verify(s3Client, never()).headObject(any(HeadObjectRequest.class));
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void deleteAllFiles_RefusesTheDedupPrefixAsAUserName() {
+        assertThrows(InvalidUserNameException.class, () -> s3FileService.deleteAllFiles(".dedup"));
+        assertThrows(InvalidUserNameException.class,
+                () -> s3FileService.streamFile(".dedup", "content", DownloadOptions.NONE));
+
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void deleteAllFiles_BatchesKeysAcrossListingPagesAndReportsFailures() {
+        ListObjectsV2Request firstPage = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(userName + "/")
+                .build();
+        when(s3Client.listObjectsV2(firstPage)).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/file1").build(),
+                        S3Object.builder().key(userName + "/file2").build())
+                .nextContinuationToken("page-2")
+                .build());
+        when(s3Client.listObjectsV2(firstPage.toBuilder().continuationToken("page-2").build()))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key(userName + "/file3").build())
+                        .build());
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key(userName + "/file2").code("AccessDenied").message("Access Denied").build())
+                .build());
+
+        BatchDeleteResult result = s3FileService.deleteAllFiles(userName);
+
+        assertEquals(2, result.getDeletedCount());
+        assertEquals(Collections.singletonMap("file2", "AccessDenied: Access Denied"), result.getFailed());
+        assertNull(result.getDeleted());
+        verify(s3Client).deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder()
+                        .objects(ObjectIdentifier.builder().key(userName + "/file1").build(),
+                                ObjectIdentifier.builder().key(userName + "/file2").build(),
+                                ObjectIdentifier.builder().key(userName + "/file3").build())
+                        .quiet(true)
+                        .build())
+                .build());
+    }
+
+    @Test
+    void saveArchive_UploadsEachZipEntryUnderTheUserPrefix() throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("docs/"));
+            out.putNextEntry(new ZipEntry("docs/a.txt"));
+            out.write("first".getBytes());
+            out.putNextEntry(new ZipEntry("b.json"));
+            out.write("{}".getBytes());
+            out.putNextEntry(new ZipEntry("../escape.txt"));
+            out.write("nope".getBytes());
+        }
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        BatchUploadResult result = s3FileService.saveArchive(new ByteArrayInputStream(zip.toByteArray()), userName);
+
+        assertEquals(Arrays.asList("docs/a.txt", "b.json"), result.getUploaded());
+        assertEquals(Collections.singleton("../escape.txt"), result.getFailed().keySet());
+        ArgumentCaptor<PutObjectRequest> requests = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client, times(2)).putObject(requests.capture(), any(RequestBody.class));
+        assertEquals(userName + "/docs/a.txt", requests.getAllValues().get(0).key());
+        assertEquals("text/plain", requests.getAllValues().get(0).contentType());
+        assertEquals("application/json", requests.getAllValues().get(1).contentType());
+    }
+
+    @Test
+    void listEntries_ReportsTheRecordedSizeOfDeduplicatedFiles() throws IOException {
+        // Arrange
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        S3FileService dedupService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                null, null, new DedupStore(s3Client, uploader, bucketName, true, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(userName + "/big.bin").size(0L).lastModified(Instant.EPOCH).build(),
+                        S3Object.builder().key(userName + "/small.txt").size(5L).lastModified(Instant.EPOCH).build())
+                .build());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(0L)
+                .metadata(Collections.singletonMap("content-length", "2097152"))
+                .build());
+
+        // Act
+        FileListing listing = dedupService.listEntries(userName, ListOptions.builder().build());
+
+        // Assert
+        assertEquals(Arrays.asList(2097152L, 5L), listing.getFiles().stream()
+                .map(FileEntity::getSize)
+                .collect(Collectors.toList()));
+        verify(s3Client, times(1)).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void completeMultipartUpload_SubmitsThePartsInOrderAndReleasesReplacedContent() throws IOException {
+        // Arrange
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        S3FileService dedupService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                null, null, new DedupStore(s3Client, uploader, bucketName, true, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(0L)
+                .metadata(Collections.singletonMap(DedupStore.CONTENT_SHA256, "old"))
+                .build());
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(Collections.emptyList()).build());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        ArgumentCaptor<DeleteObjectRequest> deletes = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+
+        // Act
+        dedupService.completeMultipartUpload(userName, filename, "upload-1", Arrays.asList(
+                CompletedPart.builder().partNumber(2).eTag("\"b\"").build(),
+                CompletedPart.builder().partNumber(1).eTag("\"a\"").build()));
+
+        // Assert
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals(userName + "/" + filename, complete.getValue().key());
+        assertEquals("upload-1", complete.getValue().uploadId());
+        assertEquals(Arrays.asList(1, 2), complete.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::partNumber)
+                .collect(Collectors.toList()));
+        verify(s3Client, times(2)).deleteObject(deletes.capture());
+        assertEquals(Arrays.asList(".dedup/refs/old/" + userName + "/" + filename, ".dedup/content/old"),
+                deletes.getAllValues().stream().map(DeleteObjectRequest::key).collect(Collectors.toList()));
+    }
+
+    @Test
+    void saveFiles_ReleasesTheContentOfADeduplicatedFileItReplaces() throws IOException {
+        // Arrange
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        S3FileService dedupService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                null, new BatchUploader(uploader, Runnable::run, 4, 1024),
+                new DedupStore(s3Client, uploader, bucketName, true, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(0L)
+                .metadata(Collections.singletonMap(DedupStore.CONTENT_SHA256, "old"))
+                .build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(Collections.emptyList()).build());
+        MockMultipartFile file = new MockMultipartFile("files", filename, "text/plain", "new content".getBytes());
+        ArgumentCaptor<DeleteObjectRequest> deletes = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+
+        // Act
+        BatchUploadResult result = dedupService.saveFiles(Collections.singletonList(file), userName);
+
+        // Assert
+        assertEquals(Collections.singletonList(filename), result.getUploaded());
+        verify(s3Client, times(2)).deleteObject(deletes.capture());
+        assertEquals(Arrays.asList(".dedup/refs/old/" + userName + "/" + filename, ".dedup/content/old"),
+                deletes.getAllValues().stream().map(DeleteObjectRequest::key).collect(Collectors.toList()));
+    }
+
+    @Test
+    void streamFile_And_deleteFile_FollowDeduplicatedReferences() throws IOException {
+        // Arrange
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        S3FileService dedupService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                null, null, new DedupStore(s3Client, uploader, bucketName, true, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(0L)
+                .metadata(Collections.singletonMap(DedupStore.CONTENT_SHA256, "abc"))
+                .build());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(12L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("test content".getBytes()))));
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(Collections.emptyList()).build());
+        ArgumentCaptor<GetObjectRequest> get = ArgumentCaptor.forClass(GetObjectRequest.class);
+        ArgumentCaptor<DeleteObjectRequest> deletes = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+
+        // Act
+        byte[] content = dedupService.downloadFile(userName, filename);
+        dedupService.deleteFile(userName, filename);
+
+        // Assert
+        assertArrayEquals("test content".getBytes(), content);
+        verify(s3Client).getObject(get.capture());
+        assertEquals(".dedup/content/abc", get.getValue().key());
+        verify(s3Client, times(3)).deleteObject(deletes.capture());
+        assertEquals(Arrays.asList(userName + "/" + filename, ".dedup/refs/abc/" + userName + "/" + filename,
+                ".dedup/content/abc"), deletes.getAllValues().stream().map(DeleteObjectRequest::key)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    void saveFile_And_streamFile_CompressEligibleUploadsAndNegotiateTheCoding() throws IOException {
+        // Arrange
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        S3FileService compressingService = new S3FileService(s3Client, flatLayout(), uploader,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                null, null, new DedupStore(s3Client, uploader, bucketName, false, 0, ".dedup/"),
+                new UploadCompression(true, "gzip", 0, Collections.singletonList("text/*"), Collections.emptySet()),
+                Runnable::run);
+        byte[] content = "test content, test content, test content".getBytes();
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        when(s3Client.putObject(put.capture(), body.capture())).thenReturn(PutObjectResponse.builder().build());
+
+        // Act
+        compressingService.saveFile(new MockMultipartFile("file", "a.txt", "text/plain", content), userName);
+        byte[] stored = body.getValue().contentStreamProvider().newStream().readAllBytes();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength((long) stored.length).eTag("\"abc\"")
+                        .contentEncoding("gzip").build(),
+                AbortableInputStream.create(new ByteArrayInputStream(stored))));
+        FileDownload decoded = compressingService.streamFile(userName, "a.txt", DownloadOptions.NONE);
+        FileDownload passedThrough = compressingService.streamFile(userName, "a.txt",
+                DownloadOptions.builder().acceptEncoding("gzip, deflate").build());
+
+        // Assert
+        assertEquals("gzip", put.getValue().contentEncoding());
+        assertArrayEquals(content, decoded.getContent().readAllBytes());
+        assertNull(decoded.getContentEncoding());
+        assertNull(decoded.getContentLength());
+        assertEquals("W/\"abc\"", decoded.getETag());
+        assertArrayEquals(stored, passedThrough.getContent().readAllBytes());
+        assertEquals("gzip", passedThrough.getContentEncoding());
+        assertEquals("\"abc\"", passedThrough.getETag());
+    }
+
+    @Test
+    void listFiles_MergesShardedPrefixesInNameOrderAcrossPages() throws IOException {
+        // Arrange
+        KeyLayout layout = new KeyLayout(bucketName, Collections.emptyList(), 4, true, ".dedup/");
+        S3FileService shardedService = shardedService(layout);
+        List<String> names = Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt", "g.txt", "h.txt");
+        List<String> keys = names.stream()
+                .map(name -> layout.locate(userName, name).getKey())
+                .collect(Collectors.toList());
+        // One file not yet migrated, and the old copy of one that has been.
+        keys.add(userName + "/i.txt");
+        keys.add(userName + "/a.txt");
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> listing(keys,
+                invocation.getArgument(0)));
+
+        // Act
+        List<String> files = new ArrayList<>();
+        String token = null;
+        do {
+            FilePage page = shardedService.listFiles(userName, 3, token);
+            files.addAll(page.getFiles());
+            token = page.getNextContinuationToken();
+        } while (token != null);
+
+        // Assert
+        assertEquals(Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt", "g.txt", "h.txt", "i.txt")
+                .stream().map(name -> userName + "/" + name).collect(Collectors.toList()), files);
+        assertEquals(files, shardedService.listAllFiles(userName));
+    }
+
+    @Test
+    void listEntries_ListsShardedFoldersOnce() throws IOException {
+        // Arrange
+        KeyLayout layout = new KeyLayout(bucketName, Collections.emptyList(), 4, false, ".dedup/");
+        S3FileService shardedService = shardedService(layout);
+        List<String> keys = Arrays.asList("docs/a.txt", "docs/b.txt", "docs/c.txt", "x.txt").stream()
+                .map(name -> layout.locate(userName, name).getKey())
+                .collect(Collectors.toList());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> listing(keys,
+                invocation.getArgument(0)));
+
+        // Act
+        FileListing listing = shardedService.listEntries(userName, ListOptions.builder().delimiter("/").build());
+
+        // Assert
+        assertEquals(Collections.singletonList("docs/"), listing.getFolders());
+        assertEquals(Collections.singletonList("x.txt"), listing.getFiles().stream()
+                .map(FileEntity::getFileName)
+                .collect(Collectors.toList()));
+        assertNull(listing.getNextContinuationToken());
+    }
+
+    @Test
+    void streamFile_FallsBackToTheOldKey_WhileFilesAreMigrated() throws IOException {
+        // Arrange
+        KeyLayout layout = new KeyLayout(bucketName, Collections.emptyList(), 16, true, ".dedup/");
+        S3FileService shardedService = shardedService(layout);
+        GetObjectRequest moved = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(layout.locate(userName, filename).getKey())
+                .build();
+        when(s3Client.getObject(moved)).thenThrow(NoSuchKeyException.builder().build());
+        when(s3Client.getObject(moved.toBuilder().key(userName + "/" + filename).build()))
+                .thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                        AbortableInputStream.create(new ByteArrayInputStream("old".getBytes()))));
+
+        // Act
+        try (FileDownload download = shardedService.streamFile(userName, filename)) {
+            // Assert
+            assertArrayEquals("old".getBytes(), download.getContent().readAllBytes());
+        }
+    }
+
+    @Test
+    void saveFile_WritesWhereTheLayoutPutsTheFileAndRemovesTheOldCopy() throws IOException {
+        // Arrange
+        KeyLayout layout = new KeyLayout(bucketName, Collections.emptyList(), 16, true, ".dedup/");
+        S3FileService shardedService = shardedService(layout);
+        MockMultipartFile file = new MockMultipartFile("file", filename, "text/plain", "test content".getBytes());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+
+        // Act
+        shardedService.saveFile(file, userName);
+
+        // Assert
+        String key = layout.locate(userName, filename).getKey();
+        verify(s3Client).putObject(argThat((PutObjectRequest put) -> put != null && put.key().equals(key)),
+                any(RequestBody.class));
+        verify(s3Client).deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(userName + "/" + filename)
+                .build());
+    }
+
+    private S3FileService shardedService(KeyLayout layout) throws IOException {
+        MultipartUploader uploader = new MultipartUploader(s3Client, Runnable::run,
+                16 * 1024 * 1024, 64 * 1024 * 1024, 4);
+        return new S3FileService(s3Client, layout, uploader,
+                new FileMetadataCache(1000, 1000, 0, new SimpleMeterRegistry()),
+                new DiskObjectCache(false, "unused", 0, 0, new SimpleMeterRegistry()),
+                new BatchDeleter(s3Client, Runnable::run, 4),
+                new BatchUploader(uploader, Runnable::run, 4, 1024),
+                new DedupStore(s3Client, uploader, bucketName, false, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+    }
+
+    /** Answers a listing request from {@code keys} as S3 would, in key order and a page at a time. */
+    private static ListObjectsV2Response listing(List<String> keys, ListObjectsV2Request request) {
+        int maxKeys = request.maxKeys() != null ? request.maxKeys() : 1000;
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> folders = new ArrayList<>();
+        boolean truncated = false;
+        for (String key : keys.stream().sorted().collect(Collectors.toList())) {
+            if (!key.startsWith(request.prefix())
+                    || request.startAfter() != null && key.compareTo(request.startAfter()) <= 0) {
+                continue;
+            }
+            String rest = key.substring(request.prefix().length());
+            int slash = request.delimiter() != null ? rest.indexOf(request.delimiter()) : -1;
+            CommonPrefix folder = slash >= 0
+                    ? CommonPrefix.builder().prefix(request.prefix() + rest.substring(0, slash + 1)).build()
+                    : null;
+            if (folder != null && folders.contains(folder)) {
+                continue;
+            }
+            if (contents.size() + folders.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            if (folder != null) {
+                folders.add(folder);
+            } else {
+                contents.add(S3Object.builder().key(key).size(1L).build());
+            }
+        }
+        return ListObjectsV2Response.builder()
+                .contents(contents)
+                .commonPrefixes(folders)
+                .isTruncated(truncated)
+                .build();
+    }
+
+    private S3FileService diskCachingService(Path cacheDir, long maxObjectBytes) throws IOException {
+        return new S3FileService(s3Client, flatLayout(), null,
+                new FileMetadataCache(1000, 1000, 60, new SimpleMeterRegistry()),
+                new DiskObjectCache(true, cacheDir.toString(), 1024 * 1024, maxObjectBytes, new SimpleMeterRegistry()),
+                null, null, new DedupStore(s3Client, null, bucketName, false, 0, ".dedup/"),
+                noCompression(), Runnable::run);
+    }
+
+    private KeyLayout flatLayout() {
+        return new KeyLayout(bucketName, Collections.emptyList(), 0, false, ".dedup/");
+    }
+
+    private static UploadCompression noCompression() {
+        return new UploadCompression(false, "gzip", 0, Collections.emptyList(), Collections.emptySet());
+    }
 }
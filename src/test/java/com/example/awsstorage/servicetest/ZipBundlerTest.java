@@ -0,0 +1,162 @@
+package com.example.awsstorage.servicetest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.awsstorage.entity.FileDownload;
+import com.example.awsstorage.entity.FileEntity;
+import com.example.awsstorage.entity.FileListing;
+import com.example.awsstorage.exception.StoredFileNotFoundException;
+import com.example.awsstorage.service.IFileService;
+import com.example.awsstorage.service.ZipBundler;
+
+class ZipBundlerTest {
+
+    @Mock
+    private IFileService fileService;
+
+    private ZipBundler zipBundler;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        zipBundler = new ZipBundler(fileService, Runnable::run, 2, 1024, 4096);
+    }
+
+    @Test
+    void write_ZipsEachFileAndLeavesOutMissingOnes() throws IOException {
+        // Arrange
+        byte[] large = new byte[100_000];
+        new Random(3).nextBytes(large);
+        when(fileService.streamFile("user", "a.txt")).thenReturn(download("hello".getBytes(), 5L));
+        when(fileService.streamFile("user", "gone.txt")).thenThrow(new StoredFileNotFoundException("user/gone.txt", null));
+        when(fileService.streamFile("user", "docs/large.bin")).thenReturn(download(large, null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        zipBundler.write("user", Arrays.asList("a.txt", "gone.txt", "docs/large.bin").iterator(), false, out);
+
+        // Assert
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                byte[] content = zip.readAllBytes();
+                assertArrayEquals(entry.getName().equals("a.txt") ? "hello".getBytes() : large, content);
+            }
+        }
+        assertEquals(Arrays.asList("a.txt", "docs/large.bin"), names);
+    }
+
+    @Test
+    void write_ClosesEveryDownloadItOpened() throws IOException {
+        // Arrange
+        List<TrackedStream> streams = new ArrayList<>();
+        for (String name : Arrays.asList("a", "b", "c")) {
+            TrackedStream stream = new TrackedStream(new byte[5000]);
+            streams.add(stream);
+            when(fileService.streamFile("user", name)).thenReturn(FileDownload.builder().content(stream).build());
+        }
+
+        // Act
+        zipBundler.write("user", Arrays.asList("a", "b", "c").iterator(), true, new ByteArrayOutputStream());
+
+        // Assert
+        streams.forEach(stream -> assertTrue(stream.closed));
+    }
+
+    @Test
+    void write_StopsAtTheFirstFailedRead() throws IOException {
+        // Arrange
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(fileService.streamFile("user", "a")).thenReturn(FileDownload.builder().content(failing).build());
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> zipBundler.write("user",
+                Collections.singletonList("a").iterator(), true, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void filesUnder_FollowsTheListingAcrossPages() {
+        // Arrange
+        when(fileService.listEntries(eq("user"), argThat(options -> options != null
+                && "docs/".equals(options.getPrefix()) && options.getContinuationToken() == null)))
+                .thenReturn(listing("t1", "docs/a", "docs/b"));
+        when(fileService.listEntries(eq("user"), argThat(options -> options != null
+                && "t1".equals(options.getContinuationToken()))))
+                .thenReturn(listing(null, "docs/c"));
+
+        // Act
+        Iterator<String> names = zipBundler.filesUnder("user", "docs/");
+
+        // Assert
+        List<String> listed = new ArrayList<>();
+        names.forEachRemaining(listed::add);
+        assertEquals(Arrays.asList("docs/a", "docs/b", "docs/c"), listed);
+        assertFalse(names.hasNext());
+    }
+
+    private static FileDownload download(byte[] content, Long length) {
+        return FileDownload.builder()
+                .content(new ByteArrayInputStream(content))
+                .contentLength(length)
+                .lastModified(Instant.parse("2024-01-01T00:00:00Z"))
+                .build();
+    }
+
+    private static FileListing listing(String nextToken, String... names) {
+        List<FileEntity> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(FileEntity.builder().fileName(name).build());
+        }
+        return FileListing.builder()
+                .files(files)
+                .folders(Collections.emptyList())
+                .nextContinuationToken(nextToken)
+                .build();
+    }
+
+    private static final class TrackedStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        TrackedStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}